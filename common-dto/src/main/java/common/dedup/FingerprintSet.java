@@ -0,0 +1,65 @@
+package common.dedup;
+
+/**
+ * Open-addressing set of non-zero 64-bit fingerprints in a single {@code long[]}, about 16 bytes
+ * per entry at the maximum load of one half. There is no removal; a set is dropped as a whole once
+ * its time bucket leaves the window.
+ */
+class FingerprintSet {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private long[] slots = new long[INITIAL_CAPACITY];
+  private int size;
+
+  boolean contains(long fingerprint) {
+    int mask = slots.length - 1;
+    for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+      if (slots[slot] == 0) {
+        return false;
+      }
+      if (slots[slot] == fingerprint) {
+        return true;
+      }
+    }
+  }
+
+  /** @return false if the fingerprint was already in the set */
+  boolean add(long fingerprint) {
+    if (2 * (size + 1) > slots.length) {
+      grow();
+    }
+    if (!insert(slots, fingerprint)) {
+      return false;
+    }
+    size++;
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void grow() {
+    long[] grownSlots = new long[2 * slots.length];
+    for (long fingerprint : slots) {
+      if (fingerprint != 0) {
+        insert(grownSlots, fingerprint);
+      }
+    }
+    slots = grownSlots;
+  }
+
+  private static boolean insert(long[] slots, long fingerprint) {
+    int mask = slots.length - 1;
+    for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+      if (slots[slot] == 0) {
+        slots[slot] = fingerprint;
+        return true;
+      }
+      if (slots[slot] == fingerprint) {
+        return false;
+      }
+    }
+  }
+}
@@ -0,0 +1,303 @@
+package common.dedup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Remembers which saga steps a service has applied, so that an event Kafka redelivers after a
+ * rebalance or a crash is dropped instead of debiting or reserving twice. Every (saga UUID, step)
+ * pair is kept as a 64-bit fingerprint in time buckets that together cover the last {@code
+ * windowMs}; the oldest buckets are dropped early once more than {@code maxEntries} are kept, so
+ * memory stays bounded at about 16 bytes per entry. A lookup is one O(1) probe per bucket.
+ *
+ * <p>With a directory, every applied step is appended to the file of its bucket before the next
+ * event is handled, and the buckets still inside the window are loaded again on restart. A step
+ * interrupted by a crash was never appended, so it runs again on redelivery.
+ *
+ * <p>A step counts as applied before its outcome is acknowledged by the broker, so the outcome of a
+ * step whose send failed is kept in memory, up to {@code maxEntries} of them. A duplicate of the
+ * step, e.g. the saga the reaper publishes again as it never made progress, takes it to send it
+ * again instead of being dropped with it.
+ */
+@Slf4j
+public class ProcessedEventIndex implements AutoCloseable {
+
+  private static final String BUCKET_FILE_SUFFIX = ".fingerprints";
+
+  private final Path directory;
+  private final long windowMs;
+  private final long bucketMs;
+  private final int maxEntries;
+
+  /** Oldest first; the last one takes the new fingerprints. */
+  private final Deque<Bucket> buckets = new ArrayDeque<>();
+
+  /** Steps running right now, so a duplicate delivered meanwhile is dropped as well. */
+  private final Set<Long> running = new HashSet<>();
+
+  /** Outcomes whose send failed, per step fingerprint, the oldest dropped beyond the maximum. */
+  private final Map<Long, Object> unsentOutcomes;
+
+  private int size;
+
+  public ProcessedEventIndex(Path directory, long windowMs, int bucketCount, int maxEntries) {
+    if (windowMs <= 0 || bucketCount <= 0 || maxEntries <= 0) {
+      throw new IllegalArgumentException("Window, bucket count and max entries must be positive");
+    }
+    this.directory = directory;
+    this.windowMs = windowMs;
+    this.bucketMs = Math.max(windowMs / bucketCount, 1);
+    this.maxEntries = maxEntries;
+    this.unsentOutcomes =
+        new LinkedHashMap<Long, Object>() {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Long, Object> eldest) {
+            return size() > maxEntries;
+          }
+        };
+    if (Objects.nonNull(directory)) {
+      load(System.currentTimeMillis());
+    }
+  }
+
+  /** An index that is not persisted, e.g. for a throwaway instance of a service. */
+  public static ProcessedEventIndex inMemory(long windowMs, int bucketCount, int maxEntries) {
+    return new ProcessedEventIndex(null, windowMs, bucketCount, maxEntries);
+  }
+
+  /**
+   * Runs the step unless it was already applied to the saga. The step counts as applied once the
+   * action returns; if the action throws, it may run again on redelivery.
+   *
+   * @return false if the step was dropped as a duplicate
+   */
+  public boolean runOnce(UUID uuid, String step, Runnable action) {
+    long fingerprint = fingerprint(uuid, step);
+    if (!start(fingerprint)) {
+      return false;
+    }
+    try {
+      action.run();
+    } catch (RuntimeException | Error e) {
+      abort(fingerprint);
+      throw e;
+    }
+    commit(fingerprint);
+    return true;
+  }
+
+  /**
+   * Records the step as applied without running it, so that a delivery of it arriving later is
+   * dropped, e.g. a step still queued when its saga was cancelled.
+   *
+   * @return false if the step was applied or is running already
+   */
+  public boolean fence(UUID uuid, String step) {
+    return runOnce(uuid, step, () -> {});
+  }
+
+  /**
+   * Keeps the outcome of the step if its send fails, so a duplicate of the step can send it again.
+   * An outcome that was sent is not kept, as the steps after it have it already.
+   */
+  public <T> void keepIfUnsent(UUID uuid, String step, T outcome, CompletableFuture<?> send) {
+    long fingerprint = fingerprint(uuid, step);
+    send.whenComplete(
+        (result, e) -> {
+          if (Objects.nonNull(e)) {
+            synchronized (this) {
+              unsentOutcomes.put(fingerprint, outcome);
+            }
+          }
+        });
+  }
+
+  /** @return the outcome kept as its send failed, which is no longer kept, or null */
+  @SuppressWarnings("unchecked")
+  public synchronized <T> T takeUnsentOutcome(UUID uuid, String step) {
+    return (T) unsentOutcomes.remove(fingerprint(uuid, step));
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  @Override
+  public synchronized void close() {
+    for (Bucket bucket : buckets) {
+      bucket.closeFile();
+    }
+  }
+
+  /** Mixes the pair with the finalizer of MurmurHash3; 0 marks an empty slot and is never used. */
+  static long fingerprint(UUID uuid, String step) {
+    long hash = uuid.getMostSignificantBits();
+    hash = 31 * hash + uuid.getLeastSignificantBits();
+    hash = 31 * hash + step.hashCode();
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash == 0 ? 1 : hash;
+  }
+
+  private synchronized boolean start(long fingerprint) {
+    rotate(System.currentTimeMillis());
+    if (running.contains(fingerprint)) {
+      return false;
+    }
+    for (Bucket bucket : buckets) {
+      if (bucket.fingerprints.contains(fingerprint)) {
+        return false;
+      }
+    }
+    running.add(fingerprint);
+    return true;
+  }
+
+  private synchronized void abort(long fingerprint) {
+    running.remove(fingerprint);
+  }
+
+  private synchronized void commit(long fingerprint) {
+    running.remove(fingerprint);
+    rotate(System.currentTimeMillis());
+    Bucket bucket = buckets.getLast();
+    if (bucket.fingerprints.add(fingerprint)) {
+      size++;
+      bucket.append(fingerprint);
+    }
+    while (size > maxEntries && buckets.size() > 1) {
+      dropOldest();
+    }
+  }
+
+  private void rotate(long nowMs) {
+    long startMs = nowMs - nowMs % bucketMs;
+    if (buckets.isEmpty() || buckets.getLast().startMs < startMs) {
+      if (!buckets.isEmpty()) {
+        buckets.getLast().closeFile();
+      }
+      buckets.addLast(new Bucket(startMs));
+    }
+    while (buckets.getFirst().startMs + bucketMs <= nowMs - windowMs) {
+      dropOldest();
+    }
+  }
+
+  private void dropOldest() {
+    Bucket bucket = buckets.removeFirst();
+    size -= bucket.fingerprints.size();
+    bucket.closeFile();
+    if (Objects.nonNull(directory)) {
+      try {
+        Files.deleteIfExists(bucket.file());
+      } catch (IOException e) {
+        log.error("Exception occurred during dedup bucket deletion. Exception: ", e);
+      }
+    }
+  }
+
+  private void load(long nowMs) {
+    List<Bucket> loadedBuckets = new ArrayList<>();
+    try {
+      Files.createDirectories(directory);
+      try (DirectoryStream<Path> files =
+          Files.newDirectoryStream(directory, "*" + BUCKET_FILE_SUFFIX)) {
+        for (Path file : files) {
+          String fileName = file.getFileName().toString();
+          Bucket bucket =
+              new Bucket(
+                  Long.parseLong(
+                      fileName.substring(0, fileName.length() - BUCKET_FILE_SUFFIX.length())));
+          if (bucket.startMs + bucketMs <= nowMs - windowMs) {
+            Files.delete(file);
+            continue;
+          }
+          try (DataInputStream in =
+              new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            for (long count = Files.size(file) / Long.BYTES; count > 0; count--) {
+              bucket.fingerprints.add(in.readLong());
+            }
+          }
+          loadedBuckets.add(bucket);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Dedup index can not be loaded: " + directory, e);
+    }
+    loadedBuckets.sort((first, second) -> Long.compare(first.startMs, second.startMs));
+    for (Bucket bucket : loadedBuckets) {
+      buckets.addLast(bucket);
+      size += bucket.fingerprints.size();
+    }
+    log.info("Dedup index loaded {} processed steps from {}", size, directory);
+  }
+
+  private class Bucket {
+
+    private final long startMs;
+    private final FingerprintSet fingerprints = new FingerprintSet();
+    private DataOutputStream out;
+
+    Bucket(long startMs) {
+      this.startMs = startMs;
+    }
+
+    Path file() {
+      return directory.resolve(startMs + BUCKET_FILE_SUFFIX);
+    }
+
+    void append(long fingerprint) {
+      if (Objects.isNull(directory)) {
+        return;
+      }
+      try {
+        if (Objects.isNull(out)) {
+          out =
+              new DataOutputStream(
+                  new BufferedOutputStream(
+                      Files.newOutputStream(
+                          file(), StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+        out.writeLong(fingerprint);
+        out.flush();
+      } catch (IOException e) {
+        log.error("Exception occurred during dedup index write. Exception: ", e);
+      }
+    }
+
+    void closeFile() {
+      if (Objects.isNull(out)) {
+        return;
+      }
+      try {
+        out.close();
+      } catch (IOException e) {
+        log.error("Exception occurred during dedup bucket closing. Exception: ", e);
+      }
+      out = null;
+    }
+  }
+}
@@ -0,0 +1,7 @@
+package common.enums;
+
+public enum SagaCommandType {
+  PROCESS,
+  COMPENSATE,
+  CONFIRM;
+}
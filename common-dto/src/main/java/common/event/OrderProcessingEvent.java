@@ -3,6 +3,8 @@ package common.event;
 import common.dto.OrderDTO;
 import common.enums.OrderStatus;
 import common.enums.ProcessingStatus;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import lombok.Data;
 
@@ -18,29 +20,144 @@ public class OrderProcessingEvent {
   private ProcessingStatus warehouseProcessingStatus = ProcessingStatus.UNPROCESSED;
   private ProcessingStatus shipmentProcessingStatus = ProcessingStatus.UNPROCESSED;
 
+  /** The user and warehouse steps run at the same time; shipment waits for both. */
+  private boolean parallelSteps;
+
+  private long createdAt = System.currentTimeMillis();
+  private long enqueuedAt;
+  private long dequeuedAt;
+  private List<SagaHop> hops = new ArrayList<>();
+
   public void addMessage(String message) {
     processingResultMessage.append(message);
     processingResultMessage.append("\n");
   }
 
+  /** Stamps the moment the event is handed to the producer. */
+  public void markEnqueued() {
+    enqueuedAt = System.currentTimeMillis();
+  }
+
+  /** Stamps the moment the event is taken from the topic by a listener. */
+  public void markDequeued() {
+    dequeuedAt = System.currentTimeMillis();
+  }
+
+  /**
+   * Stamps the start of a step fired by a timer instead of taken from a topic, so the time the
+   * event was held until then is not reported as queue wait.
+   */
+  public void markTimerFired() {
+    enqueuedAt = 0;
+    dequeuedAt = System.currentTimeMillis();
+  }
+
+  public SagaHop addHop(String service, String step) {
+    SagaHop hop = new SagaHop(service, step, enqueuedAt, dequeuedAt, System.currentTimeMillis());
+    hops.add(hop);
+    return hop;
+  }
+
   public boolean processed() {
     return !getOrderStatus().equals(OrderStatus.REQUESTED);
   }
 
+  /**
+   * Whether the saga has reached its final state: created, or cancelled with every step that had
+   * been applied already reverted. A cancelled saga still has compensations in flight until then.
+   */
+  public boolean settled() {
+    return getOrderStatus().equals(OrderStatus.CREATED)
+        || (getOrderStatus().equals(OrderStatus.CANCELLED)
+            && !userProcessingStatus.equals(ProcessingStatus.SUCCESS)
+            && !warehouseProcessingStatus.equals(ProcessingStatus.SUCCESS)
+            && !shipmentProcessingStatus.equals(ProcessingStatus.SUCCESS));
+  }
+
+  /**
+   * Whether the event belongs on the compensation lane: once cancelled, a saga only releases what
+   * its steps hold, which should not queue behind new orders.
+   */
+  public boolean compensating() {
+    return getOrderStatus().equals(OrderStatus.CANCELLED);
+  }
+
+  /** With parallel steps, only the event that requested the order starts the user step. */
   public boolean toProcessForUser() {
-    return userProcessingStatus.equals(ProcessingStatus.UNPROCESSED);
+    return userProcessingStatus.equals(ProcessingStatus.UNPROCESSED)
+        && (!parallelSteps || warehouseProcessingStatus.equals(ProcessingStatus.UNPROCESSED));
   }
 
+  /** With parallel steps, only the event that requested the order starts the warehouse step. */
   public boolean toProcessForWarehouse() {
     return warehouseProcessingStatus.equals(ProcessingStatus.UNPROCESSED)
-        && userProcessingStatus.equals(ProcessingStatus.SUCCESS);
+        && userProcessingStatus.equals(
+            parallelSteps ? ProcessingStatus.UNPROCESSED : ProcessingStatus.SUCCESS);
   }
 
   public boolean toProcessForShipment() {
     return shipmentProcessingStatus.equals(ProcessingStatus.UNPROCESSED)
+        && userProcessingStatus.equals(ProcessingStatus.SUCCESS)
         && warehouseProcessingStatus.equals(ProcessingStatus.SUCCESS);
   }
 
+  /** Whether the user debit has to be compensated as the warehouse step was reverted. */
+  public boolean toRevertForUser() {
+    return userProcessingStatus.equals(ProcessingStatus.SUCCESS)
+        && warehouseProcessingStatus.equals(ProcessingStatus.REVERT);
+  }
+
+  /**
+   * Whether the stock reservation has to be compensated as the shipment step, or with parallel
+   * steps the user step, was reverted.
+   */
+  public boolean toRevertForWarehouse() {
+    return warehouseProcessingStatus.equals(ProcessingStatus.SUCCESS)
+        && (shipmentProcessingStatus.equals(ProcessingStatus.REVERT)
+            || userProcessingStatus.equals(ProcessingStatus.REVERT));
+  }
+
+  /** Whether both steps that run in parallel have finished, successfully or not. */
+  public boolean parallelStepsJoined() {
+    return !userProcessingStatus.equals(ProcessingStatus.UNPROCESSED)
+        && !warehouseProcessingStatus.equals(ProcessingStatus.UNPROCESSED);
+  }
+
+  /**
+   * Takes over the progress another copy of this saga has made, e.g. the reply of a step that ran
+   * next to another one. A step status only moves forward, from unprocessed over success to
+   * revert, and a cancellation is never undone, so copies can be merged in any order.
+   */
+  public void merge(OrderProcessingEvent other) {
+    if (this == other) {
+      return;
+    }
+    userProcessingStatus = advance(userProcessingStatus, other.getUserProcessingStatus());
+    warehouseProcessingStatus =
+        advance(warehouseProcessingStatus, other.getWarehouseProcessingStatus());
+    shipmentProcessingStatus =
+        advance(shipmentProcessingStatus, other.getShipmentProcessingStatus());
+    if (other.getOrderStatus().equals(OrderStatus.CANCELLED) || !processed()) {
+      orderStatus = other.getOrderStatus();
+    }
+    for (SagaHop hop : other.getHops()) {
+      if (!hops.contains(hop)) {
+        hops.add(hop);
+      }
+    }
+    for (String message : other.getProcessingResultMessage().split("\n")) {
+      if (!message.isEmpty() && !getProcessingResultMessage().contains(message)) {
+        addMessage(message);
+      }
+    }
+    enqueuedAt = other.getEnqueuedAt();
+    dequeuedAt = other.getDequeuedAt();
+  }
+
+  private static ProcessingStatus advance(ProcessingStatus current, ProcessingStatus other) {
+    return other.compareTo(current) > 0 ? other : current;
+  }
+
   public String getProcessingResultMessage() {
     return processingResultMessage.toString();
   }
@@ -0,0 +1,20 @@
+package common.event;
+
+import common.enums.SagaCommandType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Instruction sent by the order-service orchestrator to the command topic of a single service. The
+ * service applies its step to the carried event and replies with the updated event; {@link
+ * SagaCommandType#CONFIRM} tells the warehouse that the order was shipped and expects no reply.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SagaCommand {
+
+  private SagaCommandType type;
+  private OrderProcessingEvent orderProcessingEvent;
+}
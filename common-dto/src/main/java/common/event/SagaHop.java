@@ -0,0 +1,18 @@
+package common.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Timestamps (epoch millis) of a single saga step handled by one of the services. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SagaHop {
+
+  private String service;
+  private String step;
+  private long enqueuedAt;
+  private long dequeuedAt;
+  private long processedAt;
+}
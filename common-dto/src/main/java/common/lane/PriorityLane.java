@@ -0,0 +1,77 @@
+package common.lane;
+
+import java.util.List;
+import java.util.function.Consumer;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+/**
+ * Gives the compensations of a service precedence over its new work. Compensations are consumed in
+ * batches by a listener of their own and handled through {@link #drain}; while some of them are
+ * pending, the listener of new work is held in {@link #awaitTurn} until {@code weight}
+ * compensations have been handled since it last went ahead. Under saturation both lanes therefore
+ * progress at {@code weight} to one, and an idle compensation lane costs nothing. New work waits at
+ * most {@code maxWaitMs} per record, and not at all with a weight of 0.
+ */
+public class PriorityLane {
+
+  private final int weight;
+  private final long maxWaitMs;
+
+  private int pending;
+  private int drainedSinceTurn;
+
+  public PriorityLane(int weight, long maxWaitMs) {
+    this.weight = weight;
+    this.maxWaitMs = maxWaitMs;
+  }
+
+  /** Blocks the calling listener of new work until it is its turn. */
+  public synchronized void awaitTurn() {
+    if (weight <= 0) {
+      return;
+    }
+    long deadline = System.currentTimeMillis() + maxWaitMs;
+    while (pending > 0 && drainedSinceTurn < weight) {
+      long remainingMs = deadline - System.currentTimeMillis();
+      if (remainingMs <= 0) {
+        break;
+      }
+      try {
+        wait(remainingMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    drainedSinceTurn = 0;
+  }
+
+  /**
+   * Handles a batch of compensations in order. On failure, the rest of the batch is no longer
+   * counted as pending and the failed index is reported through a {@link
+   * BatchListenerFailedException}, so the container commits the handled records and redelivers
+   * from the failed one, as it would for a record listener.
+   */
+  public <T> void drain(List<T> batch, Consumer<T> handler) {
+    arrived(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      try {
+        handler.accept(batch.get(i));
+      } catch (RuntimeException e) {
+        released(batch.size() - i, 0);
+        throw new BatchListenerFailedException("Compensation failed", e, i);
+      }
+      released(1, 1);
+    }
+  }
+
+  private synchronized void arrived(int count) {
+    pending += count;
+  }
+
+  private synchronized void released(int count, int drained) {
+    pending -= count;
+    drainedSinceTurn += drained;
+    notifyAll();
+  }
+}
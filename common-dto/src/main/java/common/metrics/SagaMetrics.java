@@ -0,0 +1,110 @@
+package common.metrics;
+
+import common.enums.OrderStatus;
+import common.enums.ProcessingStatus;
+import common.event.OrderProcessingEvent;
+import common.event.SagaHop;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes saga latencies of a single service: queue wait and processing time of each step it
+ * handles and, in order-service, the end-to-end latency of the whole saga and the latency of each
+ * of its compensations. All the timers keep
+ * HDR-backed percentiles and a percentile histogram for the Prometheus endpoint. Steps dropped as
+ * duplicates are counted per step.
+ */
+public class SagaMetrics {
+
+  public static final String PROCESSING_STEP = "process";
+  public static final String COMPENSATION_STEP = "compensate";
+
+  private static final String QUEUE_WAIT_TIMER = "saga.step.queue.wait";
+  private static final String PROCESSING_TIMER = "saga.step.processing";
+  private static final String END_TO_END_TIMER = "saga.end.to.end";
+  private static final String COMPENSATION_TIMER = "saga.compensation";
+  private static final String DUPLICATE_COUNTER = "saga.step.duplicates";
+  private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final MeterRegistry meterRegistry;
+  private final String serviceName;
+
+  private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+  public SagaMetrics(MeterRegistry meterRegistry, String serviceName) {
+    this.meterRegistry = meterRegistry;
+    this.serviceName = serviceName;
+  }
+
+  /**
+   * Stamps the finished step into the event, records its timers and marks the event as enqueued.
+   * To be called right before the event is sent.
+   */
+  public void recordStep(OrderProcessingEvent event, String step, ProcessingStatus outcome) {
+    SagaHop hop = event.addHop(serviceName, step);
+    if (hop.getEnqueuedAt() > 0 && hop.getDequeuedAt() > 0) {
+      timer(QUEUE_WAIT_TIMER, "step", step)
+          .record(hop.getDequeuedAt() - hop.getEnqueuedAt(), TimeUnit.MILLISECONDS);
+    }
+    if (hop.getDequeuedAt() > 0) {
+      timer(PROCESSING_TIMER, "step", step, "outcome", outcome.name())
+          .record(hop.getProcessedAt() - hop.getDequeuedAt(), TimeUnit.MILLISECONDS);
+    }
+    event.markEnqueued();
+  }
+
+  /**
+   * Records the time from the order creation until the event that settled the saga, tagged with the
+   * outcome and the step that produced the event (e.g. the last compensation of a cancelled order).
+   * To be called once per saga.
+   */
+  public void recordEndToEnd(OrderProcessingEvent event) {
+    OrderStatus outcome = event.getOrderStatus();
+    timer(END_TO_END_TIMER, "outcome", outcome.name(), "step", lastStep(event))
+        .record(System.currentTimeMillis() - event.getCreatedAt(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Records the time from the order creation until a service compensated its step, tagged with
+   * that step. Events that no compensation produced are ignored, so a cancelled saga is counted
+   * once per step it reverted.
+   */
+  public void recordCompensation(OrderProcessingEvent event) {
+    List<SagaHop> hops = event.getHops();
+    if (hops.isEmpty() || !hops.get(hops.size() - 1).getStep().equals(COMPENSATION_STEP)) {
+      return;
+    }
+    timer(COMPENSATION_TIMER, "step", lastStep(event))
+        .record(System.currentTimeMillis() - event.getCreatedAt(), TimeUnit.MILLISECONDS);
+  }
+
+  /** Counts a step that was dropped because it had already been applied to the saga. */
+  public void recordDuplicate(String step) {
+    meterRegistry.counter(DUPLICATE_COUNTER, "service", serviceName, "step", step).increment();
+  }
+
+  private static String lastStep(OrderProcessingEvent event) {
+    List<SagaHop> hops = event.getHops();
+    return hops.isEmpty()
+        ? "none"
+        : hops.get(hops.size() - 1).getService() + "." + hops.get(hops.size() - 1).getStep();
+  }
+
+  private Timer timer(String name, String... tags) {
+    return timers.computeIfAbsent(
+        name + String.join(",", tags),
+        key ->
+            Timer.builder(name)
+                .tag("service", serviceName)
+                .tags(tags)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofMinutes(1))
+                .register(meterRegistry));
+  }
+}
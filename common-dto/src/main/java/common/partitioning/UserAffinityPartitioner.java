@@ -0,0 +1,60 @@
+package common.partitioning;
+
+import common.event.OrderProcessingEvent;
+import common.event.SagaCommand;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.serialization.IntegerSerializer;
+import org.apache.kafka.common.utils.Utils;
+
+/**
+ * Sends every event and command of a user to the same partition, so that the user-service instance
+ * the partition is assigned to owns the balance of the user. The partition is the one the default
+ * partitioner picks for the user ID as an {@code Integer} key, which lines the event topics up with
+ * the balance changelog keyed by user ID. Records without a user go to a random partition.
+ */
+public class UserAffinityPartitioner implements Partitioner {
+
+  private static final IntegerSerializer USER_ID_SERIALIZER = new IntegerSerializer();
+
+  @Override
+  public int partition(
+      String topic,
+      Object key,
+      byte[] keyBytes,
+      Object value,
+      byte[] valueBytes,
+      Cluster cluster) {
+    int partitionCount = cluster.partitionsForTopic(topic).size();
+    Integer userId = userIdOf(value);
+    return Objects.isNull(userId)
+        ? ThreadLocalRandom.current().nextInt(partitionCount)
+        : partitionFor(userId, partitionCount);
+  }
+
+  public static int partitionFor(int userId, int partitionCount) {
+    return Utils.toPositive(Utils.murmur2(USER_ID_SERIALIZER.serialize(null, userId)))
+        % partitionCount;
+  }
+
+  private static Integer userIdOf(Object value) {
+    OrderProcessingEvent orderProcessingEvent =
+        value instanceof SagaCommand
+            ? ((SagaCommand) value).getOrderProcessingEvent()
+            : value instanceof OrderProcessingEvent ? (OrderProcessingEvent) value : null;
+    if (Objects.isNull(orderProcessingEvent)
+        || Objects.isNull(orderProcessingEvent.getOrderDTO())) {
+      return null;
+    }
+    return orderProcessingEvent.getOrderDTO().getUserId();
+  }
+
+  @Override
+  public void configure(Map<String, ?> configs) {}
+
+  @Override
+  public void close() {}
+}
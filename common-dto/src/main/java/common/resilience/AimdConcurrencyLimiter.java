@@ -0,0 +1,65 @@
+package common.resilience;
+
+/**
+ * Adaptive concurrency limit using additive-increase/multiplicative-decrease. Every call that
+ * finishes below the latency threshold grows the limit by {@code 1/limit} (about one slot per
+ * limit-sized round of calls), while slow or failed calls shrink it by {@code backoffRatio}.
+ */
+public class AimdConcurrencyLimiter {
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final long latencyThresholdMs;
+  private final double backoffRatio;
+
+  private double limit;
+  private int inFlight;
+
+  public AimdConcurrencyLimiter(
+      int initialLimit, int minLimit, int maxLimit, long latencyThresholdMs, double backoffRatio) {
+    this.limit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.latencyThresholdMs = latencyThresholdMs;
+    this.backoffRatio = backoffRatio;
+  }
+
+  public synchronized boolean tryAcquire() {
+    if (inFlight >= (int) limit) {
+      return false;
+    }
+    inFlight++;
+    return true;
+  }
+
+  public synchronized void onSuccess(long latencyMs) {
+    inFlight--;
+    if (latencyMs > latencyThresholdMs) {
+      decreaseLimit();
+    } else {
+      limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+  }
+
+  public synchronized void onDropped() {
+    inFlight--;
+    decreaseLimit();
+  }
+
+  /** Gives the slot back without adjusting the limit, e.g. when the call was never started. */
+  public synchronized void onIgnored() {
+    inFlight--;
+  }
+
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  private void decreaseLimit() {
+    limit = Math.max(minLimit, limit * backoffRatio);
+  }
+}
@@ -0,0 +1,144 @@
+package common.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Hashed timing wheel: timeouts are hashed by their deadline tick into a fixed number of buckets,
+ * so scheduling and cancelling are O(1) and every tick only visits the bucket that is due instead
+ * of all pending timeouts. Timeouts that are more than one revolution away carry the number of
+ * remaining rounds and are skipped until that number drops to zero.
+ */
+public class HashedTimingWheel<T> {
+
+  private final long tickDurationMs;
+  private final long startTimeMs;
+  private final Bucket<T>[] wheel;
+  private final int mask;
+
+  private long currentTick;
+  private int size;
+
+  @SuppressWarnings("unchecked")
+  public HashedTimingWheel(long tickDurationMs, int wheelSize, long startTimeMs) {
+    if (tickDurationMs <= 0 || wheelSize <= 0) {
+      throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+    }
+    this.tickDurationMs = tickDurationMs;
+    this.startTimeMs = startTimeMs;
+    int normalizedWheelSize = Integer.highestOneBit(wheelSize - 1) << 1;
+    this.wheel = new Bucket[Math.max(normalizedWheelSize, 1)];
+    for (int i = 0; i < wheel.length; i++) {
+      wheel[i] = new Bucket<>();
+    }
+    this.mask = wheel.length - 1;
+  }
+
+  public synchronized Timeout<T> schedule(T payload, long deadlineMs) {
+    long deadlineTick =
+        Math.max((deadlineMs - startTimeMs + tickDurationMs - 1) / tickDurationMs, 0);
+    long tick = Math.max(deadlineTick, currentTick);
+    Timeout<T> timeout = new Timeout<>(payload, deadlineMs, (tick - currentTick) / wheel.length);
+    wheel[(int) (tick & mask)].add(timeout);
+    size++;
+    return timeout;
+  }
+
+  public synchronized boolean cancel(Timeout<T> timeout) {
+    if (Objects.isNull(timeout.bucket)) {
+      return false;
+    }
+    timeout.bucket.remove(timeout);
+    size--;
+    return true;
+  }
+
+  /** Processes every tick up to {@code nowMs} and returns the payloads whose deadline passed. */
+  public synchronized List<T> advance(long nowMs) {
+    List<T> expired = new ArrayList<>();
+    long targetTick = (nowMs - startTimeMs) / tickDurationMs;
+    while (currentTick <= targetTick) {
+      expireBucket(wheel[(int) (currentTick & mask)], expired);
+      currentTick++;
+    }
+    return expired;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  private void expireBucket(Bucket<T> bucket, List<T> expired) {
+    Timeout<T> timeout = bucket.head;
+    while (Objects.nonNull(timeout)) {
+      Timeout<T> next = timeout.next;
+      if (timeout.remainingRounds <= 0) {
+        bucket.remove(timeout);
+        size--;
+        expired.add(timeout.payload);
+      } else {
+        timeout.remainingRounds--;
+      }
+      timeout = next;
+    }
+  }
+
+  public static class Timeout<T> {
+
+    private final T payload;
+    private final long deadlineMs;
+    private long remainingRounds;
+
+    private Bucket<T> bucket;
+    private Timeout<T> prev;
+    private Timeout<T> next;
+
+    private Timeout(T payload, long deadlineMs, long remainingRounds) {
+      this.payload = payload;
+      this.deadlineMs = deadlineMs;
+      this.remainingRounds = remainingRounds;
+    }
+
+    public T getPayload() {
+      return payload;
+    }
+
+    public long getDeadlineMs() {
+      return deadlineMs;
+    }
+  }
+
+  private static class Bucket<T> {
+
+    private Timeout<T> head;
+    private Timeout<T> tail;
+
+    private void add(Timeout<T> timeout) {
+      timeout.bucket = this;
+      if (Objects.isNull(head)) {
+        head = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.prev = tail;
+      }
+      tail = timeout;
+    }
+
+    private void remove(Timeout<T> timeout) {
+      if (Objects.nonNull(timeout.prev)) {
+        timeout.prev.next = timeout.next;
+      } else {
+        head = timeout.next;
+      }
+      if (Objects.nonNull(timeout.next)) {
+        timeout.next.prev = timeout.prev;
+      } else {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+    }
+  }
+}
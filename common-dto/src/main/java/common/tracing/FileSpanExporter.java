@@ -0,0 +1,45 @@
+package common.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import lombok.extern.slf4j.Slf4j;
+
+/** Appends spans to a file, one JSON document per line. */
+@Slf4j
+public class FileSpanExporter implements SpanExporter, AutoCloseable {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final BufferedWriter writer;
+
+  public FileSpanExporter(Path file) {
+    try {
+      writer =
+          Files.newBufferedWriter(
+              file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Span file can not be opened: " + file, e);
+    }
+  }
+
+  @Override
+  public synchronized void export(Span span) {
+    try {
+      writer.write(objectMapper.writeValueAsString(span));
+      writer.newLine();
+      writer.flush();
+    } catch (IOException e) {
+      log.error("Exception occurred during span export. Exception: ", e);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    writer.close();
+  }
+}
@@ -0,0 +1,33 @@
+package common.tracing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/** Keeps the most recent spans in memory, e.g. for local testing and the harness. */
+public class InMemorySpanExporter implements SpanExporter {
+
+  private final int capacity;
+  private final Deque<Span> spans = new ArrayDeque<>();
+
+  public InMemorySpanExporter(int capacity) {
+    this.capacity = capacity;
+  }
+
+  @Override
+  public synchronized void export(Span span) {
+    if (spans.size() == capacity) {
+      spans.removeFirst();
+    }
+    spans.addLast(span);
+  }
+
+  public synchronized List<Span> getFinishedSpans() {
+    return new ArrayList<>(spans);
+  }
+
+  public synchronized void reset() {
+    spans.clear();
+  }
+}
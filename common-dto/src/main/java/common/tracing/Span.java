@@ -0,0 +1,56 @@
+package common.tracing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+
+/**
+ * A timed unit of work. Spans are started by {@link Tracer#startSpan(String)}, become the current
+ * span of the thread and must be closed on the same thread, which ends them and restores the
+ * previous span. Spans that are not sampled only carry the context and are never exported.
+ */
+public class Span implements AutoCloseable {
+
+  @Getter private final String name;
+  @Getter private final String service;
+  @Getter private final TraceContext context;
+  @Getter private final String parentSpanId;
+  @Getter private final long startEpochMicros;
+  @Getter private final Map<String, String> attributes = new LinkedHashMap<>();
+
+  @Getter private long durationMicros;
+
+  private final long startNanos;
+  private final Tracer tracer;
+  private final TraceContext previousContext;
+
+  Span(
+      Tracer tracer,
+      String name,
+      TraceContext context,
+      String parentSpanId,
+      TraceContext previousContext) {
+    this.tracer = tracer;
+    this.name = name;
+    this.service = tracer.getServiceName();
+    this.context = context;
+    this.parentSpanId = parentSpanId;
+    this.previousContext = previousContext;
+    this.startEpochMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    this.startNanos = System.nanoTime();
+  }
+
+  public Span setAttribute(String key, Object value) {
+    if (context.isSampled()) {
+      attributes.put(key, String.valueOf(value));
+    }
+    return this;
+  }
+
+  @Override
+  public void close() {
+    durationMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    tracer.finish(this, previousContext);
+  }
+}
@@ -0,0 +1,11 @@
+package common.tracing;
+
+/** Destination of finished, sampled spans, selected by {@code config.tracing.exporter}. */
+public interface SpanExporter {
+
+  void export(Span span);
+
+  static SpanExporter none() {
+    return span -> {};
+  }
+}
@@ -0,0 +1,61 @@
+package common.tracing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/** Identifiers of a span that travel between services as a W3C {@code traceparent} header. */
+@Getter
+@RequiredArgsConstructor
+public class TraceContext {
+
+  public static final String TRACEPARENT_HEADER = "traceparent";
+
+  private static final String VERSION = "00";
+
+  private final String traceId;
+  private final String spanId;
+  private final boolean sampled;
+
+  public String toTraceparent() {
+    return VERSION + "-" + traceId + "-" + spanId + "-" + (sampled ? "01" : "00");
+  }
+
+  /** @return the parsed context, or {@code null} if the header is missing or malformed */
+  public static TraceContext fromTraceparent(String traceparent) {
+    if (Objects.isNull(traceparent) || traceparent.length() != 55) {
+      return null;
+    }
+    String[] parts = traceparent.split("-");
+    if (parts.length != 4 || parts[1].length() != 32 || parts[2].length() != 16) {
+      return null;
+    }
+    return new TraceContext(parts[1], parts[2], "01".equals(parts[3]));
+  }
+
+  /** @return the context of the last {@code traceparent} header, or {@code null} if none */
+  public static TraceContext fromHeaders(Headers headers) {
+    Header traceparent = headers.lastHeader(TRACEPARENT_HEADER);
+    return Objects.isNull(traceparent)
+        ? null
+        : fromTraceparent(new String(traceparent.value(), StandardCharsets.UTF_8));
+  }
+
+  static String newTraceId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return toHex(random.nextLong()) + toHex(random.nextLong());
+  }
+
+  static String newSpanId() {
+    return toHex(ThreadLocalRandom.current().nextLong());
+  }
+
+  private static String toHex(long value) {
+    String hex = Long.toHexString(value);
+    return "0000000000000000".substring(hex.length()) + hex;
+  }
+}
@@ -0,0 +1,93 @@
+package common.tracing;
+
+import java.util.Objects;
+import lombok.Getter;
+
+/**
+ * Minimal tracer: keeps the current {@link TraceContext} per thread, starts child or root spans and
+ * hands finished, sampled spans to the {@link SpanExporter}. The sampling decision is taken once
+ * per trace from its id, so all the services keep or drop the same traces.
+ */
+public class Tracer {
+
+  private final ThreadLocal<TraceContext> currentContext = new ThreadLocal<>();
+
+  @Getter private final String serviceName;
+  private final double sampleRatio;
+  @Getter private final SpanExporter spanExporter;
+
+  public Tracer(String serviceName, double sampleRatio, SpanExporter spanExporter) {
+    this.serviceName = serviceName;
+    this.sampleRatio = sampleRatio;
+    this.spanExporter = spanExporter;
+  }
+
+  /** Starts a child of the current span, or a new trace if there is none. */
+  public Span startSpan(String name) {
+    return startSpan(name, currentContext.get());
+  }
+
+  /** Starts a child of the given (e.g. remote) context, or a new trace if it is {@code null}. */
+  public Span startSpan(String name, TraceContext parentContext) {
+    TraceContext previousContext = currentContext.get();
+    TraceContext context;
+    String parentSpanId = null;
+    if (Objects.isNull(parentContext)) {
+      String traceId = TraceContext.newTraceId();
+      context = new TraceContext(traceId, TraceContext.newSpanId(), isSampled(traceId));
+    } else {
+      context =
+          new TraceContext(
+              parentContext.getTraceId(), TraceContext.newSpanId(), parentContext.isSampled());
+      parentSpanId = parentContext.getSpanId();
+    }
+    currentContext.set(context);
+    return new Span(this, name, context, parentSpanId, previousContext);
+  }
+
+  public TraceContext currentContext() {
+    return currentContext.get();
+  }
+
+  /**
+   * Makes the given context current until the returned scope is closed. Used to continue a trace
+   * on another thread.
+   */
+  public Scope withContext(TraceContext context) {
+    TraceContext previousContext = currentContext.get();
+    currentContext.set(context);
+    return () -> restore(previousContext);
+  }
+
+  void finish(Span span, TraceContext previousContext) {
+    restore(previousContext);
+    if (span.getContext().isSampled()) {
+      spanExporter.export(span);
+    }
+  }
+
+  private void restore(TraceContext previousContext) {
+    if (Objects.isNull(previousContext)) {
+      currentContext.remove();
+    } else {
+      currentContext.set(previousContext);
+    }
+  }
+
+  private boolean isSampled(String traceId) {
+    if (sampleRatio <= 0) {
+      return false;
+    }
+    if (sampleRatio >= 1) {
+      return true;
+    }
+    long bucket = Long.parseUnsignedLong(traceId.substring(16), 16) >>> 11;
+    return bucket < (long) (sampleRatio * (1L << 53));
+  }
+
+  public interface Scope extends AutoCloseable {
+
+    @Override
+    void close();
+  }
+}
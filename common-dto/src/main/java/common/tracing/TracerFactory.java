@@ -0,0 +1,26 @@
+package common.tracing;
+
+import java.nio.file.Paths;
+
+public final class TracerFactory {
+
+  private TracerFactory() {}
+
+  /**
+   * @param exporter {@code none}, {@code in-memory} or {@code file}
+   * @param file span file used by the {@code file} exporter
+   */
+  public static Tracer create(
+      String serviceName, double sampleRatio, String exporter, String file) {
+    switch (exporter) {
+      case "none":
+        return new Tracer(serviceName, 0, SpanExporter.none());
+      case "in-memory":
+        return new Tracer(serviceName, sampleRatio, new InMemorySpanExporter(10_000));
+      case "file":
+        return new Tracer(serviceName, sampleRatio, new FileSpanExporter(Paths.get(file)));
+      default:
+        throw new IllegalArgumentException("Unknown span exporter: " + exporter);
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package common.tracing;
+
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/** Continues the caller's trace (if any) for the duration of an HTTP request. */
+@RequiredArgsConstructor
+public class TracingFilter extends OncePerRequestFilter {
+
+  private final Tracer tracer;
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    TraceContext parentContext =
+        TraceContext.fromTraceparent(request.getHeader(TraceContext.TRACEPARENT_HEADER));
+    try (Span span =
+        tracer.startSpan(request.getMethod() + " " + request.getRequestURI(), parentContext)) {
+      filterChain.doFilter(request, response);
+      span.setAttribute("status", response.getStatus());
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package common.tracing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.kafka.clients.producer.ProducerInterceptor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+/**
+ * Adds the current trace context to every produced record as a {@code traceparent} header. The
+ * {@link Tracer} is passed in the producer properties under {@link #TRACER_CONFIG}.
+ */
+public class TracingProducerInterceptor implements ProducerInterceptor<Object, Object> {
+
+  public static final String TRACER_CONFIG = "saga.tracer";
+
+  private Tracer tracer;
+
+  @Override
+  public void configure(Map<String, ?> configs) {
+    tracer = (Tracer) configs.get(TRACER_CONFIG);
+  }
+
+  @Override
+  public ProducerRecord<Object, Object> onSend(ProducerRecord<Object, Object> record) {
+    TraceContext context = Objects.nonNull(tracer) ? tracer.currentContext() : null;
+    if (Objects.nonNull(context)) {
+      record
+          .headers()
+          .remove(TraceContext.TRACEPARENT_HEADER)
+          .add(
+              TraceContext.TRACEPARENT_HEADER,
+              context.toTraceparent().getBytes(StandardCharsets.UTF_8));
+    }
+    return record;
+  }
+
+  @Override
+  public void onAcknowledgement(RecordMetadata metadata, Exception exception) {}
+
+  @Override
+  public void close() {}
+}
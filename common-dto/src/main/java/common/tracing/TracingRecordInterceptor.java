@@ -0,0 +1,52 @@
+package common.tracing;
+
+import java.util.Objects;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.RecordInterceptor;
+
+/**
+ * Restores the trace context from the {@code traceparent} header of a consumed record and keeps a
+ * span open around the listener invocation.
+ */
+@RequiredArgsConstructor
+public class TracingRecordInterceptor<K, V> implements RecordInterceptor<K, V> {
+
+  private final Tracer tracer;
+
+  private final ThreadLocal<Span> receiveSpan = new ThreadLocal<>();
+
+  @Override
+  public ConsumerRecord<K, V> intercept(ConsumerRecord<K, V> record, Consumer<K, V> consumer) {
+    Span span =
+        tracer.startSpan("receive " + record.topic(), TraceContext.fromHeaders(record.headers()));
+    span.setAttribute("partition", record.partition()).setAttribute("offset", record.offset());
+    receiveSpan.set(span);
+    return record;
+  }
+
+  /** Still abstract in this version of spring-kafka, which only calls the variant above. */
+  @Deprecated
+  @Override
+  public ConsumerRecord<K, V> intercept(ConsumerRecord<K, V> record) {
+    return intercept(record, null);
+  }
+
+  @Override
+  public void failure(ConsumerRecord<K, V> record, Exception exception, Consumer<K, V> consumer) {
+    Span span = receiveSpan.get();
+    if (Objects.nonNull(span)) {
+      span.setAttribute("error", exception.getMessage());
+    }
+  }
+
+  @Override
+  public void afterRecord(ConsumerRecord<K, V> record, Consumer<K, V> consumer) {
+    Span span = receiveSpan.get();
+    if (Objects.nonNull(span)) {
+      receiveSpan.remove();
+      span.close();
+    }
+  }
+}
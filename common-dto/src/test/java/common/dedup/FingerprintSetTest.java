@@ -0,0 +1,50 @@
+package common.dedup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class FingerprintSetTest {
+
+  @Test
+  void addsEachFingerprintOnce() {
+    FingerprintSet fingerprints = new FingerprintSet();
+
+    assertTrue(fingerprints.add(42));
+    assertFalse(fingerprints.add(42));
+    assertTrue(fingerprints.contains(42));
+    assertFalse(fingerprints.contains(43));
+    assertEquals(1, fingerprints.size());
+  }
+
+  @Test
+  void findsFingerprintsThatShareTheirSlot() {
+    FingerprintSet fingerprints = new FingerprintSet();
+    long[] colliding = {7, 7 + (1L << 10), 7 + (1L << 40), -7};
+
+    for (long fingerprint : colliding) {
+      assertTrue(fingerprints.add(fingerprint));
+    }
+
+    for (long fingerprint : colliding) {
+      assertTrue(fingerprints.contains(fingerprint));
+    }
+    assertEquals(colliding.length, fingerprints.size());
+  }
+
+  @Test
+  void keepsEveryFingerprintWhileGrowing() {
+    FingerprintSet fingerprints = new FingerprintSet();
+
+    for (long fingerprint = 1; fingerprint <= 10_000; fingerprint++) {
+      fingerprints.add(fingerprint * 0x9E3779B97F4A7C15L);
+    }
+
+    for (long fingerprint = 1; fingerprint <= 10_000; fingerprint++) {
+      assertTrue(fingerprints.contains(fingerprint * 0x9E3779B97F4A7C15L));
+    }
+    assertEquals(10_000, fingerprints.size());
+  }
+}
@@ -0,0 +1,172 @@
+package common.dedup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProcessedEventIndexTest {
+
+  private static final String STEP = "processing";
+  private static final long WINDOW_MS = 60_000;
+  private static final long SHORT_WINDOW_MS = 100;
+
+  @TempDir Path indexDirectory;
+
+  private final UUID uuid = UUID.randomUUID();
+  private final AtomicInteger runs = new AtomicInteger();
+
+  @Test
+  void runsAStepOncePerSaga() {
+    ProcessedEventIndex index = ProcessedEventIndex.inMemory(WINDOW_MS, 4, 100);
+
+    assertTrue(index.runOnce(uuid, STEP, runs::incrementAndGet));
+    assertFalse(index.runOnce(uuid, STEP, runs::incrementAndGet));
+    assertTrue(index.runOnce(uuid, "compensation", runs::incrementAndGet));
+    assertTrue(index.runOnce(UUID.randomUUID(), STEP, runs::incrementAndGet));
+
+    assertEquals(3, runs.get());
+    assertEquals(3, index.size());
+  }
+
+  @Test
+  void dropsADuplicateDeliveredWhileTheStepRuns() {
+    ProcessedEventIndex index = ProcessedEventIndex.inMemory(WINDOW_MS, 4, 100);
+
+    index.runOnce(
+        uuid, STEP, () -> assertFalse(index.runOnce(uuid, STEP, runs::incrementAndGet)));
+
+    assertEquals(0, runs.get());
+  }
+
+  @Test
+  void runsAFailedStepAgain() {
+    ProcessedEventIndex index = ProcessedEventIndex.inMemory(WINDOW_MS, 4, 100);
+
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            index.runOnce(
+                uuid,
+                STEP,
+                () -> {
+                  throw new IllegalStateException("store unavailable");
+                }));
+
+    assertTrue(index.runOnce(uuid, STEP, runs::incrementAndGet));
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  void fencesAStepThatHasNotRunYet() {
+    ProcessedEventIndex index = ProcessedEventIndex.inMemory(WINDOW_MS, 4, 100);
+
+    assertTrue(index.fence(uuid, STEP));
+    assertFalse(index.fence(uuid, STEP));
+    assertFalse(index.runOnce(uuid, STEP, runs::incrementAndGet));
+    assertEquals(0, runs.get());
+  }
+
+  @Test
+  void forgetsStepsOnceTheirBucketLeftTheWindow() throws InterruptedException {
+    ProcessedEventIndex index = ProcessedEventIndex.inMemory(SHORT_WINDOW_MS, 2, 100);
+    index.runOnce(uuid, STEP, runs::incrementAndGet);
+
+    TimeUnit.MILLISECONDS.sleep(3 * SHORT_WINDOW_MS);
+
+    assertTrue(index.runOnce(uuid, STEP, runs::incrementAndGet));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  void dropsTheOldestBucketsBeyondTheMaximumEntries() throws InterruptedException {
+    ProcessedEventIndex index = ProcessedEventIndex.inMemory(WINDOW_MS, (int) WINDOW_MS, 2);
+    UUID[] uuids = {UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()};
+    for (UUID stepUuid : uuids) {
+      index.runOnce(stepUuid, STEP, runs::incrementAndGet);
+      TimeUnit.MILLISECONDS.sleep(5);
+    }
+
+    assertEquals(2, index.size());
+    assertFalse(index.runOnce(uuids[2], STEP, runs::incrementAndGet));
+    assertTrue(index.runOnce(uuids[0], STEP, runs::incrementAndGet));
+  }
+
+  @Test
+  void reloadsTheStepsOfTheWindowAfterARestart() {
+    try (ProcessedEventIndex index = new ProcessedEventIndex(indexDirectory, WINDOW_MS, 4, 100)) {
+      index.runOnce(uuid, STEP, runs::incrementAndGet);
+    }
+
+    try (ProcessedEventIndex index = new ProcessedEventIndex(indexDirectory, WINDOW_MS, 4, 100)) {
+      assertEquals(1, index.size());
+      assertFalse(index.runOnce(uuid, STEP, runs::incrementAndGet));
+    }
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  void deletesTheBucketsOutsideTheWindowOnReload() throws IOException, InterruptedException {
+    try (ProcessedEventIndex index =
+        new ProcessedEventIndex(indexDirectory, SHORT_WINDOW_MS, 2, 100)) {
+      index.runOnce(uuid, STEP, runs::incrementAndGet);
+    }
+    TimeUnit.MILLISECONDS.sleep(3 * SHORT_WINDOW_MS);
+
+    try (ProcessedEventIndex index =
+        new ProcessedEventIndex(indexDirectory, SHORT_WINDOW_MS, 2, 100)) {
+      assertEquals(0, index.size());
+      try (Stream<Path> files = Files.list(indexDirectory)) {
+        assertEquals(0, files.count());
+      }
+      assertTrue(index.runOnce(uuid, STEP, runs::incrementAndGet));
+    }
+  }
+
+  @Test
+  void keepsTheOutcomeOfAFailedSendUntilItIsTaken() {
+    ProcessedEventIndex index = ProcessedEventIndex.inMemory(WINDOW_MS, 4, 100);
+    CompletableFuture<Void> failedSend = new CompletableFuture<>();
+    failedSend.completeExceptionally(new IllegalStateException("broker unavailable"));
+
+    index.keepIfUnsent(uuid, STEP, "outcome", failedSend);
+
+    assertEquals("outcome", index.takeUnsentOutcome(uuid, STEP));
+    assertNull(index.takeUnsentOutcome(uuid, STEP));
+  }
+
+  @Test
+  void keepsNoOutcomeOfASuccessfulSend() {
+    ProcessedEventIndex index = ProcessedEventIndex.inMemory(WINDOW_MS, 4, 100);
+
+    index.keepIfUnsent(uuid, STEP, "outcome", CompletableFuture.completedFuture(null));
+
+    assertNull(index.takeUnsentOutcome(uuid, STEP));
+  }
+
+  @Test
+  void dropsTheOldestUnsentOutcomesBeyondTheMaximumEntries() {
+    ProcessedEventIndex index = ProcessedEventIndex.inMemory(WINDOW_MS, 4, 1);
+    CompletableFuture<Void> failedSend = new CompletableFuture<>();
+    failedSend.completeExceptionally(new IllegalStateException("broker unavailable"));
+    UUID laterUuid = UUID.randomUUID();
+
+    index.keepIfUnsent(uuid, STEP, "first", failedSend);
+    index.keepIfUnsent(laterUuid, STEP, "second", failedSend);
+
+    assertNull(index.takeUnsentOutcome(uuid, STEP));
+    assertEquals("second", index.takeUnsentOutcome(laterUuid, STEP));
+  }
+}
@@ -0,0 +1,118 @@
+package common.lane;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+class PriorityLaneTest {
+
+  private static final long LONG_WAIT_MS = 10_000;
+  private static final long BLOCKED_CHECK_MS = 200;
+  private static final Duration PROMPTLY = Duration.ofSeconds(1);
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  /** Each compensation handled takes one permit, so the test decides when it finishes. */
+  private final Semaphore handledCompensations = new Semaphore(0);
+
+  @AfterEach
+  void shutDown() {
+    handledCompensations.release(Integer.MAX_VALUE / 2);
+    executor.shutdownNow();
+  }
+
+  @Test
+  void letsNewWorkGoAheadWithoutPendingCompensations() {
+    PriorityLane lane = new PriorityLane(2, LONG_WAIT_MS);
+
+    assertTimeout(PROMPTLY, lane::awaitTurn);
+  }
+
+  @Test
+  void holdsNewWorkUntilWeightCompensationsWereHandled() throws Exception {
+    PriorityLane lane = new PriorityLane(2, LONG_WAIT_MS);
+    drainInBackground(lane, 3);
+    awaitPending();
+
+    Future<?> newWork = executor.submit(lane::awaitTurn);
+    handledCompensations.release();
+    assertBlocked(newWork);
+
+    handledCompensations.release();
+    newWork.get(PROMPTLY.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  void neverHoldsNewWorkWithAWeightOfZero() {
+    PriorityLane lane = new PriorityLane(0, LONG_WAIT_MS);
+    drainInBackground(lane, 1);
+    awaitPending();
+
+    assertTimeout(PROMPTLY, lane::awaitTurn);
+  }
+
+  @Test
+  void holdsNewWorkAtMostTheMaximumWait() {
+    PriorityLane lane = new PriorityLane(10, 50);
+    drainInBackground(lane, 1);
+    awaitPending();
+
+    assertTimeout(PROMPTLY, lane::awaitTurn);
+  }
+
+  @Test
+  void reportsTheFailedCompensationAndReleasesTheRestOfTheBatch() {
+    PriorityLane lane = new PriorityLane(2, LONG_WAIT_MS);
+
+    BatchListenerFailedException e =
+        assertThrows(
+            BatchListenerFailedException.class,
+            () ->
+                lane.drain(
+                    Arrays.asList("refund", "release", "refund again"),
+                    compensation -> {
+                      if (compensation.equals("release")) {
+                        throw new IllegalStateException("store unavailable");
+                      }
+                    }));
+
+    assertEquals(1, e.getIndex());
+    assertTimeout(PROMPTLY, lane::awaitTurn);
+  }
+
+  private void drainInBackground(PriorityLane lane, int batchSize) {
+    executor.submit(
+        () ->
+            lane.drain(
+                Arrays.asList(new Integer[batchSize]),
+                compensation -> handledCompensations.acquireUninterruptibly()));
+  }
+
+  /** The drain counts its batch as pending before it handles the first compensation. */
+  private void awaitPending() {
+    assertTimeout(
+        PROMPTLY,
+        () -> {
+          while (!handledCompensations.hasQueuedThreads()) {
+            Thread.sleep(1);
+          }
+        });
+  }
+
+  private static void assertBlocked(Future<?> newWork) throws InterruptedException {
+    TimeUnit.MILLISECONDS.sleep(BLOCKED_CHECK_MS);
+    assertFalse(newWork.isDone());
+  }
+}
@@ -0,0 +1,94 @@
+package common.partitioning;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import common.dto.OrderDTO;
+import common.enums.SagaCommandType;
+import common.event.OrderProcessingEvent;
+import common.event.SagaCommand;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.IntegerSerializer;
+import org.junit.jupiter.api.Test;
+
+class UserAffinityPartitionerTest {
+
+  private static final String TOPIC = "order-processing";
+  private static final int PARTITION_COUNT = 6;
+
+  private final UserAffinityPartitioner partitioner = new UserAffinityPartitioner();
+  private final Cluster cluster = cluster();
+
+  @Test
+  void sendsEventsAndCommandsOfAUserToThePartitionOfItsUserIdKey() {
+    DefaultPartitioner keyPartitioner = new DefaultPartitioner();
+    IntegerSerializer keySerializer = new IntegerSerializer();
+
+    for (int userId = 1; userId <= 100; userId++) {
+      OrderProcessingEvent event = event(userId);
+      SagaCommand command = new SagaCommand(SagaCommandType.PROCESS, event);
+      byte[] keyBytes = keySerializer.serialize(TOPIC, userId);
+      int keyPartition = keyPartitioner.partition(TOPIC, userId, keyBytes, null, null, cluster);
+
+      assertEquals(keyPartition, partition(event));
+      assertEquals(keyPartition, partition(command));
+      assertEquals(keyPartition, UserAffinityPartitioner.partitionFor(userId, PARTITION_COUNT));
+    }
+  }
+
+  @Test
+  void spreadsTheUsersOverThePartitions() {
+    Set<Integer> partitions = new HashSet<>();
+
+    for (int userId = 1; userId <= 100; userId++) {
+      partitions.add(partition(event(userId)));
+    }
+
+    assertEquals(PARTITION_COUNT, partitions.size());
+  }
+
+  @Test
+  void sendsRecordsWithoutAUserToAnyPartition() {
+    OrderProcessingEvent eventWithoutOrder = new OrderProcessingEvent();
+
+    for (Object value : new Object[] {null, "not a saga record", eventWithoutOrder}) {
+      int partition = partition(value);
+      assertTrue(partition >= 0 && partition < PARTITION_COUNT, "partition " + partition);
+    }
+  }
+
+  private int partition(Object value) {
+    return partitioner.partition(TOPIC, null, null, value, null, cluster);
+  }
+
+  private static OrderProcessingEvent event(int userId) {
+    OrderDTO orderDTO = new OrderDTO();
+    orderDTO.setUserId(userId);
+    OrderProcessingEvent event = new OrderProcessingEvent();
+    event.setOrderDTO(orderDTO);
+    return event;
+  }
+
+  private static Cluster cluster() {
+    Node node = new Node(0, "localhost", 9092);
+    List<PartitionInfo> partitions = new ArrayList<>();
+    for (int partition = 0; partition < PARTITION_COUNT; partition++) {
+      partitions.add(
+          new PartitionInfo(TOPIC, partition, node, new Node[] {node}, new Node[] {node}));
+    }
+    return new Cluster(
+        "saga",
+        Collections.singletonList(node),
+        partitions,
+        Collections.emptySet(),
+        Collections.emptySet());
+  }
+}
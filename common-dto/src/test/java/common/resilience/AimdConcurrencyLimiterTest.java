@@ -0,0 +1,76 @@
+package common.resilience;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AimdConcurrencyLimiterTest {
+
+  private static final long LATENCY_THRESHOLD_MS = 100;
+
+  @Test
+  void rejectsCallsBeyondTheLimit() {
+    AimdConcurrencyLimiter limiter = limiter(2, 1, 10);
+
+    assertTrue(limiter.tryAcquire());
+    assertTrue(limiter.tryAcquire());
+    assertFalse(limiter.tryAcquire());
+    assertEquals(2, limiter.getInFlight());
+  }
+
+  @Test
+  void growsTheLimitByAboutOneSlotPerRoundOfFastCalls() {
+    AimdConcurrencyLimiter limiter = limiter(2, 1, 10);
+
+    for (int i = 0; i < 3; i++) {
+      limiter.tryAcquire();
+      limiter.onSuccess(LATENCY_THRESHOLD_MS);
+    }
+
+    assertEquals(3, limiter.getLimit());
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  void shrinksTheLimitOnSlowOrDroppedCalls() {
+    AimdConcurrencyLimiter limiter = limiter(10, 1, 10);
+
+    limiter.tryAcquire();
+    limiter.onSuccess(LATENCY_THRESHOLD_MS + 1);
+    assertEquals(5, limiter.getLimit());
+
+    limiter.tryAcquire();
+    limiter.onDropped();
+    assertEquals(2, limiter.getLimit());
+  }
+
+  @Test
+  void keepsTheLimitBetweenItsBounds() {
+    AimdConcurrencyLimiter limiter = limiter(2, 2, 2);
+
+    limiter.tryAcquire();
+    limiter.onDropped();
+    assertEquals(2, limiter.getLimit());
+
+    limiter.tryAcquire();
+    limiter.onSuccess(0);
+    assertEquals(2, limiter.getLimit());
+  }
+
+  @Test
+  void givesIgnoredSlotBackWithoutAdjustingTheLimit() {
+    AimdConcurrencyLimiter limiter = limiter(4, 1, 10);
+
+    limiter.tryAcquire();
+    limiter.onIgnored();
+
+    assertEquals(4, limiter.getLimit());
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  private static AimdConcurrencyLimiter limiter(int initialLimit, int minLimit, int maxLimit) {
+    return new AimdConcurrencyLimiter(initialLimit, minLimit, maxLimit, LATENCY_THRESHOLD_MS, 0.5);
+  }
+}
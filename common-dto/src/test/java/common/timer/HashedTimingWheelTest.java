@@ -0,0 +1,69 @@
+package common.timer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+
+class HashedTimingWheelTest {
+
+  @Test
+  void expiresTimeoutOnceItsDeadlineTickPassed() {
+    HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 8, 0);
+    wheel.schedule("order", 25);
+
+    assertEquals(Collections.emptyList(), wheel.advance(20));
+    assertEquals(Collections.singletonList("order"), wheel.advance(30));
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  void keepsTimeoutMoreThanOneRevolutionAwayUntilItsLastRound() {
+    HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 4, 0);
+    wheel.schedule("far", 95);
+
+    assertEquals(Collections.emptyList(), wheel.advance(50));
+    assertEquals(Collections.emptyList(), wheel.advance(90));
+    assertEquals(Collections.singletonList("far"), wheel.advance(100));
+  }
+
+  @Test
+  void expiresTimeoutsOfTheSameTickInScheduleOrder() {
+    HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 8, 0);
+    wheel.schedule("first", 15);
+    wheel.schedule("second", 20);
+
+    assertEquals(Arrays.asList("first", "second"), wheel.advance(20));
+  }
+
+  @Test
+  void dropsCancelledTimeout() {
+    HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 8, 0);
+    HashedTimingWheel.Timeout<String> timeout = wheel.schedule("cancelled", 25);
+    wheel.schedule("kept", 25);
+
+    assertTrue(wheel.cancel(timeout));
+    assertFalse(wheel.cancel(timeout));
+    assertEquals(1, wheel.size());
+    assertEquals(Collections.singletonList("kept"), wheel.advance(30));
+  }
+
+  @Test
+  void expiresTimeoutScheduledInThePastOnTheNextTick() {
+    HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 8, 0);
+    wheel.advance(100);
+    wheel.schedule("late", 50);
+
+    assertEquals(Collections.singletonList("late"), wheel.advance(110));
+  }
+
+  @Test
+  void rejectsNonPositiveTickDurationOrWheelSize() {
+    assertThrows(IllegalArgumentException.class, () -> new HashedTimingWheel<>(0, 8, 0));
+    assertThrows(IllegalArgumentException.class, () -> new HashedTimingWheel<>(10, 0, 0));
+  }
+}
@@ -0,0 +1,121 @@
+package loadgenerator;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import loadgenerator.connector.OrderServiceConnector;
+import loadgenerator.report.LoadReport;
+import loadgenerator.runner.ClosedLoopRunner;
+import loadgenerator.runner.LoadRunner;
+import loadgenerator.runner.OpenLoopRunner;
+import loadgenerator.workload.OrderMix;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/** Runs a warm-up phase and a measured phase against order-service, then reports the latter. */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LoadGenerator implements CommandLineRunner {
+
+  private static final long DRAIN_POLL_INTERVAL_MS = 100;
+
+  private final OrderServiceConnector orderServiceConnector;
+
+  @Value("${config.order-service.url}")
+  private String orderServiceURL;
+
+  @Value("${config.load.mode}")
+  private String mode;
+
+  @Value("${config.load.rate-per-second}")
+  private double ratePerSecond;
+
+  @Value("${config.load.concurrency}")
+  private int concurrency;
+
+  @Value("${config.load.warmup-sec}")
+  private long warmupSec;
+
+  @Value("${config.load.duration-sec}")
+  private long durationSec;
+
+  @Value("${config.load.report-interval-sec}")
+  private long reportIntervalSec;
+
+  @Value("${config.load.request-timeout-sec}")
+  private long requestTimeoutSec;
+
+  @Value("${config.load.mix}")
+  private String mix;
+
+  @Value("${config.load.seed}")
+  private String seed;
+
+  @Value("${config.load.histogram-file}")
+  private String histogramFile;
+
+  @Override
+  public void run(String... args) throws Exception {
+    OrderMix orderMix = OrderMix.parse(mix);
+    Random random = StringUtils.hasText(seed) ? new Random(Long.parseLong(seed)) : new Random();
+    LoadRunner loadRunner = loadRunner(orderMix, random);
+    log.info("Driving {}-loop load against {} with order mix {}", mode, orderServiceURL, orderMix);
+
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    try {
+      if (warmupSec > 0) {
+        runPhase(loadRunner, reporter, "warm-up", warmupSec);
+      }
+      LoadReport report = runPhase(loadRunner, reporter, "measurement", durationSec);
+      if (StringUtils.hasText(histogramFile)) {
+        report.writeHistogram(histogramFile);
+        log.info("Latency distribution written to {}", histogramFile);
+      }
+    } finally {
+      reporter.shutdownNow();
+    }
+  }
+
+  private LoadRunner loadRunner(OrderMix orderMix, Random random) {
+    switch (mode) {
+      case "open":
+        return new OpenLoopRunner(orderServiceConnector, orderMix, random, ratePerSecond);
+      case "closed":
+        return new ClosedLoopRunner(orderServiceConnector, orderMix, random, concurrency);
+      default:
+        throw new IllegalArgumentException("Unknown load mode: " + mode);
+    }
+  }
+
+  private LoadReport runPhase(
+      LoadRunner loadRunner, ScheduledExecutorService reporter, String phase, long phaseSec)
+      throws InterruptedException {
+    LoadReport report = new LoadReport(phase);
+    ScheduledFuture<?> intervals =
+        reporter.scheduleAtFixedRate(
+            report::logInterval, reportIntervalSec, reportIntervalSec, TimeUnit.SECONDS);
+    try {
+      loadRunner.run(report, TimeUnit.SECONDS.toNanos(phaseSec));
+      awaitInFlightOrders(report);
+    } finally {
+      intervals.cancel(false);
+    }
+    report.logSummary();
+    return report;
+  }
+
+  /** Orders still in flight are the slowest ones; leaving them out would flatter the tail. */
+  private void awaitInFlightOrders(LoadReport report) throws InterruptedException {
+    long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(requestTimeoutSec);
+    while (report.getInFlight() > 0 && System.nanoTime() - deadlineNanos < 0) {
+      TimeUnit.MILLISECONDS.sleep(DRAIN_POLL_INTERVAL_MS);
+    }
+  }
+}
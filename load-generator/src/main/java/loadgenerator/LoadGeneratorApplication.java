@@ -0,0 +1,12 @@
+package loadgenerator;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class LoadGeneratorApplication {
+
+  public static void main(String[] args) {
+    System.exit(SpringApplication.exit(SpringApplication.run(LoadGeneratorApplication.class)));
+  }
+}
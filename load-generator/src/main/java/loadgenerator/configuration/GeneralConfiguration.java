@@ -0,0 +1,44 @@
+package loadgenerator.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class GeneralConfiguration {
+
+  private static final int KEEP_ALIVE_MIN = 5;
+
+  @Value("${config.load.max-connections}")
+  private int maxConnections;
+
+  @Value("${config.load.request-timeout-sec}")
+  private long requestTimeoutSec;
+
+  @Bean
+  ObjectMapper objectMapper() {
+    return new ObjectMapper();
+  }
+
+  /**
+   * The order-service holds every request until the saga finishes, so the client must allow as
+   * many concurrent calls as the workload keeps in flight instead of queueing them on its side.
+   */
+  @Bean
+  OkHttpClient okHttpClient() {
+    Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequests(maxConnections);
+    dispatcher.setMaxRequestsPerHost(maxConnections);
+    return new OkHttpClient.Builder()
+        .dispatcher(dispatcher)
+        .connectionPool(new ConnectionPool(maxConnections, KEEP_ALIVE_MIN, TimeUnit.MINUTES))
+        .callTimeout(requestTimeoutSec, TimeUnit.SECONDS)
+        .readTimeout(requestTimeoutSec, TimeUnit.SECONDS)
+        .build();
+  }
+}
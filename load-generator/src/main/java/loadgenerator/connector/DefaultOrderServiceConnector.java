@@ -0,0 +1,81 @@
+package loadgenerator.connector;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import common.dto.OrderDTO;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import loadgenerator.dto.OrderResult;
+import loadgenerator.exception.OrderRejectedException;
+import lombok.RequiredArgsConstructor;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class DefaultOrderServiceConnector implements OrderServiceConnector {
+
+  private static final MediaType JSON = MediaType.get("application/json");
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int SERVICE_UNAVAILABLE = 503;
+
+  private final OkHttpClient okHttpClient;
+  private final ObjectMapper objectMapper;
+
+  @Value("${config.order-service.url}")
+  private String orderServiceURL;
+
+  @Override
+  public CompletableFuture<OrderResult> createOrder(OrderDTO orderDTO) {
+    CompletableFuture<OrderResult> orderResult = new CompletableFuture<>();
+    Request request;
+    try {
+      request =
+          new Request.Builder()
+              .url("http://" + orderServiceURL + "/orders")
+              .post(RequestBody.create(objectMapper.writeValueAsBytes(orderDTO), JSON))
+              .build();
+    } catch (JsonProcessingException e) {
+      orderResult.completeExceptionally(e);
+      return orderResult;
+    }
+
+    okHttpClient
+        .newCall(request)
+        .enqueue(
+            new Callback() {
+              @Override
+              public void onResponse(Call call, Response response) {
+                try (ResponseBody responseBody = response.body()) {
+                  if (response.code() == TOO_MANY_REQUESTS
+                      || response.code() == SERVICE_UNAVAILABLE) {
+                    orderResult.completeExceptionally(new OrderRejectedException(response.code()));
+                    return;
+                  }
+                  if (!response.isSuccessful() || Objects.isNull(responseBody)) {
+                    throw new IOException("Unexpected order-service response: " + response.code());
+                  }
+                  orderResult.complete(
+                      objectMapper.readValue(responseBody.string(), OrderResult.class));
+                } catch (IOException e) {
+                  orderResult.completeExceptionally(e);
+                }
+              }
+
+              @Override
+              public void onFailure(Call call, IOException e) {
+                orderResult.completeExceptionally(e);
+              }
+            });
+    return orderResult;
+  }
+}
@@ -0,0 +1,14 @@
+package loadgenerator.connector;
+
+import common.dto.OrderDTO;
+import java.util.concurrent.CompletableFuture;
+import loadgenerator.dto.OrderResult;
+
+public interface OrderServiceConnector {
+
+  /**
+   * Submits the order without blocking; the future completes once the saga has finished, or
+   * exceptionally with {@link loadgenerator.exception.OrderRejectedException} if it was shed.
+   */
+  CompletableFuture<OrderResult> createOrder(OrderDTO orderDTO);
+}
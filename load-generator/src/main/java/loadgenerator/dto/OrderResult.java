@@ -0,0 +1,13 @@
+package loadgenerator.dto;
+
+import common.enums.OrderStatus;
+import lombok.Data;
+
+/** Body of the order-service response to {@code POST /orders}. */
+@Data
+public class OrderResult {
+
+  private OrderStatus orderStatus;
+
+  private String message;
+}
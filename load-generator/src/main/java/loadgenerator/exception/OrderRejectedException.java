@@ -0,0 +1,9 @@
+package loadgenerator.exception;
+
+/** The order-service turned the order away before starting it (429 or 503). */
+public class OrderRejectedException extends Exception {
+
+  public OrderRejectedException(int responseCode) {
+    super("Order rejected by order-service: " + responseCode);
+  }
+}
@@ -0,0 +1,178 @@
+package loadgenerator.report;
+
+import common.enums.OrderStatus;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import loadgenerator.exception.OrderRejectedException;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Outcome counters and latency histogram of one load phase. Responses are recorded concurrently
+ * into an HDR {@link Recorder}, which the interval and summary reports drain one at a time.
+ */
+@Slf4j
+public class LoadReport {
+
+  private static final long HIGHEST_TRACKABLE_LATENCY_US = TimeUnit.MINUTES.toMicros(10);
+  private static final int SIGNIFICANT_DIGITS = 3;
+  private static final double MICROS_PER_MILLI = 1000.0;
+
+  private final String phase;
+  private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_LATENCY_US, SIGNIFICANT_DIGITS);
+  private final Histogram accumulated = new Histogram(HIGHEST_TRACKABLE_LATENCY_US, SIGNIFICANT_DIGITS);
+  private Histogram interval;
+
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder created = new LongAdder();
+  private final LongAdder cancelled = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAccumulator peakInFlight = new LongAccumulator(Math::max, 0);
+
+  private final long startNanos = System.nanoTime();
+  private long lastIntervalNanos = startNanos;
+  private long finishedNanos;
+  private long lastIntervalCompleted;
+
+  public LoadReport(String phase) {
+    this.phase = phase;
+  }
+
+  public void onSent() {
+    sent.increment();
+    peakInFlight.accumulate(inFlight.incrementAndGet());
+  }
+
+  /**
+   * @param latencyNanos time since the request was due to be sent, not since it actually was, so
+   *     a stalled client does not hide the stall from the percentiles
+   */
+  public void onCompleted(OrderStatus orderStatus, long latencyNanos) {
+    inFlight.decrementAndGet();
+    if (OrderStatus.CREATED.equals(orderStatus)) {
+      created.increment();
+    } else {
+      cancelled.increment();
+    }
+    recorder.recordValue(
+        Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_TRACKABLE_LATENCY_US));
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /** Orders shed by the admission control are counted apart from the ones that broke. */
+  public void onFailed(Throwable cause) {
+    inFlight.decrementAndGet();
+    if (cause instanceof OrderRejectedException) {
+      rejected.increment();
+    } else {
+      failed.increment();
+    }
+  }
+
+  public synchronized void logInterval() {
+    long nowNanos = System.nanoTime();
+    takeInterval();
+    long completed = completed();
+    double throughput = perSecond(completed - lastIntervalCompleted, nowNanos - lastIntervalNanos);
+    log.info(
+        "[{}] {}s: sent {}, completed {} ({} orders/s), rejected {}, failed {}, in flight {}, "
+            + "p50 {} ms, p99 {} ms, max {} ms",
+        phase,
+        TimeUnit.NANOSECONDS.toSeconds(nowNanos - startNanos),
+        sent.sum(),
+        completed,
+        String.format("%.1f", throughput),
+        rejected.sum(),
+        failed.sum(),
+        inFlight.get(),
+        millis(interval.getValueAtPercentile(50)),
+        millis(interval.getValueAtPercentile(99)),
+        millis(interval.getMaxValue()));
+    lastIntervalNanos = nowNanos;
+    lastIntervalCompleted = completed;
+  }
+
+  public synchronized void logSummary() {
+    finishedNanos = System.nanoTime();
+    long elapsedNanos = finishedNanos - startNanos;
+    takeInterval();
+    long completed = completed();
+    log.info(
+        "[{}] finished in {}s: sent {}, completed {}, rejected {}, failed {}, peak in flight {}",
+        phase,
+        TimeUnit.NANOSECONDS.toSeconds(elapsedNanos),
+        sent.sum(),
+        completed,
+        rejected.sum(),
+        failed.sum(),
+        peakInFlight.get());
+    long createdCount = created.sum();
+    long cancelledCount = cancelled.sum();
+    log.info(
+        "[{}] throughput {} orders/s, CREATED {}, CANCELLED {}, CREATED/CANCELLED ratio {}",
+        phase,
+        String.format("%.1f", perSecond(completed, elapsedNanos)),
+        createdCount,
+        cancelledCount,
+        cancelledCount == 0 ? "n/a" : String.format("%.3f", createdCount / (double) cancelledCount));
+    log.info(
+        "[{}] latency ms: p50 {}, p90 {}, p99 {}, p99.9 {}, max {}",
+        phase,
+        millis(accumulated.getValueAtPercentile(50)),
+        millis(accumulated.getValueAtPercentile(90)),
+        millis(accumulated.getValueAtPercentile(99)),
+        millis(accumulated.getValueAtPercentile(99.9)),
+        millis(accumulated.getMaxValue()));
+  }
+
+  /** Writes the full percentile distribution, in milliseconds, in the HdrHistogram text format. */
+  public synchronized void writeHistogram(String fileName) throws FileNotFoundException {
+    try (PrintStream printStream = new PrintStream(fileName)) {
+      accumulated.outputPercentileDistribution(printStream, MICROS_PER_MILLI);
+    }
+  }
+
+  /** Completed orders per second of the whole phase, available once it was summarized. */
+  public synchronized double getThroughput() {
+    return perSecond(completed(), finishedNanos - startNanos);
+  }
+
+  public synchronized double getLatencyPercentileMillis(double percentile) {
+    return accumulated.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+  }
+
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  public long getFailedCount() {
+    return failed.sum();
+  }
+
+  private void takeInterval() {
+    interval = recorder.getIntervalHistogram(interval);
+    accumulated.add(interval);
+  }
+
+  private long completed() {
+    return created.sum() + cancelled.sum();
+  }
+
+  private static double perSecond(long count, long elapsedNanos) {
+    return elapsedNanos <= 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  private static String millis(long micros) {
+    return String.format("%.1f", micros / MICROS_PER_MILLI);
+  }
+}
@@ -0,0 +1,56 @@
+package loadgenerator.runner;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import loadgenerator.connector.OrderServiceConnector;
+import loadgenerator.dto.OrderResult;
+import loadgenerator.report.LoadReport;
+import loadgenerator.workload.OrderMix;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Keeps a fixed number of clients busy, each sending its next order as soon as the previous one
+ * is answered. Shows the throughput the saga sustains at that concurrency; its latencies describe
+ * what those clients saw, not what an open stream of customers would.
+ */
+@RequiredArgsConstructor
+public class ClosedLoopRunner implements LoadRunner {
+
+  private final OrderServiceConnector orderServiceConnector;
+  private final OrderMix orderMix;
+  private final Random random;
+  private final int concurrency;
+
+  @Override
+  public void run(LoadReport report, long durationNanos) throws InterruptedException {
+    long deadlineNanos = System.nanoTime() + durationNanos;
+    ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+    for (int i = 0; i < concurrency; i++) {
+      Random clientRandom = new Random(random.nextLong());
+      clients.execute(() -> runClient(report, clientRandom, deadlineNanos));
+    }
+    clients.shutdown();
+    clients.awaitTermination(durationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void runClient(LoadReport report, Random clientRandom, long deadlineNanos) {
+    while (System.nanoTime() - deadlineNanos < 0) {
+      long startNanos = System.nanoTime();
+      report.onSent();
+      try {
+        OrderResult orderResult =
+            orderServiceConnector.createOrder(orderMix.next(clientRandom)).get();
+        report.onCompleted(orderResult.getOrderStatus(), System.nanoTime() - startNanos);
+      } catch (ExecutionException e) {
+        report.onFailed(e.getCause());
+      } catch (InterruptedException e) {
+        report.onFailed(e);
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,12 @@
+package loadgenerator.runner;
+
+import loadgenerator.report.LoadReport;
+
+public interface LoadRunner {
+
+  /**
+   * Submits orders for the given duration, recording every outcome into the report. Returns once
+   * no new orders are due; responses to the last ones may still be in flight.
+   */
+  void run(LoadReport report, long durationNanos) throws InterruptedException;
+}
@@ -0,0 +1,57 @@
+package loadgenerator.runner;
+
+import common.dto.OrderDTO;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import loadgenerator.connector.OrderServiceConnector;
+import loadgenerator.report.LoadReport;
+import loadgenerator.workload.OrderMix;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Sends orders at a fixed arrival rate regardless of how fast they are answered, the way
+ * independent customers would. Latency is measured from the moment each order was due, so time
+ * spent queueing behind a slow system, or behind a stalled generator, is part of the result
+ * instead of being silently omitted.
+ */
+@RequiredArgsConstructor
+public class OpenLoopRunner implements LoadRunner {
+
+  private final OrderServiceConnector orderServiceConnector;
+  private final OrderMix orderMix;
+  private final Random random;
+  private final double ratePerSecond;
+
+  @Override
+  public void run(LoadReport report, long durationNanos) {
+    double intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+    long startNanos = System.nanoTime();
+    for (long i = 0; ; i++) {
+      long intendedStartNanos = startNanos + (long) (i * intervalNanos);
+      if (intendedStartNanos - startNanos >= durationNanos) {
+        return;
+      }
+      long waitNanos;
+      while ((waitNanos = intendedStartNanos - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(waitNanos);
+      }
+      send(report, orderMix.next(random), intendedStartNanos);
+    }
+  }
+
+  private void send(LoadReport report, OrderDTO orderDTO, long intendedStartNanos) {
+    report.onSent();
+    orderServiceConnector
+        .createOrder(orderDTO)
+        .whenComplete(
+            (orderResult, e) -> {
+              if (e == null) {
+                report.onCompleted(
+                    orderResult.getOrderStatus(), System.nanoTime() - intendedStartNanos);
+              } else {
+                report.onFailed(e);
+              }
+            });
+  }
+}
@@ -0,0 +1,99 @@
+package loadgenerator.workload;
+
+import common.dto.OrderDTO;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Weighted set of orders the load is drawn from. A mix is either a preset name or a comma
+ * separated list of {@code userId:productId:qty*weight} entries, the weight defaulting to 1.
+ */
+public class OrderMix {
+
+  private static final Map<String, String> PRESETS = new HashMap<>();
+
+  static {
+    // user 1 holds 100, user 2 holds 15000; the pen (1) costs 1.5, the iPhone (2) costs 1500
+    PRESETS.put("uniform", "1:1:1,2:1:1,2:1:2,2:2:1");
+    PRESETS.put("hot-sku", "1:1:1*4,2:1:1*5,2:2:1");
+    PRESETS.put("insufficient-balance", "1:2:1,2:1:1");
+  }
+
+  private final List<OrderDTO> orders;
+  private final int[] cumulativeWeights;
+
+  private OrderMix(List<OrderDTO> orders, List<Integer> weights) {
+    this.orders = Collections.unmodifiableList(orders);
+    this.cumulativeWeights = new int[weights.size()];
+    int totalWeight = 0;
+    for (int i = 0; i < weights.size(); i++) {
+      totalWeight += weights.get(i);
+      cumulativeWeights[i] = totalWeight;
+    }
+  }
+
+  public static OrderMix parse(String mix) {
+    String spec = PRESETS.getOrDefault(mix.trim(), mix);
+    List<OrderDTO> orders = new ArrayList<>();
+    List<Integer> weights = new ArrayList<>();
+    for (String entry : spec.split(",")) {
+      String[] orderAndWeight = entry.trim().split("\\*");
+      String[] fields = orderAndWeight[0].split(":");
+      if (fields.length != 3) {
+        throw new IllegalArgumentException(
+            "Order mix entry must look like 'userId:productId:qty*weight': " + entry);
+      }
+      int weight = orderAndWeight.length > 1 ? Integer.parseInt(orderAndWeight[1].trim()) : 1;
+      if (weight <= 0) {
+        throw new IllegalArgumentException("Order mix weight must be positive: " + entry);
+      }
+      OrderDTO orderDTO = new OrderDTO();
+      orderDTO.setUserId(Integer.valueOf(fields[0].trim()));
+      orderDTO.setProductId(Integer.valueOf(fields[1].trim()));
+      orderDTO.setOrderedQty(Integer.valueOf(fields[2].trim()));
+      orders.add(orderDTO);
+      weights.add(weight);
+    }
+    return new OrderMix(orders, weights);
+  }
+
+  public OrderDTO next(Random random) {
+    int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+    for (int i = 0; i < cumulativeWeights.length; i++) {
+      if (pick < cumulativeWeights[i]) {
+        return copy(orders.get(i));
+      }
+    }
+    throw new IllegalStateException("Weighted pick out of range: " + pick);
+  }
+
+  private OrderDTO copy(OrderDTO template) {
+    OrderDTO orderDTO = new OrderDTO();
+    orderDTO.setUserId(template.getUserId());
+    orderDTO.setProductId(template.getProductId());
+    orderDTO.setOrderedQty(template.getOrderedQty());
+    return orderDTO;
+  }
+
+  @Override
+  public String toString() {
+    List<String> entries = new ArrayList<>(orders.size());
+    for (int i = 0; i < orders.size(); i++) {
+      OrderDTO orderDTO = orders.get(i);
+      int weight = cumulativeWeights[i] - (i == 0 ? 0 : cumulativeWeights[i - 1]);
+      entries.add(
+          orderDTO.getUserId()
+              + ":"
+              + orderDTO.getProductId()
+              + ":"
+              + orderDTO.getOrderedQty()
+              + "*"
+              + weight);
+    }
+    return String.join(",", entries);
+  }
+}
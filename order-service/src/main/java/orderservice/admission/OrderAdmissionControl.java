@@ -0,0 +1,88 @@
+package orderservice.admission;
+
+import common.resilience.AimdConcurrencyLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import javax.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import orderservice.exception.OrderRejectedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounds the number of sagas in flight. The limit adapts to the end-to-end latency of the sagas
+ * that complete: it shrinks while they take longer than {@code latency-target-ms} or time out, so
+ * that orders are turned away at the door instead of queueing up behind slow listeners.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrderAdmissionControl {
+
+  private final MeterRegistry meterRegistry;
+
+  @Value("${config.admission.enabled}")
+  private boolean enabled;
+
+  @Value("${config.admission.initial-limit}")
+  private int initialLimit;
+
+  @Value("${config.admission.min-limit}")
+  private int minLimit;
+
+  @Value("${config.admission.max-limit}")
+  private int maxLimit;
+
+  @Value("${config.admission.latency-target-ms}")
+  private long latencyTargetMs;
+
+  @Value("${config.admission.backoff-ratio}")
+  private double backoffRatio;
+
+  @Value("${config.admission.retry-after-sec}")
+  private long retryAfterSec;
+
+  private AimdConcurrencyLimiter concurrencyLimiter;
+  private Counter rejectedOrders;
+
+  @PostConstruct
+  void init() {
+    concurrencyLimiter =
+        new AimdConcurrencyLimiter(initialLimit, minLimit, maxLimit, latencyTargetMs, backoffRatio);
+    Gauge.builder("order.admission.limit", concurrencyLimiter, AimdConcurrencyLimiter::getLimit)
+        .register(meterRegistry);
+    Gauge.builder(
+            "order.admission.in.flight", concurrencyLimiter, AimdConcurrencyLimiter::getInFlight)
+        .register(meterRegistry);
+    rejectedOrders = meterRegistry.counter("order.admission.rejected");
+  }
+
+  /**
+   * Takes an in-flight slot for a new saga; every admitted saga must later report how it ended.
+   *
+   * @throws OrderRejectedException when the limit is reached
+   */
+  public void admit() {
+    if (enabled && !concurrencyLimiter.tryAcquire()) {
+      rejectedOrders.increment();
+      throw new OrderRejectedException(
+          "Too many orders in progress (limit: " + concurrencyLimiter.getLimit() + ")",
+          retryAfterSec);
+    }
+  }
+
+  public void onCompleted(long sagaLatencyMs) {
+    if (enabled) {
+      concurrencyLimiter.onSuccess(sagaLatencyMs);
+    }
+  }
+
+  /** The saga did not finish in time or could not be started. */
+  public void onFailed() {
+    if (enabled) {
+      concurrencyLimiter.onDropped();
+    }
+  }
+}
@@ -1,8 +1,14 @@
 package orderservice.configuration;
 
 import common.event.OrderProcessingEvent;
+import common.event.SagaCommand;
+import common.partitioning.UserAffinityPartitioner;
+import common.tracing.Tracer;
+import common.tracing.TracingProducerInterceptor;
+import common.tracing.TracingRecordInterceptor;
 import java.util.HashMap;
 import java.util.Map;
+import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -23,19 +29,18 @@ import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
 @Configuration
+@RequiredArgsConstructor
 @EnableKafka
 public class KafkaConfiguration {
 
+  private final Tracer tracer;
+
   @Value("${config.kafka.url}")
   private String bootstrapServerURL;
 
   @Bean
   public ProducerFactory<String, OrderProcessingEvent> producerFactory() {
-    Map<String, Object> configProps = new HashMap<>();
-    configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServerURL);
-    configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-    configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
-    return new DefaultKafkaProducerFactory<>(configProps);
+    return new DefaultKafkaProducerFactory<>(producerFactoryProperties());
   }
 
   @Bean
@@ -43,6 +48,28 @@ public class KafkaConfiguration {
     return new KafkaTemplate<>(producerFactory());
   }
 
+  @Bean
+  ProducerFactory<String, SagaCommand> commandProducerFactory() {
+    return new DefaultKafkaProducerFactory<>(producerFactoryProperties());
+  }
+
+  @Bean
+  public KafkaTemplate<String, SagaCommand> commandKafkaTemplate() {
+    return new KafkaTemplate<>(commandProducerFactory());
+  }
+
+  private Map<String, Object> producerFactoryProperties() {
+    Map<String, Object> configProps = new HashMap<>();
+    configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServerURL);
+    configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+    configProps.put(
+        ProducerConfig.INTERCEPTOR_CLASSES_CONFIG, TracingProducerInterceptor.class.getName());
+    configProps.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, UserAffinityPartitioner.class);
+    configProps.put(TracingProducerInterceptor.TRACER_CONFIG, tracer);
+    return configProps;
+  }
+
   @Bean
   ConsumerFactory<String, OrderProcessingEvent> consumerFactory() {
     Map<String, Object> configProps = consumerFactoryProperties();
@@ -71,6 +98,7 @@ public class KafkaConfiguration {
     ConcurrentKafkaListenerContainerFactory<String, OrderProcessingEvent> factory =
         new ConcurrentKafkaListenerContainerFactory<>();
     factory.setConsumerFactory(consumerFactory());
+    factory.setRecordInterceptor(new TracingRecordInterceptor<>(tracer));
 
     return factory;
   }
@@ -1,9 +1,15 @@
 package orderservice.controller;
 
 import common.dto.OrderDTO;
+import common.enums.OrderStatus;
 import lombok.RequiredArgsConstructor;
 import orderservice.dto.OrderProcessingStatus;
+import orderservice.exception.OrderRejectedException;
 import orderservice.service.OrderProcessingService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -20,4 +26,11 @@ public class OrderController {
   public OrderProcessingStatus createOrder(@RequestBody OrderDTO orderDTO) {
     return orderProcessingService.createOrder(orderDTO);
   }
+
+  @ExceptionHandler(OrderRejectedException.class)
+  public ResponseEntity<OrderProcessingStatus> handleOrderRejected(OrderRejectedException e) {
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSec()))
+        .body(new OrderProcessingStatus(OrderStatus.CANCELLED, e.getMessage()));
+  }
 }
@@ -0,0 +1,52 @@
+package orderservice.controller;
+
+import common.enums.OrderStatus;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import lombok.RequiredArgsConstructor;
+import orderservice.store.SagaState;
+import orderservice.store.SagaStateStore;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/sagas")
+@RequiredArgsConstructor
+public class SagaController {
+
+  private static final String DEFAULT_LIMIT = "100";
+
+  private final SagaStateStore sagaStateStore;
+
+  @GetMapping("/{uuid}")
+  public ResponseEntity<SagaState> getByUuid(@PathVariable UUID uuid) {
+    SagaState sagaState = sagaStateStore.getByUuid(uuid);
+    return Objects.isNull(sagaState)
+        ? ResponseEntity.notFound().build()
+        : ResponseEntity.ok(sagaState);
+  }
+
+  @GetMapping(params = "userId")
+  public List<SagaState> findByUser(
+      @RequestParam Integer userId,
+      @RequestParam(defaultValue = DEFAULT_LIMIT) int limit) {
+    return sagaStateStore.findByUser(userId, limit);
+  }
+
+  @GetMapping(params = "status")
+  public List<SagaState> findByStatus(
+      @RequestParam OrderStatus status, @RequestParam(defaultValue = DEFAULT_LIMIT) int limit) {
+    return sagaStateStore.findByStatus(status, limit);
+  }
+
+  @GetMapping("/stuck")
+  public List<SagaState> findStuck(
+      @RequestParam long olderThanMs, @RequestParam(defaultValue = DEFAULT_LIMIT) int limit) {
+    return sagaStateStore.findStuck(olderThanMs, limit);
+  }
+}
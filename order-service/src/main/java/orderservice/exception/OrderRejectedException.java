@@ -0,0 +1,15 @@
+package orderservice.exception;
+
+import lombok.Getter;
+
+/** Thrown when order intake is saturated and the order was not started at all. */
+@Getter
+public class OrderRejectedException extends RuntimeException {
+
+  private final long retryAfterSec;
+
+  public OrderRejectedException(String message, long retryAfterSec) {
+    super(message);
+    this.retryAfterSec = retryAfterSec;
+  }
+}
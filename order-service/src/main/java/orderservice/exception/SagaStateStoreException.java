@@ -0,0 +1,8 @@
+package orderservice.exception;
+
+public class SagaStateStoreException extends RuntimeException {
+
+  public SagaStateStoreException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,70 @@
+package orderservice.join;
+
+import common.event.OrderProcessingEvent;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import orderservice.store.SagaStateStore;
+import orderservice.store.SagaUpdate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Joins the user and warehouse steps of a choreographed saga with parallel steps. Both services
+ * handle the same requested event and publish their outcome separately, so neither event carries
+ * both outcomes. Every outcome is merged into the stored state of the saga; the moment both steps
+ * have finished, the merged event is published once. It starts the shipment when both succeeded,
+ * or the compensation of the step that succeeded when the other one failed.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ParallelStepJoin {
+
+  private final SagaStateStore sagaStateStore;
+
+  private final KafkaTemplate<String, OrderProcessingEvent> kafkaTemplate;
+
+  @Value("${config.kafka.order-processing-topic}")
+  private String orderProcessingTopicName;
+
+  @Value("${config.kafka.compensation-topic}")
+  private String compensationTopicName;
+
+  /**
+   * Merges the event into the stored state of its saga and stores the result in one atomic store
+   * update, so that neither a concurrent outcome nor a cancellation by the reaper is overwritten
+   * with a stale state.
+   */
+  public SagaUpdate join(OrderProcessingEvent orderProcessingEvent) {
+    AtomicBoolean joinedNow = new AtomicBoolean();
+    SagaUpdate sagaUpdate =
+        sagaStateStore.update(
+            orderProcessingEvent.getUuid(),
+            sagaState -> {
+              if (Objects.isNull(sagaState)) {
+                return orderProcessingEvent;
+              }
+              OrderProcessingEvent joinedEvent = sagaState.toEvent();
+              boolean alreadyJoined = joinedEvent.parallelStepsJoined();
+              joinedEvent.merge(orderProcessingEvent);
+              joinedNow.set(!alreadyJoined && joinedEvent.parallelStepsJoined());
+              return joinedEvent;
+            });
+    OrderProcessingEvent joinedEvent = sagaUpdate.getEvent();
+    if (joinedNow.get()) {
+      log.info(
+          "User and warehouse steps of order event ({}) joined: {}/{}",
+          joinedEvent.getUuid(),
+          joinedEvent.getUserProcessingStatus(),
+          joinedEvent.getWarehouseProcessingStatus());
+      joinedEvent.markEnqueued();
+      kafkaTemplate.send(
+          joinedEvent.compensating() ? compensationTopicName : orderProcessingTopicName,
+          joinedEvent);
+    }
+    return sagaUpdate;
+  }
+}
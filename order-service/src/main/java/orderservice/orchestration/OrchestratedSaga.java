@@ -0,0 +1,18 @@
+package orderservice.orchestration;
+
+import common.event.OrderProcessingEvent;
+import java.util.HashSet;
+import java.util.Set;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/** State of a saga kept by the {@link SagaOrchestrator} while it is in flight. */
+@Getter
+@RequiredArgsConstructor
+class OrchestratedSaga {
+
+  private final OrderProcessingEvent orderProcessingEvent;
+
+  /** Commands sent for the current state, as {@code topic:type}, so none is sent twice. */
+  private final Set<String> dispatchedCommands = new HashSet<>();
+}
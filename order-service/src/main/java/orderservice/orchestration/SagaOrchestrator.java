@@ -0,0 +1,169 @@
+package orderservice.orchestration;
+
+import common.enums.OrderStatus;
+import common.enums.ProcessingStatus;
+import common.enums.SagaCommandType;
+import common.event.OrderProcessingEvent;
+import common.event.SagaCommand;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import orderservice.store.SagaState;
+import orderservice.store.SagaStateStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drives the sagas in the {@code orchestration} mode. Instead of broadcasting every transition on
+ * the order processing topic, the orchestrator keeps the state of each saga in flight and sends the
+ * next step as a {@link SagaCommand} to the command topic of the one service concerned; the service
+ * replies with the event it updated. Once a saga is cancelled, the compensations of all applied
+ * steps are sent at once, as are the user and warehouse steps of a saga with parallel steps.
+ * Replies are merged with {@link OrderProcessingEvent#merge}, so replies of steps running in
+ * parallel do not overwrite each other. Sagas unknown after a restart are picked up from the {@link
+ * SagaStateStore}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SagaOrchestrator {
+
+  private final KafkaTemplate<String, SagaCommand> commandKafkaTemplate;
+  private final SagaStateStore sagaStateStore;
+  private final MeterRegistry meterRegistry;
+
+  @Value("${config.kafka.user-command-topic}")
+  private String userCommandTopicName;
+
+  @Value("${config.kafka.warehouse-command-topic}")
+  private String warehouseCommandTopicName;
+
+  @Value("${config.kafka.shipment-command-topic}")
+  private String shipmentCommandTopicName;
+
+  private final Map<UUID, OrchestratedSaga> uuidPerSaga = new ConcurrentHashMap<>();
+
+  /** Sends the first step of a new saga. */
+  public void start(OrderProcessingEvent orderProcessingEvent) {
+    OrchestratedSaga saga = new OrchestratedSaga(orderProcessingEvent);
+    uuidPerSaga.put(orderProcessingEvent.getUuid(), saga);
+    synchronized (saga) {
+      dispatch(saga);
+    }
+  }
+
+  /**
+   * Merges the reply of a service into its saga and sends the commands the new state calls for.
+   *
+   * @return the state of the saga after the reply, or {@code null} if the saga is unknown
+   */
+  public OrderProcessingEvent onReply(OrderProcessingEvent reply) {
+    OrchestratedSaga saga = getOrLoad(reply.getUuid());
+    if (Objects.isNull(saga)) {
+      log.warn("Reply for unknown saga ({}) is ignored", reply.getUuid());
+      return null;
+    }
+    synchronized (saga) {
+      OrderProcessingEvent orderProcessingEvent = saga.getOrderProcessingEvent();
+      orderProcessingEvent.merge(reply);
+      dispatch(saga);
+      forgetIfSettled(orderProcessingEvent);
+      return orderProcessingEvent;
+    }
+  }
+
+  /**
+   * Takes over a saga changed outside the orchestrator, e.g. failed by the reaper, and sends its
+   * pending commands again, including the ones already sent for the same state.
+   */
+  public void redispatch(OrderProcessingEvent orderProcessingEvent) {
+    OrchestratedSaga saga =
+        uuidPerSaga.computeIfAbsent(
+            orderProcessingEvent.getUuid(), uuid -> new OrchestratedSaga(orderProcessingEvent));
+    synchronized (saga) {
+      saga.getOrderProcessingEvent().merge(orderProcessingEvent);
+      saga.getDispatchedCommands().clear();
+      dispatch(saga);
+      forgetIfSettled(saga.getOrderProcessingEvent());
+    }
+  }
+
+  private OrchestratedSaga getOrLoad(UUID uuid) {
+    OrchestratedSaga saga = uuidPerSaga.get(uuid);
+    if (Objects.nonNull(saga)) {
+      return saga;
+    }
+    SagaState sagaState = sagaStateStore.getByUuid(uuid);
+    return Objects.isNull(sagaState)
+        ? null
+        : uuidPerSaga.computeIfAbsent(uuid, key -> new OrchestratedSaga(sagaState.toEvent()));
+  }
+
+  private void forgetIfSettled(OrderProcessingEvent orderProcessingEvent) {
+    if (orderProcessingEvent.settled()) {
+      uuidPerSaga.remove(orderProcessingEvent.getUuid());
+    }
+  }
+
+  private void dispatch(OrchestratedSaga saga) {
+    OrderProcessingEvent orderProcessingEvent = saga.getOrderProcessingEvent();
+    if (!orderProcessingEvent.processed()) {
+      if (orderProcessingEvent.toProcessForUser()) {
+        send(saga, userCommandTopicName, SagaCommandType.PROCESS);
+      }
+      if (orderProcessingEvent.toProcessForWarehouse()) {
+        send(saga, warehouseCommandTopicName, SagaCommandType.PROCESS);
+      }
+      if (orderProcessingEvent.toProcessForShipment()) {
+        send(saga, shipmentCommandTopicName, SagaCommandType.PROCESS);
+      }
+    } else if (orderProcessingEvent.getOrderStatus().equals(OrderStatus.CREATED)) {
+      send(saga, warehouseCommandTopicName, SagaCommandType.CONFIRM);
+    } else {
+      if (orderProcessingEvent.getUserProcessingStatus().equals(ProcessingStatus.SUCCESS)) {
+        send(saga, userCommandTopicName, SagaCommandType.COMPENSATE);
+      }
+      if (orderProcessingEvent.getWarehouseProcessingStatus().equals(ProcessingStatus.SUCCESS)) {
+        send(saga, warehouseCommandTopicName, SagaCommandType.COMPENSATE);
+      }
+      if (shipmentRequested(saga)
+          && !orderProcessingEvent.getShipmentProcessingStatus().equals(ProcessingStatus.SUCCESS)) {
+        // fences a shipment command that is still queued, nothing is shipped to compensate
+        send(saga, shipmentCommandTopicName, SagaCommandType.COMPENSATE);
+      }
+    }
+  }
+
+  /**
+   * Whether the shipment step may have been requested: its command went out, or both steps before
+   * it had succeeded when the saga was cancelled, e.g. by the reaper, which forgets the commands.
+   */
+  private boolean shipmentRequested(OrchestratedSaga saga) {
+    OrderProcessingEvent orderProcessingEvent = saga.getOrderProcessingEvent();
+    return saga.getDispatchedCommands()
+            .contains(shipmentCommandTopicName + ":" + SagaCommandType.PROCESS)
+        || (orderProcessingEvent.getUserProcessingStatus().equals(ProcessingStatus.SUCCESS)
+            && orderProcessingEvent
+                .getWarehouseProcessingStatus()
+                .equals(ProcessingStatus.SUCCESS));
+  }
+
+  private void send(OrchestratedSaga saga, String topicName, SagaCommandType type) {
+    if (!saga.getDispatchedCommands().add(topicName + ":" + type)) {
+      return;
+    }
+    OrderProcessingEvent orderProcessingEvent = saga.getOrderProcessingEvent();
+    log.info(
+        "Sending {} command to {} (event ID: {})", type, topicName, orderProcessingEvent.getUuid());
+    orderProcessingEvent.markEnqueued();
+    commandKafkaTemplate.send(topicName, new SagaCommand(type, orderProcessingEvent));
+    meterRegistry
+        .counter("saga.orchestrator.commands", "topic", topicName, "type", type.name())
+        .increment();
+  }
+}
@@ -0,0 +1,330 @@
+package orderservice.reaper;
+
+import common.enums.OrderStatus;
+import common.enums.ProcessingStatus;
+import common.event.OrderProcessingEvent;
+import common.event.SagaHop;
+import common.metrics.SagaMetrics;
+import common.timer.HashedTimingWheel;
+import common.timer.HashedTimingWheel.Timeout;
+import common.tracing.Span;
+import common.tracing.Tracer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import orderservice.join.ParallelStepJoin;
+import orderservice.orchestration.SagaOrchestrator;
+import orderservice.store.SagaState;
+import orderservice.store.SagaStateStore;
+import orderservice.store.SagaUpdate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Watches every saga that has not settled yet and compensates the ones that make no progress. Each
+ * transition re-arms a deadline in a {@link HashedTimingWheel}, sized by the step the saga is
+ * waiting for, so the cost per saga is constant no matter how many are in flight. When a deadline
+ * passes, the pending forward step is marked {@link ProcessingStatus#REVERT}, which makes the
+ * services that already applied their steps compensate them; a stalled compensation is published
+ * again. In the {@code orchestration} mode both go through the {@link SagaOrchestrator} instead.
+ * A saga is given up after {@code max-attempts} reaps.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SagaReaper {
+
+  public static final String REAP_STEP = "reap";
+  private static final String CREATED_STEP = "created";
+
+  private final SagaStateStore sagaStateStore;
+  private final KafkaTemplate<String, OrderProcessingEvent> kafkaTemplate;
+  private final SagaMetrics sagaMetrics;
+  private final Tracer tracer;
+  private final MeterRegistry meterRegistry;
+  private final SagaOrchestrator sagaOrchestrator;
+
+  @Value("${config.kafka.order-processing-topic}")
+  private String orderProcessingTopicName;
+
+  @Value("${config.kafka.compensation-topic}")
+  private String compensationTopicName;
+
+  @Value("#{'${config.saga-mode}' == 'orchestration'}")
+  private boolean orchestrated;
+
+  @Value("${config.reaper.enabled}")
+  private boolean enabled;
+
+  @Value("${config.reaper.default-timeout-ms}")
+  private long defaultTimeoutMs;
+
+  @Value("${config.reaper.step-timeouts-ms}")
+  private List<String> stepTimeouts;
+
+  @Value("${config.reaper.max-attempts}")
+  private int maxAttempts;
+
+  @Value("${config.reaper.tick-ms}")
+  private long tickDurationMs;
+
+  @Value("${config.reaper.wheel-size}")
+  private int wheelSize;
+
+  private final Map<UUID, Timeout<TrackedSaga>> uuidPerTrackedSaga = new ConcurrentHashMap<>();
+  private final Map<String, Long> timeoutMsPerStep = new HashMap<>();
+
+  private HashedTimingWheel<TrackedSaga> timingWheel;
+  private ScheduledExecutorService ticker;
+  private Counter abandonedSagas;
+
+  @PostConstruct
+  void start() {
+    if (!enabled) {
+      return;
+    }
+    for (String stepTimeout : stepTimeouts) {
+      String[] stepAndTimeout = stepTimeout.split("=");
+      timeoutMsPerStep.put(stepAndTimeout[0].trim(), Long.valueOf(stepAndTimeout[1].trim()));
+    }
+    Gauge.builder("saga.reaper.tracked", uuidPerTrackedSaga, Map::size).register(meterRegistry);
+    abandonedSagas = meterRegistry.counter("saga.reaper.abandoned");
+
+    timingWheel = new HashedTimingWheel<>(tickDurationMs, wheelSize, System.currentTimeMillis());
+    sagaStateStore.forEachInFlight(
+        sagaState ->
+            track(
+                sagaState.getUuid(),
+                sagaState.getVersion(),
+                sagaState.getLastStep(),
+                sagaState.getUpdatedAt()));
+    log.info("Saga reaper started with {} in-flight sagas", uuidPerTrackedSaga.size());
+
+    ticker =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "saga-reaper");
+              thread.setDaemon(true);
+              return thread;
+            });
+    ticker.scheduleAtFixedRate(
+        this::reapExpiredSagas, tickDurationMs, tickDurationMs, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  void stop() {
+    if (Objects.nonNull(ticker)) {
+      ticker.shutdownNow();
+    }
+  }
+
+  /** Re-arms the deadline of the saga, or forgets it once the saga has settled. */
+  public void onTransition(OrderProcessingEvent orderProcessingEvent) {
+    if (!enabled) {
+      return;
+    }
+    if (orderProcessingEvent.settled()) {
+      Timeout<TrackedSaga> timeout = uuidPerTrackedSaga.remove(orderProcessingEvent.getUuid());
+      if (Objects.nonNull(timeout)) {
+        timingWheel.cancel(timeout);
+      }
+      return;
+    }
+    List<SagaHop> hops = orderProcessingEvent.getHops();
+    track(
+        orderProcessingEvent.getUuid(),
+        hops.size(),
+        hops.isEmpty() ? null : lastStep(hops.get(hops.size() - 1)),
+        System.currentTimeMillis());
+  }
+
+  /**
+   * Compensates a forward event of a saga that has been cancelled meanwhile: a step that was still
+   * queued when the saga was reaped, and ran before its service saw the cancellation. The steps it
+   * applied are reverted as on a reap, instead of the event replacing the cancelled state (an older
+   * event loses against it anyway); one that was shipped already can not be and is only counted.
+   * With parallel steps, the {@link ParallelStepJoin} merges such an event into the cancellation.
+   *
+   * @return false if the event is not a late one and is to be handled as usual
+   */
+  public boolean compensateLateEvent(OrderProcessingEvent orderProcessingEvent) {
+    if (!enabled
+        || orderProcessingEvent.compensating()
+        || orderProcessingEvent.isParallelSteps()) {
+      return false;
+    }
+    SagaState sagaState = sagaStateStore.getByUuid(orderProcessingEvent.getUuid());
+    if (Objects.isNull(sagaState)
+        || !sagaState.getOrderStatus().equals(OrderStatus.CANCELLED)
+        || orderProcessingEvent.getHops().size() < sagaState.getVersion()) {
+      return false;
+    }
+    if (orderProcessingEvent.processed()) {
+      log.error(
+          "Order event ({}) was shipped after the saga was cancelled",
+          orderProcessingEvent.getUuid());
+      meterRegistry.counter("saga.reaper.late", "outcome", "shipped").increment();
+      return true;
+    }
+    log.warn(
+        "Order event ({}) arrived after the saga was cancelled, compensating it",
+        orderProcessingEvent.getUuid());
+    startCompensation(orderProcessingEvent);
+    orderProcessingEvent.addMessage("Saga step ran after the saga was cancelled");
+    sagaMetrics.recordStep(orderProcessingEvent, REAP_STEP, ProcessingStatus.REVERT);
+    meterRegistry.counter("saga.reaper.late", "outcome", "compensated").increment();
+    if (sagaStateStore.update(orderProcessingEvent).isSettled()) {
+      sagaMetrics.recordEndToEnd(orderProcessingEvent);
+    }
+    onTransition(orderProcessingEvent);
+    kafkaTemplate.send(compensationTopicName, orderProcessingEvent);
+    return true;
+  }
+
+  public int getTrackedSagasCount() {
+    return uuidPerTrackedSaga.size();
+  }
+
+  private void track(UUID uuid, int version, String lastStep, long transitionAtMs) {
+    String step = Objects.isNull(lastStep) ? CREATED_STEP : lastStep;
+    long deadlineMs = transitionAtMs + timeoutMsPerStep.getOrDefault(step, defaultTimeoutMs);
+    uuidPerTrackedSaga.compute(
+        uuid,
+        (key, previous) -> {
+          if (Objects.nonNull(previous)) {
+            if (previous.getPayload().getVersion() > version) {
+              return previous;
+            }
+            timingWheel.cancel(previous);
+          }
+          int reapAttempts =
+              Objects.isNull(previous) ? 0 : previous.getPayload().getReapAttempts();
+          return timingWheel.schedule(new TrackedSaga(uuid, version, reapAttempts), deadlineMs);
+        });
+  }
+
+  private void reapExpiredSagas() {
+    for (TrackedSaga trackedSaga : timingWheel.advance(System.currentTimeMillis())) {
+      Timeout<TrackedSaga> timeout = uuidPerTrackedSaga.get(trackedSaga.getUuid());
+      if (Objects.nonNull(timeout) && timeout.getPayload() == trackedSaga) {
+        try {
+          reap(trackedSaga);
+        } catch (Exception e) {
+          log.error(
+              "Exception occurred during reaping of saga ({}). Exception: ",
+              trackedSaga.getUuid(),
+              e);
+        }
+      }
+    }
+  }
+
+  private void reap(TrackedSaga trackedSaga) {
+    SagaState sagaState = sagaStateStore.getByUuid(trackedSaga.getUuid());
+    if (Objects.isNull(sagaState) || !sagaState.inFlight()) {
+      uuidPerTrackedSaga.remove(trackedSaga.getUuid());
+      return;
+    }
+    if (trackedSaga.getReapAttempts() >= maxAttempts) {
+      uuidPerTrackedSaga.remove(trackedSaga.getUuid());
+      abandonedSagas.increment();
+      log.error(
+          "Saga ({}) is still stuck after {} compensation attempts, giving up",
+          trackedSaga.getUuid(),
+          maxAttempts);
+      return;
+    }
+
+    String stuckStep =
+        Objects.isNull(sagaState.getLastStep()) ? CREATED_STEP : sagaState.getLastStep();
+    try (Span span = tracer.startSpan("order.reap")) {
+      span.setAttribute("order", trackedSaga.getUuid());
+      // compensated from the state as stored under the store's lock, unless a transition came in
+      // since it was read, which has re-armed the deadline
+      SagaUpdate sagaUpdate =
+          sagaStateStore.update(
+              trackedSaga.getUuid(),
+              storedState -> {
+                if (Objects.isNull(storedState)
+                    || storedState.getVersion() != sagaState.getVersion()) {
+                  return null;
+                }
+                OrderProcessingEvent compensation = storedState.toEvent();
+                startCompensation(compensation);
+                compensation.addMessage("Saga timed out after step " + stuckStep);
+                sagaMetrics.recordStep(compensation, REAP_STEP, ProcessingStatus.REVERT);
+                return compensation;
+              });
+      OrderProcessingEvent orderProcessingEvent = sagaUpdate.getEvent();
+      if (Objects.isNull(orderProcessingEvent)) {
+        return;
+      }
+      log.warn(
+          "Saga ({}) made no progress after step {}, compensating (attempt {}/{})",
+          orderProcessingEvent.getUuid(),
+          stuckStep,
+          trackedSaga.getReapAttempts() + 1,
+          maxAttempts);
+      meterRegistry.counter("saga.reaper.reaped", "step", stuckStep).increment();
+
+      uuidPerTrackedSaga.put(
+          trackedSaga.getUuid(),
+          timingWheel.schedule(
+              new TrackedSaga(
+                  trackedSaga.getUuid(),
+                  orderProcessingEvent.getHops().size(),
+                  trackedSaga.getReapAttempts() + 1),
+              System.currentTimeMillis() + defaultTimeoutMs));
+      if (sagaUpdate.isSettled()) {
+        // nothing had been applied yet, so the saga is over without a compensation coming back
+        sagaMetrics.recordEndToEnd(orderProcessingEvent);
+      }
+      if (orchestrated) {
+        sagaOrchestrator.redispatch(orderProcessingEvent);
+      } else {
+        kafkaTemplate.send(
+            orderProcessingEvent.compensating() ? compensationTopicName : orderProcessingTopicName,
+            orderProcessingEvent);
+      }
+    }
+  }
+
+  /**
+   * Fails the forward step the saga is waiting for, so that every service which applied an earlier
+   * step compensates it. A saga that is already compensating is published again unchanged, which
+   * lets the service that has not reverted yet pick it up once more.
+   */
+  private void startCompensation(OrderProcessingEvent orderProcessingEvent) {
+    if (!orderProcessingEvent.getOrderStatus().equals(OrderStatus.REQUESTED)) {
+      return;
+    }
+    if (orderProcessingEvent.getUserProcessingStatus().equals(ProcessingStatus.UNPROCESSED)) {
+      orderProcessingEvent.setUserProcessingStatus(ProcessingStatus.REVERT);
+    } else if (orderProcessingEvent
+        .getWarehouseProcessingStatus()
+        .equals(ProcessingStatus.UNPROCESSED)) {
+      orderProcessingEvent.setWarehouseProcessingStatus(ProcessingStatus.REVERT);
+    } else {
+      orderProcessingEvent.setShipmentProcessingStatus(ProcessingStatus.REVERT);
+    }
+    orderProcessingEvent.setOrderStatus(OrderStatus.CANCELLED);
+  }
+
+  private static String lastStep(SagaHop hop) {
+    return hop.getService() + "." + hop.getStep();
+  }
+}
@@ -0,0 +1,15 @@
+package orderservice.reaper;
+
+import java.util.UUID;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/** Last known transition of an in-flight saga, kept only until the saga settles. */
+@Getter
+@RequiredArgsConstructor
+public class TrackedSaga {
+
+  private final UUID uuid;
+  private final int version;
+  private final int reapAttempts;
+}
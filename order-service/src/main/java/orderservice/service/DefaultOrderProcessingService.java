@@ -3,15 +3,24 @@ package orderservice.service;
 import common.dto.OrderDTO;
 import common.enums.OrderStatus;
 import common.event.OrderProcessingEvent;
+import common.event.SagaHop;
+import common.metrics.SagaMetrics;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import orderservice.admission.OrderAdmissionControl;
 import orderservice.dto.OrderProcessingStatus;
+import orderservice.join.ParallelStepJoin;
+import orderservice.orchestration.SagaOrchestrator;
+import orderservice.reaper.SagaReaper;
+import orderservice.store.SagaStateStore;
+import orderservice.store.SagaUpdate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -29,24 +38,51 @@ public class DefaultOrderProcessingService implements OrderProcessingService {
   @Value("${config.kafka.order-processing-topic}")
   private String orderProcessingTopicName;
 
+  @Value("#{'${config.saga-mode}' == 'orchestration'}")
+  private boolean orchestrated;
+
+  @Value("${config.parallel-steps}")
+  private boolean parallelSteps;
+
   private final KafkaTemplate<String, OrderProcessingEvent> kafkaTemplate;
 
-  private final Map<UUID, OrderProcessingEvent> processedOrderEvents = new HashMap<>();
+  private final SagaMetrics sagaMetrics;
+
+  private final SagaStateStore sagaStateStore;
+
+  private final OrderAdmissionControl orderAdmissionControl;
+
+  private final SagaReaper sagaReaper;
+
+  private final SagaOrchestrator sagaOrchestrator;
+
+  private final ParallelStepJoin parallelStepJoin;
+
+  private final Map<UUID, OrderProcessingEvent> processedOrderEvents = new ConcurrentHashMap<>();
 
   @Override
   public OrderProcessingStatus createOrder(OrderDTO orderDTO) {
+    orderAdmissionControl.admit();
     try {
       OrderProcessingEvent orderProcessingEvent = buildOrderProcessingEvent(orderDTO);
       log.info("Order creation in progress (event ID: {})...", orderProcessingEvent.getUuid());
-      kafkaTemplate.send(orderProcessingTopicName, orderProcessingEvent);
+      updateSagaState(orderProcessingEvent, false);
+      if (orchestrated) {
+        sagaOrchestrator.start(orderProcessingEvent);
+      } else {
+        orderProcessingEvent.markEnqueued();
+        kafkaTemplate.send(orderProcessingTopicName, orderProcessingEvent);
+      }
       OrderProcessingEvent orderProcessingResult =
           waitForOrderProcessingResult(orderProcessingEvent.getUuid(), FIRST_WAITING_ATTEMPT);
+      orderAdmissionControl.onCompleted(sagaLatencyMs(orderProcessingResult));
       log.info(
           "Order creation finished successfully (event ID: {})", orderProcessingEvent.getUuid());
       return new OrderProcessingStatus(
           orderProcessingResult.getOrderStatus(),
           orderProcessingResult.getProcessingResultMessage());
     } catch (Exception e) {
+      orderAdmissionControl.onFailed();
       log.error(
           "Exception occurred during create order flow ({}, {}, {}). Exception: ",
           orderDTO.getUserId(),
@@ -57,19 +93,82 @@ public class DefaultOrderProcessingService implements OrderProcessingService {
     }
   }
 
+  /** Time until the last service finished the saga, regardless of how long the result waited. */
+  private long sagaLatencyMs(OrderProcessingEvent orderProcessingEvent) {
+    List<SagaHop> hops = orderProcessingEvent.getHops();
+    long finishedAt =
+        hops.isEmpty() ? System.currentTimeMillis() : hops.get(hops.size() - 1).getProcessedAt();
+    return finishedAt - orderProcessingEvent.getCreatedAt();
+  }
+
   private OrderProcessingEvent buildOrderProcessingEvent(OrderDTO orderDTO) {
     OrderProcessingEvent orderProcessingEvent = new OrderProcessingEvent();
     orderProcessingEvent.setOrderDTO(orderDTO);
     orderProcessingEvent.setOrderStatus(OrderStatus.REQUESTED);
+    orderProcessingEvent.setParallelSteps(parallelSteps);
     return orderProcessingEvent;
   }
 
   @KafkaListener(
-      topics = {"order-processing"},
-      groupId = "1")
+      topics = {"order-processing", "${config.kafka.compensation-topic}"},
+      groupId = "1",
+      autoStartup = "#{'${config.saga-mode}' == 'choreography'}")
   public void receiveOrderProcessingEvent(OrderProcessingEvent orderProcessingEvent) {
-    if (orderProcessingEvent.processed()) {
-      processedOrderEvents.put(orderProcessingEvent.getUuid(), orderProcessingEvent);
+    if (sagaReaper.compensateLateEvent(orderProcessingEvent)) {
+      return;
+    }
+    onTransition(orderProcessingEvent, orderProcessingEvent.isParallelSteps());
+  }
+
+  @KafkaListener(
+      topics = "${config.kafka.reply-topic}",
+      groupId = "1",
+      autoStartup = "#{'${config.saga-mode}' == 'orchestration'}")
+  public void receiveSagaReply(OrderProcessingEvent reply) {
+    OrderProcessingEvent orderProcessingEvent = sagaOrchestrator.onReply(reply);
+    if (Objects.nonNull(orderProcessingEvent)) {
+      onTransition(orderProcessingEvent, false);
+    }
+  }
+
+  /**
+   * A cancelled saga produces an event per compensated step, and the events republished by the
+   * reaper and the join come back here as well, so the saga is only timed by the event settling it.
+   * With {@code join}, the event is merged into the stored state of the saga first.
+   */
+  private void onTransition(OrderProcessingEvent orderProcessingEvent, boolean join) {
+    SagaUpdate sagaUpdate = updateSagaState(orderProcessingEvent, join);
+    OrderProcessingEvent currentEvent = sagaUpdate.getEvent();
+    if (sagaUpdate.isSettled()) {
+      sagaMetrics.recordEndToEnd(currentEvent);
+    }
+    sagaMetrics.recordCompensation(orderProcessingEvent);
+    if (currentEvent.processed()) {
+      processedOrderEvents.put(currentEvent.getUuid(), currentEvent);
+    }
+  }
+
+  /**
+   * @return the update, with the given event if the store kept a later state, as an older event
+   *     still answers the order it belongs to
+   */
+  private SagaUpdate updateSagaState(OrderProcessingEvent orderProcessingEvent, boolean join) {
+    try {
+      SagaUpdate sagaUpdate =
+          join
+              ? parallelStepJoin.join(orderProcessingEvent)
+              : sagaStateStore.update(orderProcessingEvent);
+      if (Objects.isNull(sagaUpdate.getEvent())) {
+        sagaUpdate = new SagaUpdate(orderProcessingEvent, false);
+      }
+      sagaReaper.onTransition(sagaUpdate.getEvent());
+      return sagaUpdate;
+    } catch (Exception e) {
+      log.error(
+          "Exception occurred during saga state update (event ID: {}). Exception: ",
+          orderProcessingEvent.getUuid(),
+          e);
+      return new SagaUpdate(orderProcessingEvent, false);
     }
   }
 
@@ -0,0 +1,290 @@
+package orderservice.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import common.enums.OrderStatus;
+import common.event.OrderProcessingEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import orderservice.exception.SagaStateStoreException;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
+import org.rocksdb.LRUCache;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link SagaStateStore} kept in an embedded RocksDB. States are stored as JSON by saga UUID; the
+ * secondary indexes are separate column families whose keys sort in query order and point back to
+ * the UUID. Memory is bounded by the block cache and the write buffers, the rest lives on disk.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RocksDBSagaStateStore implements SagaStateStore {
+
+  private static final int UUID_BYTES = 16;
+  private static final long MB = 1024 * 1024;
+  private static final int MAX_WRITE_BUFFERS = 2;
+  private static final byte[] EMPTY = new byte[0];
+
+  private static final String BY_USER = "saga-by-user";
+  private static final String BY_STATUS = "saga-by-status";
+  private static final String IN_FLIGHT = "saga-in-flight";
+
+  private final ObjectMapper objectMapper;
+
+  @Value("${config.saga-store.path}")
+  private String path;
+
+  @Value("${config.saga-store.block-cache-mb}")
+  private long blockCacheMb;
+
+  @Value("${config.saga-store.write-buffer-mb}")
+  private long writeBufferMb;
+
+  private LRUCache blockCache;
+  private ColumnFamilyOptions columnFamilyOptions;
+  private DBOptions dbOptions;
+  private WriteOptions writeOptions;
+  private RocksDB rocksDB;
+  private final List<ColumnFamilyHandle> columnFamilyHandles = new ArrayList<>();
+  private ColumnFamilyHandle states;
+  private ColumnFamilyHandle byUser;
+  private ColumnFamilyHandle byStatus;
+  private ColumnFamilyHandle inFlight;
+
+  @PostConstruct
+  void open() throws RocksDBException {
+    RocksDB.loadLibrary();
+    blockCache = new LRUCache(blockCacheMb * MB);
+    columnFamilyOptions =
+        new ColumnFamilyOptions()
+            .setWriteBufferSize(writeBufferMb * MB)
+            .setMaxWriteBufferNumber(MAX_WRITE_BUFFERS)
+            .setTableFormatConfig(
+                new BlockBasedTableConfig()
+                    .setBlockCache(blockCache)
+                    .setCacheIndexAndFilterBlocks(true));
+    dbOptions = new DBOptions().setCreateIfMissing(true).setCreateMissingColumnFamilies(true);
+    writeOptions = new WriteOptions();
+
+    List<ColumnFamilyDescriptor> columnFamilyDescriptors =
+        Arrays.asList(
+            new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, columnFamilyOptions),
+            columnFamily(BY_USER),
+            columnFamily(BY_STATUS),
+            columnFamily(IN_FLIGHT));
+    new File(path).mkdirs();
+    rocksDB = RocksDB.open(dbOptions, path, columnFamilyDescriptors, columnFamilyHandles);
+    states = columnFamilyHandles.get(0);
+    byUser = columnFamilyHandles.get(1);
+    byStatus = columnFamilyHandles.get(2);
+    inFlight = columnFamilyHandles.get(3);
+    log.info("Saga state store opened at {}", new File(path).getAbsolutePath());
+  }
+
+  private ColumnFamilyDescriptor columnFamily(String name) {
+    return new ColumnFamilyDescriptor(name.getBytes(StandardCharsets.UTF_8), columnFamilyOptions);
+  }
+
+  @PreDestroy
+  void close() {
+    columnFamilyHandles.forEach(ColumnFamilyHandle::close);
+    rocksDB.close();
+    writeOptions.close();
+    dbOptions.close();
+    columnFamilyOptions.close();
+    blockCache.close();
+  }
+
+  @Override
+  public SagaUpdate update(OrderProcessingEvent orderProcessingEvent) {
+    return update(
+        orderProcessingEvent.getUuid(),
+        previous ->
+            Objects.nonNull(previous)
+                    && previous.getVersion() > orderProcessingEvent.getHops().size()
+                ? null
+                : orderProcessingEvent);
+  }
+
+  /** Synchronized as the index maintenance reads the previous state before replacing it. */
+  @Override
+  public synchronized SagaUpdate update(
+      UUID uuid, Function<SagaState, OrderProcessingEvent> transition) {
+    byte[] uuidKey = uuidKey(uuid);
+    try (WriteBatch writeBatch = new WriteBatch()) {
+      SagaState previous = read(rocksDB.get(states, uuidKey));
+      OrderProcessingEvent orderProcessingEvent = transition.apply(previous);
+      if (Objects.isNull(orderProcessingEvent)) {
+        return new SagaUpdate(null, false);
+      }
+      SagaState sagaState = SagaState.from(orderProcessingEvent, System.currentTimeMillis());
+      if (Objects.nonNull(previous)) {
+        sagaState.setCreatedAt(previous.getCreatedAt());
+        writeBatch.delete(byUser, userKey(previous));
+        writeBatch.delete(byStatus, statusKey(previous));
+        writeBatch.delete(inFlight, inFlightKey(previous));
+      }
+      writeBatch.put(states, uuidKey, objectMapper.writeValueAsBytes(sagaState));
+      writeBatch.put(byUser, userKey(sagaState), EMPTY);
+      writeBatch.put(byStatus, statusKey(sagaState), EMPTY);
+      if (sagaState.inFlight()) {
+        writeBatch.put(inFlight, inFlightKey(sagaState), EMPTY);
+      }
+      rocksDB.write(writeOptions, writeBatch);
+      return new SagaUpdate(
+          orderProcessingEvent,
+          sagaState.isSettled() && (Objects.isNull(previous) || previous.inFlight()));
+    } catch (RocksDBException | IOException e) {
+      throw new SagaStateStoreException("Saga state update failed for event with ID: " + uuid, e);
+    }
+  }
+
+  @Override
+  public SagaState getByUuid(UUID uuid) {
+    try {
+      return read(rocksDB.get(states, uuidKey(uuid)));
+    } catch (RocksDBException | IOException e) {
+      throw new SagaStateStoreException("Saga state read failed for ID: " + uuid, e);
+    }
+  }
+
+  @Override
+  public List<SagaState> findByUser(Integer userId, int limit) {
+    return findNewestFirst(byUser, ByteBuffer.allocate(Integer.BYTES).putInt(userId), limit);
+  }
+
+  @Override
+  public List<SagaState> findByStatus(OrderStatus orderStatus, int limit) {
+    return findNewestFirst(
+        byStatus, ByteBuffer.allocate(1).put((byte) orderStatus.ordinal()), limit);
+  }
+
+  @Override
+  public List<SagaState> findStuck(long olderThanMs, int limit) {
+    long updatedBefore = System.currentTimeMillis() - olderThanMs;
+    List<SagaState> stuckSagas = new ArrayList<>();
+    try (RocksIterator iterator = rocksDB.newIterator(inFlight)) {
+      for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+        ByteBuffer key = ByteBuffer.wrap(iterator.key());
+        if (key.getLong() >= updatedBefore || stuckSagas.size() >= limit) {
+          break;
+        }
+        addState(stuckSagas, key);
+      }
+    }
+    return stuckSagas;
+  }
+
+  @Override
+  public void forEachInFlight(Consumer<SagaState> consumer) {
+    try (RocksIterator iterator = rocksDB.newIterator(inFlight)) {
+      for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+        ByteBuffer key = ByteBuffer.wrap(iterator.key());
+        key.position(Long.BYTES);
+        SagaState sagaState = getByUuid(new UUID(key.getLong(), key.getLong()));
+        if (Objects.nonNull(sagaState)) {
+          consumer.accept(sagaState);
+        }
+      }
+    }
+  }
+
+  /** Index keys are {@code prefix + timestamp + uuid}; walks one prefix from its end backwards. */
+  private List<SagaState> findNewestFirst(
+      ColumnFamilyHandle index, ByteBuffer prefixBuffer, int limit) {
+    byte[] prefix = prefixBuffer.array();
+    byte[] seekKey = Arrays.copyOf(prefix, prefix.length + Long.BYTES + UUID_BYTES);
+    Arrays.fill(seekKey, prefix.length, seekKey.length, (byte) 0xFF);
+    List<SagaState> sagaStates = new ArrayList<>();
+    try (RocksIterator iterator = rocksDB.newIterator(index)) {
+      for (iterator.seekForPrev(seekKey); iterator.isValid(); iterator.prev()) {
+        byte[] key = iterator.key();
+        if (!startsWith(key, prefix) || sagaStates.size() >= limit) {
+          break;
+        }
+        ByteBuffer keyBuffer = ByteBuffer.wrap(key);
+        keyBuffer.position(prefix.length + Long.BYTES);
+        addState(sagaStates, keyBuffer);
+      }
+    }
+    return sagaStates;
+  }
+
+  private void addState(List<SagaState> sagaStates, ByteBuffer uuidBuffer) {
+    SagaState sagaState = getByUuid(new UUID(uuidBuffer.getLong(), uuidBuffer.getLong()));
+    if (Objects.nonNull(sagaState)) {
+      sagaStates.add(sagaState);
+    }
+  }
+
+  private SagaState read(byte[] serializedState) throws IOException {
+    return Objects.isNull(serializedState)
+        ? null
+        : objectMapper.readValue(serializedState, SagaState.class);
+  }
+
+  private static boolean startsWith(byte[] key, byte[] prefix) {
+    if (key.length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (key[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] uuidKey(UUID uuid) {
+    return ByteBuffer.allocate(UUID_BYTES)
+        .putLong(uuid.getMostSignificantBits())
+        .putLong(uuid.getLeastSignificantBits())
+        .array();
+  }
+
+  private static byte[] userKey(SagaState sagaState) {
+    return ByteBuffer.allocate(Integer.BYTES + Long.BYTES + UUID_BYTES)
+        .putInt(sagaState.getUserId())
+        .putLong(sagaState.getCreatedAt())
+        .put(uuidKey(sagaState.getUuid()))
+        .array();
+  }
+
+  private static byte[] statusKey(SagaState sagaState) {
+    return ByteBuffer.allocate(1 + Long.BYTES + UUID_BYTES)
+        .put((byte) sagaState.getOrderStatus().ordinal())
+        .putLong(sagaState.getUpdatedAt())
+        .put(uuidKey(sagaState.getUuid()))
+        .array();
+  }
+
+  private static byte[] inFlightKey(SagaState sagaState) {
+    return ByteBuffer.allocate(Long.BYTES + UUID_BYTES)
+        .putLong(sagaState.getUpdatedAt())
+        .put(uuidKey(sagaState.getUuid()))
+        .array();
+  }
+}
@@ -0,0 +1,93 @@
+package orderservice.store;
+
+import common.dto.OrderDTO;
+import common.enums.OrderStatus;
+import common.enums.ProcessingStatus;
+import common.event.OrderProcessingEvent;
+import common.event.SagaHop;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import lombok.Data;
+
+/** Latest known state of one saga, as materialized from the order-processing events. */
+@Data
+public class SagaState {
+
+  private UUID uuid;
+  private Integer userId;
+  private Integer productId;
+  private Integer orderedQty;
+
+  private OrderStatus orderStatus;
+  private ProcessingStatus userProcessingStatus;
+  private ProcessingStatus warehouseProcessingStatus;
+  private ProcessingStatus shipmentProcessingStatus;
+  private boolean parallelSteps;
+
+  /** {@code service.step} of the last hop, empty until a service has handled the saga. */
+  private String lastStep;
+
+  /** Number of hops taken; events of one saga can arrive out of order, the older ones lose. */
+  private int version;
+
+  /** See {@link OrderProcessingEvent#settled()}; sagas that are not settled are in flight. */
+  private boolean settled;
+
+  private long createdAt;
+  private long updatedAt;
+  private String processingResultMessage;
+  private List<SagaHop> hops = new ArrayList<>();
+
+  public static SagaState from(OrderProcessingEvent orderProcessingEvent, long updatedAt) {
+    SagaState sagaState = new SagaState();
+    sagaState.setUuid(orderProcessingEvent.getUuid());
+    sagaState.setUserId(orderProcessingEvent.getOrderDTO().getUserId());
+    sagaState.setProductId(orderProcessingEvent.getOrderDTO().getProductId());
+    sagaState.setOrderedQty(orderProcessingEvent.getOrderDTO().getOrderedQty());
+    sagaState.setOrderStatus(orderProcessingEvent.getOrderStatus());
+    sagaState.setUserProcessingStatus(orderProcessingEvent.getUserProcessingStatus());
+    sagaState.setWarehouseProcessingStatus(orderProcessingEvent.getWarehouseProcessingStatus());
+    sagaState.setShipmentProcessingStatus(orderProcessingEvent.getShipmentProcessingStatus());
+    sagaState.setParallelSteps(orderProcessingEvent.isParallelSteps());
+    List<SagaHop> hops = orderProcessingEvent.getHops();
+    if (!hops.isEmpty()) {
+      SagaHop lastHop = hops.get(hops.size() - 1);
+      sagaState.setLastStep(lastHop.getService() + "." + lastHop.getStep());
+    }
+    sagaState.setVersion(hops.size());
+    sagaState.setSettled(orderProcessingEvent.settled());
+    sagaState.setCreatedAt(orderProcessingEvent.getCreatedAt());
+    sagaState.setUpdatedAt(updatedAt);
+    sagaState.setProcessingResultMessage(orderProcessingEvent.getProcessingResultMessage());
+    sagaState.setHops(hops);
+    return sagaState;
+  }
+
+  /** Rebuilds the latest event of the saga, e.g. to publish it again. */
+  public OrderProcessingEvent toEvent() {
+    OrderDTO orderDTO = new OrderDTO();
+    orderDTO.setUserId(userId);
+    orderDTO.setProductId(productId);
+    orderDTO.setOrderedQty(orderedQty);
+
+    OrderProcessingEvent orderProcessingEvent = new OrderProcessingEvent();
+    orderProcessingEvent.setUuid(uuid);
+    orderProcessingEvent.setOrderDTO(orderDTO);
+    orderProcessingEvent.setOrderStatus(orderStatus);
+    orderProcessingEvent.setUserProcessingStatus(userProcessingStatus);
+    orderProcessingEvent.setWarehouseProcessingStatus(warehouseProcessingStatus);
+    orderProcessingEvent.setShipmentProcessingStatus(shipmentProcessingStatus);
+    orderProcessingEvent.setParallelSteps(parallelSteps);
+    orderProcessingEvent.setCreatedAt(createdAt);
+    orderProcessingEvent.setProcessingResultMessage(
+        new StringBuilder(Objects.toString(processingResultMessage, "")));
+    orderProcessingEvent.setHops(new ArrayList<>(hops));
+    return orderProcessingEvent;
+  }
+
+  public boolean inFlight() {
+    return !settled;
+  }
+}
@@ -0,0 +1,35 @@
+package orderservice.store;
+
+import common.enums.OrderStatus;
+import common.event.OrderProcessingEvent;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public interface SagaStateStore {
+
+  /** Applies the event unless the store already holds a later state of the same saga. */
+  SagaUpdate update(OrderProcessingEvent orderProcessingEvent);
+
+  /**
+   * Stores the event the transition derives from the stored state of the saga, atomically with
+   * respect to every other update, so that no update in between is lost. The transition gets
+   * {@code null} for a saga unknown so far and keeps the stored state by returning {@code null}.
+   */
+  SagaUpdate update(UUID uuid, Function<SagaState, OrderProcessingEvent> transition);
+
+  SagaState getByUuid(UUID uuid);
+
+  /** Sagas of the user, the most recently created first. */
+  List<SagaState> findByUser(Integer userId, int limit);
+
+  /** Sagas in the given status, the most recently updated first. */
+  List<SagaState> findByStatus(OrderStatus orderStatus, int limit);
+
+  /** In-flight sagas without any transition for longer than the given time, the oldest first. */
+  List<SagaState> findStuck(long olderThanMs, int limit);
+
+  /** Visits every in-flight saga without loading them all into memory at once. */
+  void forEachInFlight(Consumer<SagaState> consumer);
+}
@@ -0,0 +1,15 @@
+package orderservice.store;
+
+import common.event.OrderProcessingEvent;
+import lombok.Value;
+
+/** What a {@link SagaStateStore} update did to the state of a saga. */
+@Value
+public class SagaUpdate {
+
+  /** The event as stored, {@code null} if the store kept the state it held. */
+  OrderProcessingEvent event;
+
+  /** Whether the update settled a saga that was in flight until then. */
+  boolean settled;
+}
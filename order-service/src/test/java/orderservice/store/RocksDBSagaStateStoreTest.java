@@ -0,0 +1,162 @@
+package orderservice.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import common.dto.OrderDTO;
+import common.enums.OrderStatus;
+import common.event.OrderProcessingEvent;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.rocksdb.RocksDBException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class RocksDBSagaStateStoreTest {
+
+  /** Counts every saga as stuck that was updated before a minute from now. */
+  private static final long ANY_AGE_MS = -60_000;
+
+  @TempDir Path storeDirectory;
+
+  private RocksDBSagaStateStore sagaStateStore;
+
+  @BeforeEach
+  void open() throws RocksDBException {
+    sagaStateStore = new RocksDBSagaStateStore(new ObjectMapper());
+    ReflectionTestUtils.setField(sagaStateStore, "path", storeDirectory.toString());
+    ReflectionTestUtils.setField(sagaStateStore, "blockCacheMb", 1L);
+    ReflectionTestUtils.setField(sagaStateStore, "writeBufferMb", 1L);
+    sagaStateStore.open();
+  }
+
+  @AfterEach
+  void close() {
+    sagaStateStore.close();
+  }
+
+  @Test
+  void keepsTheLatestStateOfASaga() {
+    OrderProcessingEvent event = event(1, 100);
+    sagaStateStore.update(event);
+    event.addHop("user-service", "processing");
+    event.setOrderStatus(OrderStatus.CANCELLED);
+    sagaStateStore.update(event);
+
+    SagaState sagaState = sagaStateStore.getByUuid(event.getUuid());
+    assertEquals(OrderStatus.CANCELLED, sagaState.getOrderStatus());
+    assertEquals(1, sagaState.getVersion());
+    assertEquals("user-service.processing", sagaState.getLastStep());
+    assertNull(sagaStateStore.getByUuid(UUID.randomUUID()));
+  }
+
+  @Test
+  void dropsAnEventOlderThanTheStoredState() {
+    OrderProcessingEvent event = event(1, 100);
+    event.addHop("user-service", "processing");
+    sagaStateStore.update(event);
+
+    OrderProcessingEvent olderEvent = event(1, 100);
+    olderEvent.setUuid(event.getUuid());
+    olderEvent.setOrderStatus(OrderStatus.CREATED);
+    SagaUpdate sagaUpdate = sagaStateStore.update(olderEvent);
+
+    assertNull(sagaUpdate.getEvent());
+    assertFalse(sagaUpdate.isSettled());
+    assertEquals(OrderStatus.REQUESTED, sagaStateStore.getByUuid(event.getUuid()).getOrderStatus());
+  }
+
+  @Test
+  void reportsSettledOnlyForTheUpdateThatSettlesTheSaga() {
+    OrderProcessingEvent event = event(1, 100);
+    assertFalse(sagaStateStore.update(event).isSettled());
+
+    event.addHop("shipment-service", "processing");
+    event.setOrderStatus(OrderStatus.CREATED);
+    assertTrue(sagaStateStore.update(event).isSettled());
+
+    event.addHop("warehouse-service", "processing");
+    assertFalse(sagaStateStore.update(event).isSettled());
+  }
+
+  @Test
+  void findsTheSagasOfAUserNewestFirstWithinItsPrefix() {
+    OrderProcessingEvent oldest = event(1, 100);
+    OrderProcessingEvent newest = event(1, 300);
+    OrderProcessingEvent ofAnotherUser = event(2, 200);
+    OrderProcessingEvent ofAUserSharingTheLowByte = event(257, 400);
+    for (OrderProcessingEvent event :
+        new OrderProcessingEvent[] {oldest, newest, ofAnotherUser, ofAUserSharingTheLowByte}) {
+      sagaStateStore.update(event);
+    }
+
+    assertEquals(uuids(newest, oldest), uuids(sagaStateStore.findByUser(1, 10)));
+    assertEquals(uuids(newest), uuids(sagaStateStore.findByUser(1, 1)));
+    assertEquals(uuids(ofAnotherUser), uuids(sagaStateStore.findByUser(2, 10)));
+    assertTrue(sagaStateStore.findByUser(3, 10).isEmpty());
+  }
+
+  @Test
+  void movesASagaBetweenTheStatusIndexes() {
+    OrderProcessingEvent event = event(1, 100);
+    sagaStateStore.update(event);
+    assertEquals(uuids(event), uuids(sagaStateStore.findByStatus(OrderStatus.REQUESTED, 10)));
+
+    event.addHop("shipment-service", "processing");
+    event.setOrderStatus(OrderStatus.CREATED);
+    sagaStateStore.update(event);
+
+    assertTrue(sagaStateStore.findByStatus(OrderStatus.REQUESTED, 10).isEmpty());
+    assertEquals(uuids(event), uuids(sagaStateStore.findByStatus(OrderStatus.CREATED, 10)));
+  }
+
+  @Test
+  void keepsOnlySagasInFlightInTheInFlightIndex() {
+    OrderProcessingEvent inFlight = event(1, 100);
+    OrderProcessingEvent settled = event(2, 100);
+    sagaStateStore.update(inFlight);
+    sagaStateStore.update(settled);
+    settled.addHop("shipment-service", "processing");
+    settled.setOrderStatus(OrderStatus.CREATED);
+    sagaStateStore.update(settled);
+
+    List<SagaState> inFlightStates = new ArrayList<>();
+    sagaStateStore.forEachInFlight(inFlightStates::add);
+    assertEquals(uuids(inFlight), uuids(inFlightStates));
+    assertEquals(uuids(inFlight), uuids(sagaStateStore.findStuck(ANY_AGE_MS, 10)));
+    assertTrue(sagaStateStore.findStuck(60_000, 10).isEmpty());
+  }
+
+  private static OrderProcessingEvent event(int userId, long createdAt) {
+    OrderDTO orderDTO = new OrderDTO();
+    orderDTO.setUserId(userId);
+    orderDTO.setProductId(1);
+    orderDTO.setOrderedQty(1);
+    OrderProcessingEvent event = new OrderProcessingEvent();
+    event.setOrderDTO(orderDTO);
+    event.setOrderStatus(OrderStatus.REQUESTED);
+    event.setCreatedAt(createdAt);
+    return event;
+  }
+
+  private static List<UUID> uuids(OrderProcessingEvent... events) {
+    List<UUID> uuids = new ArrayList<>();
+    for (OrderProcessingEvent event : events) {
+      uuids.add(event.getUuid());
+    }
+    return uuids;
+  }
+
+  private static List<UUID> uuids(List<SagaState> sagaStates) {
+    return sagaStates.stream().map(SagaState::getUuid).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,30 @@
+package sagabenchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of the shaded benchmarks jar. Delegates to the JMH launcher and, unless the caller
+ * chose a result format, writes the results as JSON so runs of different builds can be compared.
+ */
+public class BenchmarkMain {
+
+  private static final String RESULT_FORMAT_OPTION = "-rf";
+  private static final String RESULT_FILE_OPTION = "-rff";
+  private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+  public static void main(String[] args) throws Exception {
+    List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+    if (!jmhArgs.contains(RESULT_FORMAT_OPTION)) {
+      jmhArgs.add(RESULT_FORMAT_OPTION);
+      jmhArgs.add("json");
+    }
+    if (!jmhArgs.contains(RESULT_FILE_OPTION)) {
+      jmhArgs.add(RESULT_FILE_OPTION);
+      jmhArgs.add(DEFAULT_RESULT_FILE);
+    }
+    Main.main(jmhArgs.toArray(new String[0]));
+  }
+}
@@ -0,0 +1,69 @@
+package sagabenchmarks;
+
+import common.event.OrderProcessingEvent;
+import common.metrics.SagaMetrics;
+import common.tracing.SpanExporter;
+import common.tracing.Tracer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.util.ReflectionUtils;
+import warehouseservice.reservation.ReservationRegistry;
+
+/**
+ * Collaborators that let a service run its real listener code outside Spring: a template that
+ * serializes to a {@link MockProducer} instead of Kafka, metrics on a private registry and a tracer
+ * that samples nothing. The reflection helpers stand in for the {@code @Value} injection and the
+ * lifecycle callbacks.
+ */
+public final class DetachedCollaborators {
+
+  private DetachedCollaborators() {}
+
+  public static KafkaTemplate<String, OrderProcessingEvent> kafkaTemplate() {
+    JsonSerializer<OrderProcessingEvent> valueSerializer = new JsonSerializer<>();
+    // the template closes the producer after every send, so each send gets a new one
+    return new KafkaTemplate<>(
+        () -> new MockProducer<>(true, new StringSerializer(), valueSerializer));
+  }
+
+  public static SagaMetrics sagaMetrics(String serviceName) {
+    return new SagaMetrics(new SimpleMeterRegistry(), serviceName);
+  }
+
+  public static Tracer tracer(String serviceName) {
+    return new Tracer(serviceName, 0, SpanExporter.none());
+  }
+
+  /** A started registry that drops the expired reservations; {@code stop} it after the run. */
+  public static ReservationRegistry reservationRegistry() {
+    ReservationRegistry reservationRegistry = new ReservationRegistry(event -> {});
+    setField(reservationRegistry, "reservationTtlMs", 60_000L);
+    setField(reservationRegistry, "tickDurationMs", 100L);
+    setField(reservationRegistry, "wheelSize", 512);
+    invoke(reservationRegistry, "start");
+    return reservationRegistry;
+  }
+
+  public static void setField(Object target, String fieldName, Object value) {
+    Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+    if (field == null) {
+      throw new IllegalArgumentException("No field " + fieldName + " in " + target.getClass());
+    }
+    ReflectionUtils.makeAccessible(field);
+    ReflectionUtils.setField(field, target, value);
+  }
+
+  public static void invoke(Object target, String methodName) {
+    Method method = ReflectionUtils.findMethod(target.getClass(), methodName);
+    if (method == null) {
+      throw new IllegalArgumentException("No method " + methodName + " in " + target.getClass());
+    }
+    ReflectionUtils.makeAccessible(method);
+    ReflectionUtils.invokeMethod(method, target);
+  }
+}
@@ -0,0 +1,71 @@
+package sagabenchmarks;
+
+import common.event.OrderProcessingEvent;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the status predicates every listener evaluates on each record to decide whether the
+ * event is addressed to it. Events of all saga stages are interleaved so the branches stay
+ * unpredictable, as they are on the shared topic.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventRoutingBenchmark {
+
+  private static final int EVENTS_COUNT = 1024;
+
+  private OrderProcessingEvent[] events;
+  private int cursor;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    events = new OrderProcessingEvent[EVENTS_COUNT];
+    for (int i = 0; i < EVENTS_COUNT; i++) {
+      switch (random.nextInt(4)) {
+        case 0:
+          events[i] = SagaEvents.requested();
+          break;
+        case 1:
+          events[i] = SagaEvents.chargedUser();
+          break;
+        case 2:
+          events[i] = SagaEvents.reservedStock();
+          break;
+        default:
+          events[i] = SagaEvents.cancelled();
+      }
+    }
+  }
+
+  private OrderProcessingEvent nextEvent() {
+    OrderProcessingEvent event = events[cursor];
+    cursor = (cursor + 1) & (EVENTS_COUNT - 1);
+    return event;
+  }
+
+  @Benchmark
+  public void route(Blackhole blackhole) {
+    OrderProcessingEvent event = nextEvent();
+    blackhole.consume(event.processed());
+    blackhole.consume(event.toProcessForUser());
+    blackhole.consume(event.toProcessForWarehouse());
+    blackhole.consume(event.toProcessForShipment());
+  }
+}
@@ -0,0 +1,66 @@
+package sagabenchmarks;
+
+import common.event.OrderProcessingEvent;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+/**
+ * Measures the JSON (de)serialization of {@link OrderProcessingEvent} with the serializers the
+ * services register in their {@code KafkaConfiguration}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventSerializationBenchmark {
+
+  private static final String TOPIC = "order-processing";
+
+  @Param({"REQUESTED", "CANCELLED"})
+  private String stage;
+
+  private JsonSerializer<OrderProcessingEvent> serializer;
+  private JsonDeserializer<OrderProcessingEvent> deserializer;
+  private OrderProcessingEvent event;
+  private byte[] payload;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    serializer = new JsonSerializer<>();
+    deserializer = new JsonDeserializer<>(OrderProcessingEvent.class).ignoreTypeHeaders();
+    event = "CANCELLED".equals(stage) ? SagaEvents.cancelled() : SagaEvents.requested();
+    payload = serializer.serialize(TOPIC, event);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    serializer.close();
+    deserializer.close();
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return serializer.serialize(TOPIC, event);
+  }
+
+  @Benchmark
+  public OrderProcessingEvent deserialize() {
+    return deserializer.deserialize(TOPIC, payload);
+  }
+}
@@ -0,0 +1,66 @@
+package sagabenchmarks;
+
+import common.dto.OrderDTO;
+import common.enums.OrderStatus;
+import common.enums.ProcessingStatus;
+import common.event.OrderProcessingEvent;
+
+/** Representative events for every stage the saga can be in. */
+public final class SagaEvents {
+
+  private SagaEvents() {}
+
+  public static OrderDTO order(int userId, int productId, int orderedQty) {
+    OrderDTO orderDTO = new OrderDTO();
+    orderDTO.setUserId(userId);
+    orderDTO.setProductId(productId);
+    orderDTO.setOrderedQty(orderedQty);
+    return orderDTO;
+  }
+
+  public static OrderProcessingEvent requested() {
+    OrderProcessingEvent event = new OrderProcessingEvent();
+    event.setOrderDTO(order(1, 1, 1));
+    event.setOrderStatus(OrderStatus.REQUESTED);
+    return event;
+  }
+
+  public static OrderProcessingEvent chargedUser() {
+    OrderProcessingEvent event = requested();
+    event.setUserProcessingStatus(ProcessingStatus.SUCCESS);
+    event.addHop("user-service", "process");
+    return event;
+  }
+
+  public static OrderProcessingEvent reservedStock() {
+    OrderProcessingEvent event = chargedUser();
+    event.setWarehouseProcessingStatus(ProcessingStatus.SUCCESS);
+    event.addHop("warehouse-service", "process");
+    return event;
+  }
+
+  /** A charged user whose stock reservation failed; the user step has to refund it. */
+  public static OrderProcessingEvent outOfStock() {
+    OrderProcessingEvent event = chargedUser();
+    event.setWarehouseProcessingStatus(ProcessingStatus.REVERT);
+    event.setOrderStatus(OrderStatus.CANCELLED);
+    event.addHop("warehouse-service", "process");
+    return event;
+  }
+
+  /** A fully processed event carrying the hops and messages of a compensated saga. */
+  public static OrderProcessingEvent cancelled() {
+    OrderProcessingEvent event = reservedStock();
+    event.setShipmentProcessingStatus(ProcessingStatus.REVERT);
+    event.addMessage("Shipment was not processed.");
+    event.addHop("shipment-service", "compensate");
+    event.setWarehouseProcessingStatus(ProcessingStatus.REVERT);
+    event.addMessage("Product's stock was restored.");
+    event.addHop("warehouse-service", "compensate");
+    event.setUserProcessingStatus(ProcessingStatus.REVERT);
+    event.addMessage("User's balance was restored.");
+    event.addHop("user-service", "compensate");
+    event.setOrderStatus(OrderStatus.CANCELLED);
+    return event;
+  }
+}
@@ -0,0 +1,65 @@
+package userservice.service;
+
+import common.dedup.ProcessedEventIndex;
+import common.dto.OrderDTO;
+import common.dto.ProductDTO;
+import common.lane.PriorityLane;
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sagabenchmarks.DetachedCollaborators;
+import sagabenchmarks.SagaEvents;
+
+/**
+ * Measures the debit and credit transactions of {@link DefaultUserService}. Lives in the service
+ * package to reach the package-private transaction methods. Balances are kept in a {@code
+ * ConcurrentHashMap} and every transaction updates its user atomically through {@code
+ * computeIfPresent}; each benchmark thread has its own service, so this measures the uncontended
+ * path. The service gets the same detached collaborators as {@link UserCompensationBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserBalanceBenchmark {
+
+  private static final ProductDTO PEN = new ProductDTO(1, "pen", 10, BigDecimal.valueOf(1.5));
+  private static final BigDecimal ORDER_PRICE = PEN.getPrice();
+
+  private DefaultUserService userService;
+  private OrderDTO orderDTO;
+  private UUID uuid;
+
+  @Setup
+  public void setUp() {
+    userService =
+        new DefaultUserService(
+            productId -> PEN,
+            DetachedCollaborators.kafkaTemplate(),
+            DetachedCollaborators.sagaMetrics("user-service"),
+            DetachedCollaborators.tracer("user-service"),
+            new PriorityLane(0, 0),
+            ProcessedEventIndex.inMemory(1_000, 1, Integer.MAX_VALUE));
+    orderDTO = SagaEvents.order(2, 1, 1);
+    uuid = UUID.randomUUID();
+  }
+
+  @Benchmark
+  public boolean debitAndCredit() {
+    boolean debited = userService.startBalanceDecreasingTransaction(uuid, orderDTO, ORDER_PRICE);
+    userService.startBalanceIncreasingTransaction(uuid, orderDTO, ORDER_PRICE);
+    return debited;
+  }
+}
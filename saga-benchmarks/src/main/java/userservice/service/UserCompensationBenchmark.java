@@ -0,0 +1,73 @@
+package userservice.service;
+
+import common.dedup.ProcessedEventIndex;
+import common.dto.ProductDTO;
+import common.event.OrderProcessingEvent;
+import common.lane.PriorityLane;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sagabenchmarks.DetachedCollaborators;
+import sagabenchmarks.SagaEvents;
+
+/**
+ * Measures the compensation paths of {@link DefaultUserService} end to end through its listener:
+ * routing, the refund with its retry loop, the revert event with its metrics and the JSON
+ * serialization of the outgoing event. Every invocation builds its own event, as consumed events
+ * are never reused.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserCompensationBenchmark {
+
+  private static final ProductDTO PEN = new ProductDTO(1, "pen", 10, BigDecimal.valueOf(1.5));
+
+  /** User 1 holds 100, far less than this many pens cost. */
+  private static final int UNAFFORDABLE_QTY = 1_000_000;
+
+  private DefaultUserService userService;
+
+  @Setup
+  public void setUp() {
+    userService =
+        new DefaultUserService(
+            productId -> PEN,
+            DetachedCollaborators.kafkaTemplate(),
+            DetachedCollaborators.sagaMetrics("user-service"),
+            DetachedCollaborators.tracer("user-service"),
+            new PriorityLane(0, 0),
+            ProcessedEventIndex.inMemory(1_000, 1, Integer.MAX_VALUE));
+    DetachedCollaborators.setField(userService, "orderProcessingTopicName", "order-processing");
+    DetachedCollaborators.setField(userService, "compensationTopicName", "order-compensations");
+  }
+
+  /** Refund of a user whose stock reservation failed. */
+  @Benchmark
+  public OrderProcessingEvent refund() {
+    OrderProcessingEvent event = SagaEvents.outOfStock();
+    userService.listenForOrderProcessingEvent(event);
+    return event;
+  }
+
+  /** Cancellation of an order the user can not afford; nothing has to be undone. */
+  @Benchmark
+  public OrderProcessingEvent rejectInsufficientBalance() {
+    OrderProcessingEvent event = SagaEvents.requested();
+    event.getOrderDTO().setOrderedQty(UNAFFORDABLE_QTY);
+    userService.listenForOrderProcessingEvent(event);
+    return event;
+  }
+}
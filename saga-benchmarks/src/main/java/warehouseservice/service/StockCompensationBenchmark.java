@@ -0,0 +1,85 @@
+package warehouseservice.service;
+
+import common.dedup.ProcessedEventIndex;
+import common.enums.OrderStatus;
+import common.enums.ProcessingStatus;
+import common.event.OrderProcessingEvent;
+import common.lane.PriorityLane;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sagabenchmarks.DetachedCollaborators;
+import sagabenchmarks.SagaEvents;
+import warehouseservice.reservation.ReservationRegistry;
+
+/**
+ * Measures the compensation paths of {@link DefaultProductService} end to end through its
+ * listener: routing, the reservation bookkeeping, the stock release with its retry loop, the revert
+ * event with its metrics and the JSON serialization of the outgoing event. A release needs a
+ * reservation to undo, so it is measured together with the reservation it releases.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockCompensationBenchmark {
+
+  /** The pen (1) has 10 in stock. */
+  private static final int UNAVAILABLE_QTY = 1_000_000;
+
+  private ReservationRegistry reservationRegistry;
+  private DefaultProductService productService;
+
+  @Setup
+  public void setUp() {
+    reservationRegistry = DetachedCollaborators.reservationRegistry();
+    productService =
+        new DefaultProductService(
+            DetachedCollaborators.kafkaTemplate(),
+            reservationRegistry,
+            DetachedCollaborators.sagaMetrics("warehouse-service"),
+            DetachedCollaborators.tracer("warehouse-service"),
+            new PriorityLane(0, 0),
+            ProcessedEventIndex.inMemory(1_000, 1, Integer.MAX_VALUE));
+    DetachedCollaborators.setField(
+        productService, "orderProcessingTopicName", "order-processing");
+    DetachedCollaborators.setField(
+        productService, "compensationTopicName", "order-compensations");
+  }
+
+  @TearDown
+  public void tearDown() {
+    DetachedCollaborators.invoke(reservationRegistry, "stop");
+  }
+
+  /** Reservation of an order followed by its release after the carrier failed to ship it. */
+  @Benchmark
+  public OrderProcessingEvent reserveAndRelease() {
+    OrderProcessingEvent event = SagaEvents.chargedUser();
+    productService.listenToOrderProcessingEvent(event);
+    event.setShipmentProcessingStatus(ProcessingStatus.REVERT);
+    event.setOrderStatus(OrderStatus.CANCELLED);
+    productService.listenToOrderProcessingEvent(event);
+    return event;
+  }
+
+  /** Cancellation of an order exceeding the stock; the user step has to refund it. */
+  @Benchmark
+  public OrderProcessingEvent rejectOutOfStock() {
+    OrderProcessingEvent event = SagaEvents.chargedUser();
+    event.getOrderDTO().setOrderedQty(UNAVAILABLE_QTY);
+    productService.listenToOrderProcessingEvent(event);
+    return event;
+  }
+}
@@ -0,0 +1,88 @@
+package warehouseservice.service;
+
+import common.dedup.ProcessedEventIndex;
+import common.dto.OrderDTO;
+import common.lane.PriorityLane;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import sagabenchmarks.DetachedCollaborators;
+import sagabenchmarks.SagaEvents;
+import warehouseservice.reservation.ReservationRegistry;
+
+/**
+ * Measures a stock reservation followed by its release in {@link DefaultProductService} while an
+ * increasing number of threads compete for the same product. Lives in the service package to reach
+ * the package-private transaction methods. The service gets the same detached collaborators as
+ * {@link StockCompensationBenchmark}, so the transactions run as they do in the service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockReservationBenchmark {
+
+  private ReservationRegistry reservationRegistry;
+  private DefaultProductService productService;
+  private OrderDTO orderDTO;
+
+  @Setup
+  public void setUp() {
+    reservationRegistry = DetachedCollaborators.reservationRegistry();
+    productService =
+        new DefaultProductService(
+            DetachedCollaborators.kafkaTemplate(),
+            reservationRegistry,
+            DetachedCollaborators.sagaMetrics("warehouse-service"),
+            DetachedCollaborators.tracer("warehouse-service"),
+            new PriorityLane(0, 0),
+            ProcessedEventIndex.inMemory(1_000, 1, Integer.MAX_VALUE));
+    orderDTO = SagaEvents.order(1, 1, 1);
+  }
+
+  @TearDown
+  public void tearDown() {
+    DetachedCollaborators.invoke(reservationRegistry, "stop");
+  }
+
+  private boolean reserveAndRelease() {
+    boolean reserved = productService.startQtyDecreasingTransaction(orderDTO);
+    return productService.startQtyIncreasingTransaction(orderDTO) && reserved;
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean reserve1Thread() {
+    return reserveAndRelease();
+  }
+
+  @Benchmark
+  @Threads(2)
+  public boolean reserve2Threads() {
+    return reserveAndRelease();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public boolean reserve4Threads() {
+    return reserveAndRelease();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public boolean reserve8Threads() {
+    return reserveAndRelease();
+  }
+}
@@ -0,0 +1,129 @@
+package sagaharness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import common.dto.ProductDTO;
+import common.enums.OrderStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import loadgenerator.report.LoadReport;
+import loadgenerator.runner.ClosedLoopRunner;
+import loadgenerator.workload.OrderMix;
+import lombok.extern.slf4j.Slf4j;
+import orderservice.OrderServiceApplication;
+import orderservice.store.SagaState;
+import orderservice.store.SagaStateStore;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import userservice.UserServiceApplication;
+import userservice.service.UserService;
+import warehouseservice.WarehouseServiceApplication;
+import warehouseservice.service.ProductService;
+
+/**
+ * Injects a failure at each step of the saga, see {@link FaultScenario}, under a closed-loop
+ * workload. Every scenario boots its own saga and reports the throughput, the end-to-end latency of
+ * the cancelled sagas and the processing time of the compensations. It fails unless every saga
+ * settles and the balances and stock end up exactly where the created orders alone would have
+ * left them. The balances and stock are only observable on the {@code listener} engine.
+ */
+@Slf4j
+class CompensationScenarioTest {
+
+  private static final DecimalFormat PERCENTILE_FORMAT = new DecimalFormat("0.#");
+
+  @ParameterizedTest
+  @EnumSource(FaultScenario.class)
+  void compensationsRestoreBalancesAndStock(FaultScenario scenario) throws InterruptedException {
+    assumeTrue("listener".equals(System.getProperty("harness.engine")));
+    try (EmbeddedSaga embeddedSaga =
+        EmbeddedSaga.start(
+            System.getProperty("harness.saga-mode"),
+            System.getProperty("harness.engine"),
+            Boolean.getBoolean("harness.parallel-steps"),
+            scenario.getProperties())) {
+      UserService userService =
+          embeddedSaga.getBean(UserServiceApplication.class, UserService.class);
+      ProductService productService =
+          embeddedSaga.getBean(WarehouseServiceApplication.class, ProductService.class);
+      Map<Integer, BigDecimal> initialBalances = LoadPhase.balances(userService);
+      Map<Integer, BigDecimal> prices = LoadPhase.prices(productService);
+      Map<Integer, Integer> expectedStock = new HashMap<>();
+      for (ProductDTO product : productService.getAvailableProducts()) {
+        expectedStock.put(product.getId(), product.getStockQty());
+      }
+
+      LoadReport report =
+          LoadPhase.run(
+              new ClosedLoopRunner(
+                  LoadPhase.orderServiceConnector(embeddedSaga),
+                  OrderMix.parse(scenario.getOrderMix()),
+                  new Random(LoadPhase.SEED),
+                  Integer.getInteger("harness.scenario-concurrency")),
+              scenario.name(),
+              Long.getLong("harness.scenario-sec"));
+      SagaStateStore sagaStateStore =
+          embeddedSaga.getBean(OrderServiceApplication.class, SagaStateStore.class);
+      int inFlight = LoadPhase.awaitSettled(sagaStateStore);
+      logTimers(
+          embeddedSaga, OrderServiceApplication.class, "saga.end.to.end", "outcome", "CANCELLED");
+      logTimers(
+          embeddedSaga, UserServiceApplication.class, "saga.step.processing", "step", "compensate");
+      logTimers(
+          embeddedSaga,
+          WarehouseServiceApplication.class,
+          "saga.step.processing",
+          "step",
+          "compensate");
+
+      assertEquals(0, report.getFailedCount(), "orders failed");
+      assertEquals(0, inFlight, "sagas still in flight");
+      LoadPhase.assertBalances(
+          LoadPhase.expectedBalances(initialBalances, prices, sagaStateStore),
+          LoadPhase.balances(userService));
+      for (SagaState sagaState :
+          sagaStateStore.findByStatus(OrderStatus.CREATED, Integer.MAX_VALUE)) {
+        expectedStock.merge(sagaState.getProductId(), -sagaState.getOrderedQty(), Integer::sum);
+      }
+      for (ProductDTO product : productService.getAvailableProducts()) {
+        assertEquals(
+            expectedStock.get(product.getId()),
+            product.getStockQty(),
+            "stock of product " + product.getId());
+      }
+    }
+  }
+
+  private static void logTimers(
+      EmbeddedSaga embeddedSaga,
+      Class<?> applicationClass,
+      String name,
+      String tagKey,
+      String tagValue) {
+    MeterRegistry meterRegistry = embeddedSaga.getBean(applicationClass, MeterRegistry.class);
+    for (Timer timer : meterRegistry.find(name).tag(tagKey, tagValue).timers()) {
+      StringBuilder percentiles = new StringBuilder();
+      for (ValueAtPercentile valueAtPercentile : timer.takeSnapshot().percentileValues()) {
+        percentiles.append(
+            String.format(
+                " p%s %.1f",
+                PERCENTILE_FORMAT.format(valueAtPercentile.percentile() * 100),
+                valueAtPercentile.value(TimeUnit.MILLISECONDS)));
+      }
+      log.info(
+          "{} {}: count {}, latency ms:{}",
+          name,
+          timer.getId().getTags(),
+          timer.count(),
+          percentiles);
+    }
+  }
+}
@@ -0,0 +1,277 @@
+package sagaharness;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import orderservice.OrderServiceApplication;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.streams.KafkaStreams;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import shipmentservice.ShipmentServiceApplication;
+import userservice.UserServiceApplication;
+import warehouseservice.WarehouseServiceApplication;
+
+/**
+ * The four services of the saga running in the current JVM against an in-process Kafka broker.
+ * Each service keeps its own application context, configured from the {@code application.yml} of
+ * its own module, and listens on a random port. The services coordinate in the given {@code
+ * config.saga-mode}; the user and warehouse steps run on the given {@code config.engine}, one
+ * after the other or in parallel. Further properties, e.g. to inject failures, are passed to every
+ * service. A service can be scaled out with replicas, which join the consumer groups of the
+ * service.
+ */
+public class EmbeddedSaga implements AutoCloseable {
+
+  private static final String[] TOPICS = {
+    "order-processing",
+    "order-compensations",
+    "user-commands",
+    "warehouse-commands",
+    "shipment-commands",
+    "saga-replies"
+  };
+  private static final String LOCAL_PORT_PROPERTY = "local.server.port";
+  private static final String STATE_DIR_ARGUMENT = "--config.streams.state-dir=";
+  private static final String DEDUP_PATH_ARGUMENT = "--config.dedup.path=";
+  private static final long STREAMS_STARTUP_TIMEOUT_MS = 60_000;
+  private static final long ASSIGNMENT_TIMEOUT_MS = 60_000;
+
+  private final EmbeddedKafkaBroker kafkaBroker;
+  private final Map<Class<?>, ConfigurableApplicationContext> services = new LinkedHashMap<>();
+  private final Map<Class<?>, List<String>> argumentsPerService = new HashMap<>();
+  private final Map<ConfigurableApplicationContext, Class<?>> replicas = new LinkedHashMap<>();
+
+  private EmbeddedSaga(EmbeddedKafkaBroker kafkaBroker) {
+    this.kafkaBroker = kafkaBroker;
+  }
+
+  public static EmbeddedSaga start(
+      String sagaMode, String engine, boolean parallelSteps, String... properties) {
+    EmbeddedKafkaBroker kafkaBroker =
+        new EmbeddedKafkaBroker(1, true, TOPICS)
+            .brokerProperty("transaction.state.log.replication.factor", "1")
+            .brokerProperty("transaction.state.log.min.isr", "1");
+    kafkaBroker.afterPropertiesSet();
+    EmbeddedSaga embeddedSaga = new EmbeddedSaga(kafkaBroker);
+    try {
+      String sagaModeProperty = "config.saga-mode=" + sagaMode;
+      String engineProperty = "config.engine=" + engine;
+      String stateDirProperty = "config.streams.state-dir=" + newStateDir("saga-streams");
+      String dedupPathProperty = "config.dedup.path=" + newStateDir("saga-dedup");
+      ConfigurableApplicationContext warehouseService =
+          embeddedSaga.startService(
+              WarehouseServiceApplication.class,
+              properties,
+              sagaModeProperty,
+              engineProperty,
+              stateDirProperty,
+              dedupPathProperty);
+      embeddedSaga.startService(
+          UserServiceApplication.class,
+          properties,
+          sagaModeProperty,
+          engineProperty,
+          stateDirProperty,
+          dedupPathProperty,
+          "config.warehouse.url=localhost:" + localPort(warehouseService));
+      embeddedSaga.startService(
+          ShipmentServiceApplication.class, properties, sagaModeProperty, dedupPathProperty);
+      embeddedSaga.startService(
+          OrderServiceApplication.class,
+          properties,
+          sagaModeProperty,
+          "config.parallel-steps=" + parallelSteps,
+          "config.saga-store.path=" + newStateDir("saga-store"));
+      embeddedSaga.awaitPartitionAssignment(embeddedSaga.services.values(), 1);
+      return embeddedSaga;
+    } catch (RuntimeException e) {
+      embeddedSaga.close();
+      throw e;
+    }
+  }
+
+  public String getOrderServiceURL() {
+    return "localhost:" + localPort(services.get(OrderServiceApplication.class));
+  }
+
+  /** Bean of the service started from the given application class. */
+  public <T> T getBean(Class<?> applicationClass, Class<T> beanType) {
+    return services.get(applicationClass).getBean(beanType);
+  }
+
+  /**
+   * Starts another instance of the service with the arguments of the first one, except for state
+   * directories of its own, and waits until the partitions are split evenly between the instances.
+   */
+  public ConfigurableApplicationContext startReplica(Class<?> applicationClass) {
+    List<String> arguments = new ArrayList<>();
+    for (String argument : argumentsPerService.get(applicationClass)) {
+      if (argument.startsWith(STATE_DIR_ARGUMENT)) {
+        arguments.add(STATE_DIR_ARGUMENT + newStateDir("saga-streams"));
+      } else if (argument.startsWith(DEDUP_PATH_ARGUMENT)) {
+        arguments.add(DEDUP_PATH_ARGUMENT + newStateDir("saga-dedup"));
+      } else {
+        arguments.add(argument);
+      }
+    }
+    ConfigurableApplicationContext replica =
+        new SpringApplicationBuilder(applicationClass).run(arguments.toArray(new String[0]));
+    replicas.put(replica, applicationClass);
+    awaitPartitionAssignment(instances(applicationClass), instances(applicationClass).size());
+    return replica;
+  }
+
+  /** Stops the replica and waits until the remaining instances have taken its partitions over. */
+  public void stopReplica(ConfigurableApplicationContext replica) {
+    Class<?> applicationClass = replicas.remove(replica);
+    replica.close();
+    awaitPartitionAssignment(instances(applicationClass), instances(applicationClass).size());
+  }
+
+  private List<ConfigurableApplicationContext> instances(Class<?> applicationClass) {
+    List<ConfigurableApplicationContext> instances = new ArrayList<>();
+    instances.add(services.get(applicationClass));
+    for (Map.Entry<ConfigurableApplicationContext, Class<?>> replica : replicas.entrySet()) {
+      if (replica.getValue().equals(applicationClass)) {
+        instances.add(replica.getKey());
+      }
+    }
+    return instances;
+  }
+
+  private ConfigurableApplicationContext startService(
+      Class<?> applicationClass, String[] sharedProperties, String... properties) {
+    // passed as command line arguments to take precedence over the module's application.yml
+    List<String> arguments = new ArrayList<>();
+    arguments.add("--spring.config.location=" + applicationYaml(applicationClass));
+    arguments.add("--server.port=0");
+    arguments.add("--config.kafka.url=" + kafkaBroker.getBrokersAsString());
+    for (String property : sharedProperties) {
+      arguments.add("--" + property);
+    }
+    for (String property : properties) {
+      arguments.add("--" + property);
+    }
+    ConfigurableApplicationContext service =
+        new SpringApplicationBuilder(applicationClass).run(arguments.toArray(new String[0]));
+    services.put(applicationClass, service);
+    argumentsPerService.put(applicationClass, arguments);
+    return service;
+  }
+
+  /**
+   * Listeners and stream topologies start from the latest offset, so no order may be sent before
+   * they are assigned. The partitions of a listener are split evenly between the instances of its
+   * service.
+   */
+  private void awaitPartitionAssignment(
+      Collection<ConfigurableApplicationContext> instances, int instanceCount) {
+    for (ConfigurableApplicationContext service : instances) {
+      KafkaListenerEndpointRegistry registry = service.getBean(KafkaListenerEndpointRegistry.class);
+      for (MessageListenerContainer container : registry.getListenerContainers()) {
+        if (container.isRunning()) {
+          awaitAssignment(
+              container,
+              container.getContainerProperties().getTopics().length
+                  * kafkaBroker.getPartitionsPerTopic()
+                  / instanceCount);
+        }
+      }
+      for (StreamsBuilderFactoryBean factoryBean :
+          service.getBeansOfType(StreamsBuilderFactoryBean.class).values()) {
+        awaitRunning(factoryBean.getKafkaStreams());
+      }
+    }
+  }
+
+  /**
+   * Unlike {@link ContainerTestUtils#waitForAssignment}, also waits while the container holds more
+   * partitions than expected, as it does until a replica has joined its group.
+   */
+  private static void awaitAssignment(MessageListenerContainer container, int partitions) {
+    long deadline = System.currentTimeMillis() + ASSIGNMENT_TIMEOUT_MS;
+    while (assignedPartitionCount(container) != partitions) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new IllegalStateException(
+            String.format(
+                "Expected %d but got %d partitions",
+                partitions, assignedPartitionCount(container)));
+      }
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the assignment", e);
+      }
+    }
+  }
+
+  private static int assignedPartitionCount(MessageListenerContainer container) {
+    Collection<TopicPartition> assignedPartitions = container.getAssignedPartitions();
+    return Objects.isNull(assignedPartitions) ? 0 : assignedPartitions.size();
+  }
+
+  private static void awaitRunning(KafkaStreams kafkaStreams) {
+    long deadline = System.currentTimeMillis() + STREAMS_STARTUP_TIMEOUT_MS;
+    while (kafkaStreams.state() != KafkaStreams.State.RUNNING) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new IllegalStateException("Stream topology did not start within the timeout");
+      }
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the stream topology", e);
+      }
+    }
+  }
+
+  /**
+   * The state of a previous run refers to offsets of a broker that no longer exists, and to sagas
+   * the current run did not start.
+   */
+  private static String newStateDir(String prefix) {
+    try {
+      return Files.createTempDirectory(prefix).toString();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Every module ships an {@code application.yml}; pick the one next to the application class. */
+  private static String applicationYaml(Class<?> applicationClass) {
+    URL location = applicationClass.getProtectionDomain().getCodeSource().getLocation();
+    String path = location.toExternalForm();
+    return path.endsWith(".jar") ? "jar:" + path + "!/application.yml" : path + "application.yml";
+  }
+
+  private static String localPort(ConfigurableApplicationContext service) {
+    return service.getEnvironment().getProperty(LOCAL_PORT_PROPERTY);
+  }
+
+  @Override
+  public void close() {
+    for (ConfigurableApplicationContext replica : replicas.keySet()) {
+      replica.close();
+    }
+    List<ConfigurableApplicationContext> startedServices = new ArrayList<>(services.values());
+    for (int i = startedServices.size() - 1; i >= 0; i--) {
+      startedServices.get(i).close();
+    }
+    kafkaBroker.destroy();
+  }
+}
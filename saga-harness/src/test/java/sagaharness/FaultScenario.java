@@ -0,0 +1,38 @@
+package sagaharness;
+
+import lombok.Getter;
+
+/**
+ * Order mix and injected failures of a {@link CompensationScenarioTest} run. User 1 holds 100 and
+ * user 2 holds 15000; the pen (1) costs 1.5 with 10 in stock, the iPhone (2) costs 1500 with 1.
+ */
+@Getter
+enum FaultScenario {
+
+  /** User 1 can not afford the iPhone, so the first step fails and there is nothing to undo. */
+  INSUFFICIENT_BALANCE("1:2:1"),
+
+  /** The only iPhone is sold once; the user step refunds every later order. */
+  OUT_OF_STOCK("2:2:1"),
+
+  /** No order is shipped; the warehouse and user steps undo every one of them. */
+  CARRIER_FAILURE(
+      "2:1:1", "config.shipment.carrier.type=simulated", "config.shipment.carrier.failure-rate=1"),
+
+  /**
+   * Every tenth balance and stock transaction fails before changing anything, compensations
+   * included, while the default carrier rejects every other shipment; the retries have to restore
+   * the state regardless.
+   */
+  STORE_FAILURE("uniform", "config.fault-injection.store-failure-rate=0.1");
+
+  private final String orderMix;
+
+  /** Passed to every service of the saga. */
+  private final String[] properties;
+
+  FaultScenario(String orderMix, String... properties) {
+    this.orderMix = orderMix;
+    this.properties = properties;
+  }
+}
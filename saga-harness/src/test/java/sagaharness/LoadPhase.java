@@ -0,0 +1,120 @@
+package sagaharness;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import common.dto.ProductDTO;
+import common.enums.OrderStatus;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import loadgenerator.connector.DefaultOrderServiceConnector;
+import loadgenerator.report.LoadReport;
+import loadgenerator.runner.LoadRunner;
+import okhttp3.OkHttpClient;
+import orderservice.store.SagaState;
+import orderservice.store.SagaStateStore;
+import org.springframework.test.util.ReflectionTestUtils;
+import userservice.dto.UserDTO;
+import userservice.service.UserService;
+import warehouseservice.service.ProductService;
+
+/**
+ * Drives load against an {@link EmbeddedSaga} one phase at a time, and works out where the
+ * created orders should have left the balances once the sagas settled.
+ */
+final class LoadPhase {
+
+  /** Seed of the workload, so a failing run can be repeated. */
+  static final long SEED = 42;
+
+  static final long SETTLE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(60);
+  static final long SETTLE_POLL_INTERVAL_MS = 200;
+
+  private static final long DRAIN_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(60);
+  private static final long DRAIN_POLL_INTERVAL_MS = 100;
+
+  private LoadPhase() {}
+
+  static DefaultOrderServiceConnector orderServiceConnector(EmbeddedSaga embeddedSaga) {
+    DefaultOrderServiceConnector orderServiceConnector =
+        new DefaultOrderServiceConnector(new OkHttpClient(), new ObjectMapper());
+    ReflectionTestUtils.setField(
+        orderServiceConnector, "orderServiceURL", embeddedSaga.getOrderServiceURL());
+    return orderServiceConnector;
+  }
+
+  /** Runs the phase and waits until the orders it sent have completed. */
+  static LoadReport run(LoadRunner loadRunner, String phase, long phaseSec)
+      throws InterruptedException {
+    LoadReport report = new LoadReport(phase);
+    loadRunner.run(report, TimeUnit.SECONDS.toNanos(phaseSec));
+    long deadlineMs = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+    while (report.getInFlight() > 0 && System.currentTimeMillis() < deadlineMs) {
+      TimeUnit.MILLISECONDS.sleep(DRAIN_POLL_INTERVAL_MS);
+    }
+    report.logSummary();
+    return report;
+  }
+
+  /** @return the number of sagas still in flight once all settled or the timeout passed */
+  static int awaitSettled(SagaStateStore sagaStateStore) throws InterruptedException {
+    long deadlineMs = System.currentTimeMillis() + SETTLE_TIMEOUT_MS;
+    while (true) {
+      AtomicInteger inFlight = new AtomicInteger();
+      sagaStateStore.forEachInFlight(sagaState -> inFlight.incrementAndGet());
+      if (inFlight.get() == 0 || System.currentTimeMillis() > deadlineMs) {
+        return inFlight.get();
+      }
+      TimeUnit.MILLISECONDS.sleep(SETTLE_POLL_INTERVAL_MS);
+    }
+  }
+
+  static Map<Integer, BigDecimal> balances(UserService userService) {
+    Map<Integer, BigDecimal> balances = new HashMap<>();
+    for (UserDTO user : userService.getAllUsers()) {
+      balances.put(user.getId(), user.getBalance());
+    }
+    return balances;
+  }
+
+  static Map<Integer, BigDecimal> prices(ProductService productService) {
+    Map<Integer, BigDecimal> prices = new HashMap<>();
+    for (ProductDTO product : productService.getAvailableProducts()) {
+      prices.put(product.getId(), product.getPrice());
+    }
+    return prices;
+  }
+
+  /** @return the initial balances with the orders of the created sagas debited */
+  static Map<Integer, BigDecimal> expectedBalances(
+      Map<Integer, BigDecimal> initialBalances,
+      Map<Integer, BigDecimal> prices,
+      SagaStateStore sagaStateStore) {
+    Map<Integer, BigDecimal> expectedBalances = new HashMap<>(initialBalances);
+    for (SagaState sagaState :
+        sagaStateStore.findByStatus(OrderStatus.CREATED, Integer.MAX_VALUE)) {
+      BigDecimal orderPrice =
+          prices
+              .get(sagaState.getProductId())
+              .multiply(BigDecimal.valueOf(sagaState.getOrderedQty()));
+      expectedBalances.merge(sagaState.getUserId(), orderPrice.negate(), BigDecimal::add);
+    }
+    return expectedBalances;
+  }
+
+  static void assertBalances(
+      Map<Integer, BigDecimal> expectedBalances, Map<Integer, BigDecimal> balances) {
+    for (Map.Entry<Integer, BigDecimal> expectedBalance : expectedBalances.entrySet()) {
+      BigDecimal balance = balances.get(expectedBalance.getKey());
+      assertTrue(
+          Objects.nonNull(balance) && expectedBalance.getValue().compareTo(balance) == 0,
+          String.format(
+              "balance of user %d is %s instead of %s",
+              expectedBalance.getKey(), balance, expectedBalance.getValue()));
+    }
+  }
+}
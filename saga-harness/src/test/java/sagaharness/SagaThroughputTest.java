@@ -0,0 +1,65 @@
+package sagaharness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import loadgenerator.report.LoadReport;
+import loadgenerator.runner.ClosedLoopRunner;
+import loadgenerator.runner.LoadRunner;
+import loadgenerator.workload.OrderMix;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Drives a fixed closed-loop workload through the whole saga and fails when throughput or the p99
+ * latency of {@code POST /orders} leave their budgets. Budgets and workload are taken from the
+ * {@code harness.*} system properties, see the module pom.
+ */
+class SagaThroughputTest {
+
+  private static EmbeddedSaga embeddedSaga;
+
+  @BeforeAll
+  static void startSaga() {
+    embeddedSaga =
+        EmbeddedSaga.start(
+            System.getProperty("harness.saga-mode"),
+            System.getProperty("harness.engine"),
+            Boolean.getBoolean("harness.parallel-steps"));
+  }
+
+  @AfterAll
+  static void stopSaga() {
+    if (embeddedSaga != null) {
+      embeddedSaga.close();
+    }
+  }
+
+  @Test
+  void sagaKeepsThroughputAndLatencyBudgets() throws InterruptedException {
+    LoadRunner loadRunner =
+        new ClosedLoopRunner(
+            LoadPhase.orderServiceConnector(embeddedSaga),
+            OrderMix.parse("uniform"),
+            new Random(LoadPhase.SEED),
+            Integer.getInteger("harness.concurrency"));
+
+    LoadPhase.run(loadRunner, "warm-up", Long.getLong("harness.warmup-sec"));
+    LoadReport report =
+        LoadPhase.run(loadRunner, "measurement", Long.getLong("harness.duration-sec"));
+
+    double minThroughput = Double.parseDouble(System.getProperty("harness.min-throughput"));
+    double maxP99Ms = Double.parseDouble(System.getProperty("harness.max-p99-ms"));
+    assertEquals(0, report.getFailedCount(), "orders failed");
+    assertEquals(0, report.getRejectedCount(), "orders rejected by the admission control");
+    assertTrue(
+        report.getThroughput() >= minThroughput,
+        String.format("throughput %.1f orders/s below %.1f", report.getThroughput(), minThroughput));
+    assertTrue(
+        report.getLatencyPercentileMillis(99) <= maxP99Ms,
+        String.format(
+            "p99 %.1f ms above %.1f ms", report.getLatencyPercentileMillis(99), maxP99Ms));
+  }
+}
@@ -0,0 +1,117 @@
+package sagaharness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import loadgenerator.runner.ClosedLoopRunner;
+import loadgenerator.runner.LoadRunner;
+import loadgenerator.workload.OrderMix;
+import orderservice.OrderServiceApplication;
+import orderservice.store.SagaStateStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import userservice.UserServiceApplication;
+import userservice.service.UserService;
+import warehouseservice.WarehouseServiceApplication;
+import warehouseservice.service.ProductService;
+
+/**
+ * Scales the user service out to a second instance and back in while orders keep coming, with
+ * {@code config.sharding.enabled}. It fails unless every user is held by exactly one instance,
+ * both instances hold some while scaled out, and the balances end up exactly where the created
+ * orders would have left them, i.e. no balance change was lost or applied twice in a handoff. The
+ * sharding is only used on the {@code listener} engine.
+ */
+class UserShardingTest {
+
+  /**
+   * Users seeded by the user service. Its listeners join their group one after the other, so the
+   * users are handed off and taken over again right after startup and are only all held after that.
+   */
+  private static final int SEEDED_USER_COUNT = 2;
+
+  @Test
+  void balancesSurviveScalingOutAndIn() throws InterruptedException {
+    assumeTrue("listener".equals(System.getProperty("harness.engine")));
+    try (EmbeddedSaga embeddedSaga =
+        EmbeddedSaga.start(
+            System.getProperty("harness.saga-mode"),
+            System.getProperty("harness.engine"),
+            Boolean.getBoolean("harness.parallel-steps"),
+            "config.sharding.enabled=true")) {
+      UserService userService =
+          embeddedSaga.getBean(UserServiceApplication.class, UserService.class);
+      awaitHeld(SEEDED_USER_COUNT, userService);
+      Map<Integer, BigDecimal> initialBalances = LoadPhase.balances(userService);
+      LoadRunner loadRunner =
+          new ClosedLoopRunner(
+              LoadPhase.orderServiceConnector(embeddedSaga),
+              OrderMix.parse("uniform"),
+              new Random(LoadPhase.SEED),
+              Integer.getInteger("harness.scenario-concurrency"));
+      long phaseSec = Long.getLong("harness.scenario-sec");
+      long failedCount = LoadPhase.run(loadRunner, "one instance", phaseSec).getFailedCount();
+
+      ConfigurableApplicationContext replica =
+          embeddedSaga.startReplica(UserServiceApplication.class);
+      UserService replicaUserService = replica.getBean(UserService.class);
+      awaitHeld(initialBalances.size(), userService, replicaUserService);
+      Map<Integer, BigDecimal> balances = LoadPhase.balances(userService);
+      Map<Integer, BigDecimal> replicaBalances = LoadPhase.balances(replicaUserService);
+      String heldUsers = "users " + balances.keySet() + " and " + replicaBalances.keySet();
+      assertFalse(balances.isEmpty(), "no users held by the first instance, " + heldUsers);
+      assertFalse(replicaBalances.isEmpty(), "no users held by the replica, " + heldUsers);
+      for (Integer userId : replicaBalances.keySet()) {
+        assertNull(balances.get(userId), "user " + userId + " held by both instances");
+      }
+      failedCount += LoadPhase.run(loadRunner, "two instances", phaseSec).getFailedCount();
+
+      embeddedSaga.stopReplica(replica);
+      awaitHeld(initialBalances.size(), userService);
+      failedCount += LoadPhase.run(loadRunner, "scaled in", phaseSec).getFailedCount();
+      SagaStateStore sagaStateStore =
+          embeddedSaga.getBean(OrderServiceApplication.class, SagaStateStore.class);
+      int inFlight = LoadPhase.awaitSettled(sagaStateStore);
+
+      assertEquals(0, failedCount, "orders failed");
+      assertEquals(0, inFlight, "sagas still in flight");
+      Map<Integer, BigDecimal> expectedBalances =
+          LoadPhase.expectedBalances(
+              initialBalances,
+              LoadPhase.prices(
+                  embeddedSaga.getBean(WarehouseServiceApplication.class, ProductService.class)),
+              sagaStateStore);
+      balances = LoadPhase.balances(userService);
+      assertEquals(expectedBalances.keySet(), balances.keySet(), "users held after scaling in");
+      LoadPhase.assertBalances(expectedBalances, balances);
+    }
+  }
+
+  /**
+   * A partition counts as assigned before its users are restored, so they are taken over shortly
+   * after the assignment. Waits until every instance holds some users and all of them are held.
+   */
+  private static void awaitHeld(int userCount, UserService... userServices)
+      throws InterruptedException {
+    long deadlineMs = System.currentTimeMillis() + LoadPhase.SETTLE_TIMEOUT_MS;
+    while (System.currentTimeMillis() < deadlineMs) {
+      int heldCount = 0;
+      boolean everyInstanceHolds = true;
+      for (UserService userService : userServices) {
+        int instanceHeldCount = userService.getAllUsers().size();
+        heldCount += instanceHeldCount;
+        everyInstanceHolds &= instanceHeldCount > 0;
+      }
+      if (everyInstanceHolds && heldCount >= userCount) {
+        return;
+      }
+      TimeUnit.MILLISECONDS.sleep(LoadPhase.SETTLE_POLL_INTERVAL_MS);
+    }
+  }
+}
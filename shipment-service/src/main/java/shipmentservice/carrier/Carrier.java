@@ -0,0 +1,21 @@
+package shipmentservice.carrier;
+
+import common.dto.OrderDTO;
+import java.util.List;
+import shipmentservice.exception.UnshippedOrderException;
+
+/** 3rd party shipment provider, selected by {@code config.shipment.carrier.type}. */
+public interface Carrier {
+
+  boolean ship(OrderDTO orderDTO) throws UnshippedOrderException;
+
+  /**
+   * Submits all the orders as a single manifest (one round trip).
+   *
+   * @return per-order acceptance, in the order of the given manifest
+   */
+  List<Boolean> shipManifest(List<OrderDTO> manifest) throws UnshippedOrderException;
+
+  /** Cancels a shipment that was accepted but is not needed anymore. */
+  void voidShipment(OrderDTO orderDTO);
+}
@@ -0,0 +1,26 @@
+package shipmentservice.carrier;
+
+import java.util.Random;
+
+/** Source of simulated carrier response times. */
+public interface LatencyDistribution {
+
+  long sampleMs(Random random);
+
+  static LatencyDistribution fixed(long latencyMs) {
+    return random -> latencyMs;
+  }
+
+  /** Log-normal latency around {@code medianMs}; {@code sigma} controls the width of the tail. */
+  static LatencyDistribution logNormal(double medianMs, double sigma) {
+    double mu = Math.log(medianMs);
+    return random -> Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+  }
+
+  /** Mixes a regular and a slow mode, the latter chosen with {@code slowProbability}. */
+  static LatencyDistribution bimodal(
+      LatencyDistribution regular, LatencyDistribution slow, double slowProbability) {
+    return random ->
+        random.nextDouble() < slowProbability ? slow.sampleMs(random) : regular.sampleMs(random);
+  }
+}
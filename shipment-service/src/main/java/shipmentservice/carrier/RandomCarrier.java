@@ -0,0 +1,38 @@
+package shipmentservice.carrier;
+
+import common.dto.OrderDTO;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import lombok.RequiredArgsConstructor;
+import shipmentservice.exception.RejectedShipmentException;
+import shipmentservice.exception.UnshippedOrderException;
+
+/** Carrier that accepts every other shipment on average and answers instantly. */
+@RequiredArgsConstructor
+public class RandomCarrier implements Carrier {
+
+  private final Random random;
+
+  @Override
+  public boolean ship(OrderDTO orderDTO) throws UnshippedOrderException {
+    if (random.nextBoolean()) {
+      throw new RejectedShipmentException();
+    }
+    return true;
+  }
+
+  @Override
+  public List<Boolean> shipManifest(List<OrderDTO> manifest) {
+    List<Boolean> acceptedOrders = new ArrayList<>(manifest.size());
+    for (int i = 0; i < manifest.size(); i++) {
+      acceptedOrders.add(!random.nextBoolean());
+    }
+    return acceptedOrders;
+  }
+
+  @Override
+  public void voidShipment(OrderDTO orderDTO) {
+    // every shipment is decided by a coin flip and never stored, so there is nothing to cancel
+  }
+}
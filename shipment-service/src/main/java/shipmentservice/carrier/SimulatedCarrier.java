@@ -0,0 +1,105 @@
+package shipmentservice.carrier;
+
+import common.dto.OrderDTO;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import lombok.Builder;
+import shipmentservice.exception.RejectedShipmentException;
+import shipmentservice.exception.UnshippedOrderException;
+
+/**
+ * Carrier with configurable response times, rejection rate, client-side timeout and a request rate
+ * limit. All the randomness comes from the injected {@link Random}, so a seeded instance replays
+ * the same sequence of outcomes.
+ */
+public class SimulatedCarrier implements Carrier {
+
+  private final Random random;
+  private final LatencyDistribution latencyDistribution;
+  private final long perOrderLatencyMs;
+  private final double failureRate;
+  private final long timeoutMs;
+  private final double rateLimitPerSecond;
+
+  private double availableRequests;
+  private long lastRefillNanos = System.nanoTime();
+
+  @Builder
+  public SimulatedCarrier(
+      Random random,
+      LatencyDistribution latencyDistribution,
+      long perOrderLatencyMs,
+      double failureRate,
+      long timeoutMs,
+      double rateLimitPerSecond) {
+    this.random = random;
+    this.latencyDistribution = latencyDistribution;
+    this.perOrderLatencyMs = perOrderLatencyMs;
+    this.failureRate = failureRate;
+    this.timeoutMs = timeoutMs;
+    this.rateLimitPerSecond = rateLimitPerSecond;
+    this.availableRequests = rateLimitPerSecond;
+  }
+
+  @Override
+  public boolean ship(OrderDTO orderDTO) throws UnshippedOrderException {
+    roundTrip(1);
+    if (random.nextDouble() < failureRate) {
+      throw new RejectedShipmentException("Carrier rejected the shipment");
+    }
+    return true;
+  }
+
+  @Override
+  public List<Boolean> shipManifest(List<OrderDTO> manifest) throws UnshippedOrderException {
+    roundTrip(manifest.size());
+    List<Boolean> acceptedOrders = new ArrayList<>(manifest.size());
+    for (int i = 0; i < manifest.size(); i++) {
+      acceptedOrders.add(random.nextDouble() >= failureRate);
+    }
+    return acceptedOrders;
+  }
+
+  @Override
+  public void voidShipment(OrderDTO orderDTO) {
+    // the simulated carrier keeps no shipments, so there is nothing to cancel
+  }
+
+  private void roundTrip(int orders) throws UnshippedOrderException {
+    if (!tryAcquireRequest()) {
+      throw new UnshippedOrderException("Carrier rate limit exceeded");
+    }
+    long latencyMs = latencyDistribution.sampleMs(random) + perOrderLatencyMs * orders;
+    if (timeoutMs > 0 && latencyMs > timeoutMs) {
+      sleep(timeoutMs);
+      throw new UnshippedOrderException("Carrier did not answer within " + timeoutMs + " ms");
+    }
+    sleep(latencyMs);
+  }
+
+  private synchronized boolean tryAcquireRequest() {
+    if (rateLimitPerSecond <= 0) {
+      return true;
+    }
+    long now = System.nanoTime();
+    double refilledRequests = (now - lastRefillNanos) / 1e9 * rateLimitPerSecond;
+    availableRequests = Math.min(rateLimitPerSecond, availableRequests + refilledRequests);
+    lastRefillNanos = now;
+    if (availableRequests < 1) {
+      return false;
+    }
+    availableRequests--;
+    return true;
+  }
+
+  private void sleep(long latencyMs) throws UnshippedOrderException {
+    try {
+      TimeUnit.MILLISECONDS.sleep(latencyMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UnshippedOrderException("Carrier call was interrupted");
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package shipmentservice.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+import shipmentservice.carrier.Carrier;
+import shipmentservice.carrier.LatencyDistribution;
+import shipmentservice.carrier.RandomCarrier;
+import shipmentservice.carrier.SimulatedCarrier;
+import shipmentservice.connector.ShipmentAPIConnector;
+import shipmentservice.resilience.LatencyTracker;
+
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+public class CarrierConfiguration {
+
+  private static final int LATENCY_WINDOW_SIZE = 1_000;
+  private static final int LATENCY_REFRESH_INTERVAL = 50;
+
+  private final ResilienceConfiguration resilienceConfiguration;
+  private final MeterRegistry meterRegistry;
+
+  @Value("${config.shipment.carriers}")
+  private List<String> carrierNames;
+
+  @Value("${config.shipment.carrier.seed}")
+  private String seed;
+
+  @Value("${config.shipment.carrier.type}")
+  private String carrierType;
+
+  @Value("${config.shipment.carrier.failure-rate}")
+  private double failureRate;
+
+  @Value("${config.shipment.carrier.timeout-ms}")
+  private long timeoutMs;
+
+  @Value("${config.shipment.carrier.rate-limit-per-second}")
+  private double rateLimitPerSecond;
+
+  @Value("${config.shipment.carrier.per-order-latency-ms}")
+  private long perOrderLatencyMs;
+
+  @Value("${config.shipment.carrier.latency.distribution}")
+  private String latencyDistribution;
+
+  @Value("${config.shipment.carrier.latency.fixed-ms}")
+  private long fixedLatencyMs;
+
+  @Value("${config.shipment.carrier.latency.median-ms}")
+  private double medianLatencyMs;
+
+  @Value("${config.shipment.carrier.latency.sigma}")
+  private double sigma;
+
+  @Value("${config.shipment.carrier.latency.slow-probability}")
+  private double slowProbability;
+
+  @Value("${config.shipment.carrier.latency.slow-median-ms}")
+  private double slowMedianLatencyMs;
+
+  /** Connectors of all the configured carriers; the first one is the primary carrier. */
+  @Bean
+  List<ShipmentAPIConnector> shipmentAPIConnectors() {
+    List<ShipmentAPIConnector> shipmentAPIConnectors = new ArrayList<>(carrierNames.size());
+    for (int i = 0; i < carrierNames.size(); i++) {
+      String carrierName = carrierNames.get(i).trim();
+      log.info("Using '{}' carrier as {}", carrierType, carrierName);
+      shipmentAPIConnectors.add(
+          new ShipmentAPIConnector(
+              carrierName,
+              carrier(random(i)),
+              resilienceConfiguration.circuitBreaker(carrierName),
+              resilienceConfiguration.concurrencyLimiter(carrierName),
+              new LatencyTracker(LATENCY_WINDOW_SIZE, LATENCY_REFRESH_INTERVAL),
+              meterRegistry));
+    }
+    return shipmentAPIConnectors;
+  }
+
+  private Random random(int carrierIndex) {
+    return StringUtils.hasText(seed)
+        ? new Random(Long.parseLong(seed) + carrierIndex)
+        : new Random();
+  }
+
+  private Carrier carrier(Random random) {
+    switch (carrierType) {
+      case "random":
+        return new RandomCarrier(random);
+      case "simulated":
+        return SimulatedCarrier.builder()
+            .random(random)
+            .latencyDistribution(latencyDistribution())
+            .perOrderLatencyMs(perOrderLatencyMs)
+            .failureRate(failureRate)
+            .timeoutMs(timeoutMs)
+            .rateLimitPerSecond(rateLimitPerSecond)
+            .build();
+      default:
+        throw new IllegalArgumentException("Unknown carrier type: " + carrierType);
+    }
+  }
+
+  private LatencyDistribution latencyDistribution() {
+    switch (latencyDistribution) {
+      case "fixed":
+        return LatencyDistribution.fixed(fixedLatencyMs);
+      case "log-normal":
+        return LatencyDistribution.logNormal(medianLatencyMs, sigma);
+      case "bimodal":
+        return LatencyDistribution.bimodal(
+            LatencyDistribution.logNormal(medianLatencyMs, sigma),
+            LatencyDistribution.logNormal(slowMedianLatencyMs, sigma),
+            slowProbability);
+      default:
+        throw new IllegalArgumentException(
+            "Unknown latency distribution: " + latencyDistribution);
+    }
+  }
+}
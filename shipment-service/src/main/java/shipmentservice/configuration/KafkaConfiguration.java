@@ -1,8 +1,14 @@
 package shipmentservice.configuration;
 
 import common.event.OrderProcessingEvent;
+import common.event.SagaCommand;
+import common.partitioning.UserAffinityPartitioner;
+import common.tracing.Tracer;
+import common.tracing.TracingProducerInterceptor;
+import common.tracing.TracingRecordInterceptor;
 import java.util.HashMap;
 import java.util.Map;
+import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -22,8 +28,11 @@ import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
 @Configuration
+@RequiredArgsConstructor
 public class KafkaConfiguration {
 
+  private final Tracer tracer;
+
   @Value("${config.kafka.url}")
   private String bootstrapServerURL;
 
@@ -33,6 +42,10 @@ public class KafkaConfiguration {
     configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServerURL);
     configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
     configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+    configProps.put(
+        ProducerConfig.INTERCEPTOR_CLASSES_CONFIG, TracingProducerInterceptor.class.getName());
+    configProps.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, UserAffinityPartitioner.class);
+    configProps.put(TracingProducerInterceptor.TRACER_CONFIG, tracer);
     return new DefaultKafkaProducerFactory<>(configProps);
   }
 
@@ -69,6 +82,27 @@ public class KafkaConfiguration {
     ConcurrentKafkaListenerContainerFactory<String, OrderProcessingEvent> factory =
         new ConcurrentKafkaListenerContainerFactory<>();
     factory.setConsumerFactory(consumerFactory());
+    factory.setRecordInterceptor(new TracingRecordInterceptor<>(tracer));
+
+    return factory;
+  }
+
+  @Bean
+  ConsumerFactory<String, SagaCommand> commandConsumerFactory() {
+    return new DefaultKafkaConsumerFactory<>(
+        consumerFactoryProperties(),
+        new JsonDeserializer<>(String.class).forKeys().ignoreTypeHeaders(),
+        new JsonDeserializer<>(SagaCommand.class).ignoreTypeHeaders());
+  }
+
+  @Bean
+  public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, SagaCommand>>
+      commandListenerContainerFactory() {
+
+    ConcurrentKafkaListenerContainerFactory<String, SagaCommand> factory =
+        new ConcurrentKafkaListenerContainerFactory<>();
+    factory.setConsumerFactory(commandConsumerFactory());
+    factory.setRecordInterceptor(new TracingRecordInterceptor<>(tracer));
 
     return factory;
   }
@@ -0,0 +1,19 @@
+package shipmentservice.configuration;
+
+import common.metrics.SagaMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfiguration {
+
+  @Value("${spring.application.name}")
+  private String serviceName;
+
+  @Bean
+  SagaMetrics sagaMetrics(MeterRegistry meterRegistry) {
+    return new SagaMetrics(meterRegistry, serviceName);
+  }
+}
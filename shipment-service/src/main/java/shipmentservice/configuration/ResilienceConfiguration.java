@@ -0,0 +1,85 @@
+package shipmentservice.configuration;
+
+import common.resilience.AimdConcurrencyLimiter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import shipmentservice.resilience.CircuitBreaker;
+
+/** Builds the circuit breaker and the concurrency limit of every carrier connector. */
+@Configuration
+@RequiredArgsConstructor
+public class ResilienceConfiguration {
+
+  private final MeterRegistry meterRegistry;
+
+  @Value("${config.shipment.circuit-breaker.window-size}")
+  private int windowSize;
+
+  @Value("${config.shipment.circuit-breaker.failure-rate-threshold}")
+  private double failureRateThreshold;
+
+  @Value("${config.shipment.circuit-breaker.slow-call-threshold-ms}")
+  private long slowCallThresholdMs;
+
+  @Value("${config.shipment.circuit-breaker.open-state-duration-ms}")
+  private long openStateDurationMs;
+
+  @Value("${config.shipment.circuit-breaker.half-open-permitted-calls}")
+  private int halfOpenPermittedCalls;
+
+  @Value("${config.shipment.concurrency-limit.initial-limit}")
+  private int initialLimit;
+
+  @Value("${config.shipment.concurrency-limit.min-limit}")
+  private int minLimit;
+
+  @Value("${config.shipment.concurrency-limit.max-limit}")
+  private int maxLimit;
+
+  @Value("${config.shipment.concurrency-limit.latency-threshold-ms}")
+  private long latencyThresholdMs;
+
+  @Value("${config.shipment.concurrency-limit.backoff-ratio}")
+  private double backoffRatio;
+
+  CircuitBreaker circuitBreaker(String carrierName) {
+    CircuitBreaker circuitBreaker =
+        new CircuitBreaker(
+            windowSize,
+            failureRateThreshold,
+            slowCallThresholdMs,
+            openStateDurationMs,
+            halfOpenPermittedCalls);
+    Gauge.builder("shipment.carrier.circuit.state", circuitBreaker, cb -> cb.getState().ordinal())
+        .description("0 - closed, 1 - open, 2 - half-open")
+        .tag("carrier", carrierName)
+        .register(meterRegistry);
+    Gauge.builder(
+            "shipment.carrier.circuit.failure.rate", circuitBreaker, CircuitBreaker::getFailureRate)
+        .tag("carrier", carrierName)
+        .register(meterRegistry);
+    return circuitBreaker;
+  }
+
+  AimdConcurrencyLimiter concurrencyLimiter(String carrierName) {
+    AimdConcurrencyLimiter concurrencyLimiter =
+        new AimdConcurrencyLimiter(
+            initialLimit, minLimit, maxLimit, latencyThresholdMs, backoffRatio);
+    Gauge.builder(
+            "shipment.carrier.concurrency.limit",
+            concurrencyLimiter,
+            AimdConcurrencyLimiter::getLimit)
+        .tag("carrier", carrierName)
+        .register(meterRegistry);
+    Gauge.builder(
+            "shipment.carrier.concurrency.inflight",
+            concurrencyLimiter,
+            AimdConcurrencyLimiter::getInFlight)
+        .tag("carrier", carrierName)
+        .register(meterRegistry);
+    return concurrencyLimiter;
+  }
+}
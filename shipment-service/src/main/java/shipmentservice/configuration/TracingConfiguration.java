@@ -0,0 +1,34 @@
+package shipmentservice.configuration;
+
+import common.tracing.Tracer;
+import common.tracing.TracerFactory;
+import common.tracing.TracingFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class TracingConfiguration {
+
+  @Value("${spring.application.name}")
+  private String serviceName;
+
+  @Value("${config.tracing.sample-ratio}")
+  private double sampleRatio;
+
+  @Value("${config.tracing.exporter}")
+  private String exporter;
+
+  @Value("${config.tracing.file}")
+  private String file;
+
+  @Bean
+  Tracer tracer() {
+    return TracerFactory.create(serviceName, sampleRatio, exporter, file);
+  }
+
+  @Bean
+  TracingFilter tracingFilter(Tracer tracer) {
+    return new TracingFilter(tracer);
+  }
+}
@@ -0,0 +1,133 @@
+package shipmentservice.connector;
+
+import common.dto.OrderDTO;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import shipmentservice.exception.UnshippedOrderException;
+
+/**
+ * Groups single shipment requests into carrier manifests. A manifest is submitted as soon as it
+ * reaches {@code config.shipment.batching.max-size} orders or when the
+ * {@code config.shipment.batching.window-ms} window elapses, whichever comes first. The outcome of
+ * every order is handed back through the future returned by {@link #submit(OrderDTO)}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BatchingShipmentAPIConnector {
+
+  private final HedgingShipmentAPIConnector shipmentAPIConnector;
+
+  @Value("${config.shipment.batching.max-size}")
+  private int maxManifestSize;
+
+  @Value("${config.shipment.batching.window-ms}")
+  private long windowMs;
+
+  private final List<PendingShipment> pendingShipments = new ArrayList<>();
+  private final AtomicLong submittedManifests = new AtomicLong();
+  private final AtomicLong submittedOrders = new AtomicLong();
+
+  private ScheduledExecutorService manifestExecutor;
+
+  @PostConstruct
+  void start() {
+    manifestExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "shipment-manifest");
+              thread.setDaemon(true);
+              return thread;
+            });
+    manifestExecutor.scheduleAtFixedRate(
+        this::submitPendingManifests, windowMs, windowMs, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  void stop() {
+    manifestExecutor.shutdown();
+    submitPendingManifests();
+  }
+
+  public CompletableFuture<Boolean> submit(OrderDTO orderDTO) {
+    PendingShipment pendingShipment = new PendingShipment(orderDTO);
+    boolean manifestIsFull;
+    synchronized (pendingShipments) {
+      pendingShipments.add(pendingShipment);
+      manifestIsFull = pendingShipments.size() >= maxManifestSize;
+    }
+    if (manifestIsFull) {
+      manifestExecutor.execute(this::submitPendingManifests);
+    }
+    return pendingShipment.result;
+  }
+
+  public long getSubmittedManifests() {
+    return submittedManifests.get();
+  }
+
+  public long getSubmittedOrders() {
+    return submittedOrders.get();
+  }
+
+  private void submitPendingManifests() {
+    List<PendingShipment> manifest = nextManifest();
+    while (!manifest.isEmpty()) {
+      submitManifest(manifest);
+      manifest = nextManifest();
+    }
+  }
+
+  private List<PendingShipment> nextManifest() {
+    synchronized (pendingShipments) {
+      List<PendingShipment> manifestView =
+          pendingShipments.subList(0, Math.min(maxManifestSize, pendingShipments.size()));
+      List<PendingShipment> manifest = new ArrayList<>(manifestView);
+      manifestView.clear();
+      return manifest;
+    }
+  }
+
+  private void submitManifest(List<PendingShipment> manifest) {
+    List<OrderDTO> orders = new ArrayList<>(manifest.size());
+    for (PendingShipment pendingShipment : manifest) {
+      orders.add(pendingShipment.orderDTO);
+    }
+    try {
+      List<Boolean> acceptedOrders = shipmentAPIConnector.shipManifest(orders);
+      submittedManifests.incrementAndGet();
+      submittedOrders.addAndGet(orders.size());
+      log.info("Manifest with {} orders was submitted to the carrier", orders.size());
+      for (int i = 0; i < manifest.size(); i++) {
+        if (i < acceptedOrders.size() && Boolean.TRUE.equals(acceptedOrders.get(i))) {
+          manifest.get(i).result.complete(true);
+        } else {
+          manifest.get(i).result.completeExceptionally(new UnshippedOrderException());
+        }
+      }
+    } catch (Exception e) {
+      log.error("Exception occurred during manifest submission. Exception: ", e);
+      for (PendingShipment pendingShipment : manifest) {
+        pendingShipment.result.completeExceptionally(e);
+      }
+    }
+  }
+
+  @RequiredArgsConstructor
+  private static class PendingShipment {
+
+    private final OrderDTO orderDTO;
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+  }
+}
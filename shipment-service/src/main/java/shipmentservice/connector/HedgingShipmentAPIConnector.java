@@ -0,0 +1,215 @@
+package shipmentservice.connector;
+
+import common.dto.OrderDTO;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import shipmentservice.exception.UnshippedOrderException;
+
+/**
+ * Sends shipments to the primary carrier and, if it has not answered within its own latency
+ * percentile ({@code config.shipment.hedging.percentile}), sends the same request to an alternate
+ * carrier. The first successful answer wins; the other call is cancelled, or voided if the carrier
+ * already accepted it. Calls run on at most {@code config.shipment.hedging.max-threads} threads;
+ * once all are busy, the calling thread makes the call itself and so waits for it unhedged.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HedgingShipmentAPIConnector {
+
+  private final List<ShipmentAPIConnector> shipmentAPIConnectors;
+  private final MeterRegistry meterRegistry;
+
+  @Value("${config.shipment.hedging.enabled}")
+  private boolean hedgingEnabled;
+
+  @Value("${config.shipment.hedging.percentile}")
+  private double hedgingPercentile;
+
+  @Value("${config.shipment.hedging.min-delay-ms}")
+  private long minHedgeDelayMs;
+
+  @Value("${config.shipment.hedging.max-delay-ms}")
+  private long maxHedgeDelayMs;
+
+  @Value("${config.shipment.hedging.max-threads}")
+  private int maxThreads;
+
+  private final AtomicInteger nextAlternateIndex = new AtomicInteger();
+
+  private ExecutorService carrierCallExecutor;
+
+  @PostConstruct
+  void start() {
+    carrierCallExecutor =
+        new ThreadPoolExecutor(
+            0,
+            maxThreads,
+            60,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            runnable -> {
+              Thread thread = new Thread(runnable, "carrier-call");
+              thread.setDaemon(true);
+              return thread;
+            },
+            (runnable, executor) -> {
+              if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Carrier call executor is shut down");
+              }
+              // every carrier-call thread is busy, so the caller makes the call itself
+              runnable.run();
+            });
+    for (ShipmentAPIConnector shipmentAPIConnector : shipmentAPIConnectors) {
+      Gauge.builder("shipment.carrier.hedge.delay", shipmentAPIConnector, this::hedgeDelayMs)
+          .tag("carrier", shipmentAPIConnector.getCarrierName())
+          .baseUnit("milliseconds")
+          .register(meterRegistry);
+    }
+  }
+
+  @PreDestroy
+  void stop() {
+    carrierCallExecutor.shutdownNow();
+  }
+
+  public boolean shipOrder(OrderDTO orderDTO) throws UnshippedOrderException {
+    return hedge(
+        connector -> connector.shipOrder(orderDTO),
+        (connector, shipped) -> connector.voidShipment(orderDTO));
+  }
+
+  public List<Boolean> shipManifest(List<OrderDTO> manifest) throws UnshippedOrderException {
+    return hedge(
+        connector -> connector.shipManifest(manifest),
+        (connector, acceptedOrders) -> {
+          for (int i = 0; i < acceptedOrders.size(); i++) {
+            if (Boolean.TRUE.equals(acceptedOrders.get(i))) {
+              connector.voidShipment(manifest.get(i));
+            }
+          }
+        });
+  }
+
+  private <T> T hedge(CarrierCall<T> carrierCall, VoidCall<T> voidCall)
+      throws UnshippedOrderException {
+    ShipmentAPIConnector primary = shipmentAPIConnectors.get(0);
+    if (!hedgingEnabled || shipmentAPIConnectors.size() < 2) {
+      return carrierCall.call(primary);
+    }
+
+    CompletionService<T> completionService = new ExecutorCompletionService<>(carrierCallExecutor);
+    Map<Future<T>, ShipmentAPIConnector> pendingCalls = new LinkedHashMap<>();
+    pendingCalls.put(completionService.submit(() -> carrierCall.call(primary)), primary);
+    try {
+      Future<T> completedCall =
+          completionService.poll(hedgeDelayMs(primary), TimeUnit.MILLISECONDS);
+      if (Objects.isNull(completedCall)) {
+        ShipmentAPIConnector alternate = nextAlternate();
+        meterRegistry
+            .counter("shipment.carrier.hedged", "carrier", alternate.getCarrierName())
+            .increment();
+        pendingCalls.put(completionService.submit(() -> carrierCall.call(alternate)), alternate);
+      }
+
+      UnshippedOrderException failure = new UnshippedOrderException();
+      while (!pendingCalls.isEmpty()) {
+        Future<T> call = Objects.nonNull(completedCall) ? completedCall : completionService.take();
+        completedCall = null;
+        ShipmentAPIConnector connector = pendingCalls.remove(call);
+        try {
+          T result = call.get();
+          meterRegistry
+              .counter("shipment.carrier.hedge.won", "carrier", connector.getCarrierName())
+              .increment();
+          cancelLosers(pendingCalls, voidCall);
+          return result;
+        } catch (ExecutionException e) {
+          failure = toUnshippedOrderException(e.getCause());
+        }
+      }
+      throw failure;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      cancelLosers(pendingCalls, voidCall);
+      throw new UnshippedOrderException("Waiting for the carrier was interrupted");
+    }
+  }
+
+  private <T> void cancelLosers(
+      Map<Future<T>, ShipmentAPIConnector> pendingCalls, VoidCall<T> voidCall) {
+    for (Map.Entry<Future<T>, ShipmentAPIConnector> pendingCall : pendingCalls.entrySet()) {
+      Future<T> call = pendingCall.getKey();
+      if (!call.cancel(true)) {
+        carrierCallExecutor.execute(() -> voidIfAccepted(call, pendingCall.getValue(), voidCall));
+      }
+    }
+  }
+
+  private <T> void voidIfAccepted(
+      Future<T> call, ShipmentAPIConnector connector, VoidCall<T> voidCall) {
+    try {
+      voidCall.voidResult(connector, call.get());
+      log.info("Duplicated shipment at {} was voided", connector.getCarrierName());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // the losing call failed on its own, so there is nothing to void
+    }
+  }
+
+  private ShipmentAPIConnector nextAlternate() {
+    int alternates = shipmentAPIConnectors.size() - 1;
+    return shipmentAPIConnectors.get(
+        1 + Math.floorMod(nextAlternateIndex.getAndIncrement(), alternates));
+  }
+
+  private long hedgeDelayMs(ShipmentAPIConnector shipmentAPIConnector) {
+    long percentileLatencyMs =
+        shipmentAPIConnector.getLatencyTracker().getPercentile(hedgingPercentile);
+    if (percentileLatencyMs < 0) {
+      return maxHedgeDelayMs;
+    }
+    return Math.max(minHedgeDelayMs, Math.min(maxHedgeDelayMs, percentileLatencyMs));
+  }
+
+  private UnshippedOrderException toUnshippedOrderException(Throwable cause) {
+    if (cause instanceof UnshippedOrderException) {
+      return (UnshippedOrderException) cause;
+    }
+    UnshippedOrderException unshippedOrderException =
+        new UnshippedOrderException("Carrier call failed: " + cause.getMessage());
+    unshippedOrderException.initCause(cause);
+    return unshippedOrderException;
+  }
+
+  private interface CarrierCall<T> {
+
+    T call(ShipmentAPIConnector shipmentAPIConnector) throws UnshippedOrderException;
+  }
+
+  private interface VoidCall<T> {
+
+    void voidResult(ShipmentAPIConnector shipmentAPIConnector, T result);
+  }
+}
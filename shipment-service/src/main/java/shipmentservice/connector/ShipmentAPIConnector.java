@@ -1,21 +1,106 @@
 package shipmentservice.connector;
 
 import common.dto.OrderDTO;
-import java.util.Random;
+import common.resilience.AimdConcurrencyLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import org.springframework.stereotype.Service;
+import lombok.extern.slf4j.Slf4j;
+import shipmentservice.carrier.Carrier;
+import shipmentservice.exception.RejectedShipmentException;
 import shipmentservice.exception.UnshippedOrderException;
+import shipmentservice.resilience.CircuitBreaker;
+import shipmentservice.resilience.LatencyTracker;
 
-@Service
+/** Connection to a single carrier, one instance per entry of {@code config.shipment.carriers}. */
 @RequiredArgsConstructor
+@Slf4j
 public class ShipmentAPIConnector {
 
-  private final Random random;
+  @Getter private final String carrierName;
+  private final Carrier carrier;
+  private final CircuitBreaker circuitBreaker;
+  private final AimdConcurrencyLimiter concurrencyLimiter;
+  @Getter private final LatencyTracker latencyTracker;
+  private final MeterRegistry meterRegistry;
 
   public boolean shipOrder(OrderDTO orderDTO) throws UnshippedOrderException {
-    if (random.nextBoolean()) {
-      throw new UnshippedOrderException();
+    return callCarrier(() -> carrier.ship(orderDTO));
+  }
+
+  /**
+   * Submits all the orders to the carrier as a single manifest (one round trip).
+   *
+   * @return per-order acceptance, in the order of the given manifest
+   */
+  public List<Boolean> shipManifest(List<OrderDTO> manifest) throws UnshippedOrderException {
+    return callCarrier(() -> carrier.shipManifest(manifest));
+  }
+
+  public void voidShipment(OrderDTO orderDTO) {
+    try {
+      carrier.voidShipment(orderDTO);
+    } catch (Exception e) {
+      log.error("Exception occurred during voiding shipment at {}. Exception: ", carrierName, e);
+    }
+  }
+
+  /**
+   * Runs the carrier call behind the concurrency limit and the circuit breaker. Calls that are not
+   * permitted fail immediately, so the order goes straight to the revert path instead of waiting
+   * for a degraded carrier. Only timeouts, transport errors and slow calls count against the
+   * carrier; a shipment it turned down was answered like any other.
+   */
+  private <T> T callCarrier(CarrierCall<T> carrierCall) throws UnshippedOrderException {
+    if (!concurrencyLimiter.tryAcquire()) {
+      rejectCall("concurrency-limit");
+    }
+    if (!circuitBreaker.tryAcquirePermission()) {
+      concurrencyLimiter.onIgnored();
+      rejectCall("circuit-open");
     }
-    return true;
+    long startTime = System.nanoTime();
+    try {
+      T result = carrierCall.call();
+      onAnswered(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+      return result;
+    } catch (RejectedShipmentException e) {
+      onAnswered(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+      throw e;
+    } catch (UnshippedOrderException | RuntimeException e) {
+      if (Thread.currentThread().isInterrupted()) {
+        // the call was cancelled by us (e.g. a lost hedge), so it says nothing about the carrier
+        circuitBreaker.releasePermission();
+        concurrencyLimiter.onIgnored();
+        throw e;
+      }
+      long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+      circuitBreaker.onError(latencyMs);
+      concurrencyLimiter.onDropped();
+      // without the timeouts, the percentile would drop just as the carrier degrades
+      latencyTracker.record(latencyMs);
+      throw e;
+    }
+  }
+
+  private void onAnswered(long latencyMs) {
+    circuitBreaker.onSuccess(latencyMs);
+    concurrencyLimiter.onSuccess(latencyMs);
+    latencyTracker.record(latencyMs);
+  }
+
+  private void rejectCall(String reason) throws UnshippedOrderException {
+    meterRegistry
+        .counter("shipment.carrier.rejected", "carrier", carrierName, "reason", reason)
+        .increment();
+    log.warn("Call to carrier {} was rejected without being sent. Reason: {}", carrierName, reason);
+    throw new UnshippedOrderException("Carrier call was rejected: " + reason);
+  }
+
+  private interface CarrierCall<T> {
+
+    T call() throws UnshippedOrderException;
   }
 }
@@ -0,0 +1,11 @@
+package shipmentservice.exception;
+
+/** The carrier answered and turned the shipment down, as opposed to failing to answer. */
+public class RejectedShipmentException extends UnshippedOrderException {
+
+  public RejectedShipmentException() {}
+
+  public RejectedShipmentException(String message) {
+    super(message);
+  }
+}
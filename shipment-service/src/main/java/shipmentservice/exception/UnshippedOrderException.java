@@ -1,3 +1,10 @@
 package shipmentservice.exception;
 
-public class UnshippedOrderException extends Exception {}
+public class UnshippedOrderException extends Exception {
+
+  public UnshippedOrderException() {}
+
+  public UnshippedOrderException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,128 @@
+package shipmentservice.resilience;
+
+import java.util.Arrays;
+
+/**
+ * Count-based circuit breaker. The outcomes of the last {@code windowSize} calls are kept in a ring
+ * buffer; once the share of failed (or slow) calls reaches the threshold the breaker opens and
+ * rejects every call until {@code openStateDurationMs} passes. Afterwards a limited number of trial
+ * calls decide whether the breaker closes again or goes back to the open state.
+ */
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN;
+  }
+
+  private final double failureRateThreshold;
+  private final long slowCallThresholdMs;
+  private final long openStateDurationMs;
+  private final int halfOpenPermittedCalls;
+
+  private final boolean[] failedOutcomes;
+  private int nextOutcomeIndex;
+  private int recordedCalls;
+  private int failedCalls;
+
+  private State state = State.CLOSED;
+  private long openedAtMs;
+  private int halfOpenStartedCalls;
+  private int halfOpenSucceededCalls;
+
+  public CircuitBreaker(
+      int windowSize,
+      double failureRateThreshold,
+      long slowCallThresholdMs,
+      long openStateDurationMs,
+      int halfOpenPermittedCalls) {
+    this.failedOutcomes = new boolean[windowSize];
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallThresholdMs = slowCallThresholdMs;
+    this.openStateDurationMs = openStateDurationMs;
+    this.halfOpenPermittedCalls = halfOpenPermittedCalls;
+  }
+
+  public synchronized boolean tryAcquirePermission() {
+    if (state == State.OPEN) {
+      if (System.currentTimeMillis() - openedAtMs < openStateDurationMs) {
+        return false;
+      }
+      transitionTo(State.HALF_OPEN);
+    }
+    if (state == State.HALF_OPEN) {
+      if (halfOpenStartedCalls >= halfOpenPermittedCalls) {
+        return false;
+      }
+      halfOpenStartedCalls++;
+    }
+    return true;
+  }
+
+  public synchronized void onSuccess(long latencyMs) {
+    recordOutcome(latencyMs >= slowCallThresholdMs);
+  }
+
+  public synchronized void onError(long latencyMs) {
+    recordOutcome(true);
+  }
+
+  /** Gives back a permission whose call was abandoned before it produced an outcome. */
+  public synchronized void releasePermission() {
+    if (state == State.HALF_OPEN && halfOpenStartedCalls > 0) {
+      halfOpenStartedCalls--;
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  public synchronized double getFailureRate() {
+    return recordedCalls == 0 ? 0 : (double) failedCalls / recordedCalls;
+  }
+
+  private void recordOutcome(boolean failed) {
+    if (state == State.HALF_OPEN) {
+      if (failed) {
+        transitionTo(State.OPEN);
+      } else if (++halfOpenSucceededCalls >= halfOpenPermittedCalls) {
+        transitionTo(State.CLOSED);
+      }
+      return;
+    }
+    if (state == State.OPEN) {
+      return;
+    }
+    if (recordedCalls == failedOutcomes.length) {
+      if (failedOutcomes[nextOutcomeIndex]) {
+        failedCalls--;
+      }
+    } else {
+      recordedCalls++;
+    }
+    failedOutcomes[nextOutcomeIndex] = failed;
+    if (failed) {
+      failedCalls++;
+    }
+    nextOutcomeIndex = (nextOutcomeIndex + 1) % failedOutcomes.length;
+    if (recordedCalls == failedOutcomes.length && getFailureRate() >= failureRateThreshold) {
+      transitionTo(State.OPEN);
+    }
+  }
+
+  private void transitionTo(State newState) {
+    state = newState;
+    halfOpenStartedCalls = 0;
+    halfOpenSucceededCalls = 0;
+    if (newState == State.OPEN) {
+      openedAtMs = System.currentTimeMillis();
+    } else if (newState == State.CLOSED) {
+      Arrays.fill(failedOutcomes, false);
+      nextOutcomeIndex = 0;
+      recordedCalls = 0;
+      failedCalls = 0;
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package shipmentservice.resilience;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent calls in a ring buffer. Percentiles are served from a
+ * sorted snapshot that is only rebuilt after {@code refreshInterval} new samples, so querying on
+ * every call stays cheap.
+ */
+public class LatencyTracker {
+
+  private final long[] samples;
+  private final int refreshInterval;
+
+  private int nextSampleIndex;
+  private int recordedSamples;
+  private int samplesSinceRefresh;
+  private long[] sortedSnapshot = new long[0];
+
+  public LatencyTracker(int windowSize, int refreshInterval) {
+    this.samples = new long[windowSize];
+    this.refreshInterval = refreshInterval;
+  }
+
+  public synchronized void record(long latencyMs) {
+    samples[nextSampleIndex] = latencyMs;
+    nextSampleIndex = (nextSampleIndex + 1) % samples.length;
+    recordedSamples = Math.min(recordedSamples + 1, samples.length);
+    samplesSinceRefresh++;
+  }
+
+  /** @return the latency at the given percentile (0..1), or -1 when nothing was recorded yet */
+  public synchronized long getPercentile(double percentile) {
+    if (recordedSamples == 0) {
+      return -1;
+    }
+    if (sortedSnapshot.length == 0 || samplesSinceRefresh >= refreshInterval) {
+      sortedSnapshot = Arrays.copyOf(samples, recordedSamples);
+      Arrays.sort(sortedSnapshot);
+      samplesSinceRefresh = 0;
+    }
+    int index = (int) Math.ceil(percentile * sortedSnapshot.length) - 1;
+    return sortedSnapshot[Math.max(0, Math.min(index, sortedSnapshot.length - 1))];
+  }
+}
@@ -1,15 +1,24 @@
 package shipmentservice.service;
 
+import common.dedup.ProcessedEventIndex;
 import common.enums.OrderStatus;
 import common.enums.ProcessingStatus;
+import common.enums.SagaCommandType;
 import common.event.OrderProcessingEvent;
+import common.event.SagaCommand;
+import common.metrics.SagaMetrics;
+import common.tracing.Span;
+import common.tracing.TraceContext;
+import common.tracing.Tracer;
+import java.util.Objects;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
-import shipmentservice.connector.ShipmentAPIConnector;
+import shipmentservice.connector.BatchingShipmentAPIConnector;
+import shipmentservice.connector.HedgingShipmentAPIConnector;
 import shipmentservice.exception.UnshippedOrderException;
 
 @Service
@@ -20,35 +29,155 @@ public class DefaultShipmentService implements ShipmentService {
   @Value("${config.kafka.order-processing-topic}")
   private String orderProcessingTopicName;
 
-  private final ShipmentAPIConnector shipmentAPIConnector;
+  @Value("${config.kafka.compensation-topic}")
+  private String compensationTopicName;
+
+  @Value("${config.kafka.reply-topic}")
+  private String replyTopicName;
+
+  @Value("#{'${config.saga-mode}' == 'orchestration'}")
+  private boolean orchestrated;
+
+  @Value("${config.shipment.batching.enabled}")
+  private boolean batchingEnabled;
+
+  private final HedgingShipmentAPIConnector shipmentAPIConnector;
+  private final BatchingShipmentAPIConnector batchingShipmentAPIConnector;
   private final KafkaTemplate<String, OrderProcessingEvent> kafkaTemplate;
+  private final SagaMetrics sagaMetrics;
+  private final Tracer tracer;
+  private final ProcessedEventIndex processedEventIndex;
 
   @KafkaListener(
-      topics = {"order-processing"},
-      groupId = "4")
+      topics = {"order-processing", "${config.kafka.compensation-topic}"},
+      groupId = "4",
+      autoStartup = "#{'${config.saga-mode}' == 'choreography'}")
   public void listenToOrderProcessingEvent(OrderProcessingEvent orderProcessingEvent) {
+    orderProcessingEvent.markDequeued();
     if (!orderProcessingEvent.processed() && orderProcessingEvent.toProcessForShipment()) {
-      log.info(
-          "Order should be applied for shipment shipped for user with id: {} (event ID: {})",
-          orderProcessingEvent.getOrderDTO().getUserId(),
+      process(orderProcessingEvent);
+    } else if (orderProcessingEvent.compensating()
+        && !orderProcessingEvent.getShipmentProcessingStatus().equals(ProcessingStatus.SUCCESS)) {
+      fence(orderProcessingEvent);
+    }
+  }
+
+  @KafkaListener(
+      topics = "${config.kafka.command-topic}",
+      groupId = "4",
+      containerFactory = "commandListenerContainerFactory",
+      autoStartup = "#{'${config.saga-mode}' == 'orchestration'}")
+  public void listenToSagaCommand(SagaCommand sagaCommand) {
+    OrderProcessingEvent orderProcessingEvent = sagaCommand.getOrderProcessingEvent();
+    orderProcessingEvent.markDequeued();
+    if (sagaCommand.getType().equals(SagaCommandType.PROCESS)) {
+      process(orderProcessingEvent);
+    } else if (sagaCommand.getType().equals(SagaCommandType.COMPENSATE)) {
+      fence(orderProcessingEvent);
+    }
+  }
+
+  private void process(OrderProcessingEvent orderProcessingEvent) {
+    log.info(
+        "Order should be applied for shipment shipped for user with id: {} (event ID: {})",
+        orderProcessingEvent.getOrderDTO().getUserId(),
+        orderProcessingEvent.getUuid());
+    try (Span span = tracer.startSpan("shipment.process")) {
+      span.setAttribute("order", orderProcessingEvent.getUuid());
+      if (!processedEventIndex.runOnce(
+          orderProcessingEvent.getUuid(),
+          SagaMetrics.PROCESSING_STEP,
+          () -> processOrder(orderProcessingEvent))) {
+        sagaMetrics.recordDuplicate(SagaMetrics.PROCESSING_STEP);
+        log.warn(
+            "Order event ({}) was already handled by the shipment step, duplicate is dropped",
+            orderProcessingEvent.getUuid());
+      }
+    }
+  }
+
+  /**
+   * Drops the shipment step of a saga cancelled before the step ran, e.g. by the reaper of
+   * order-service or by an expired stock reservation, so the event that requested it does not ship
+   * once it arrives late. A shipment already handed to the carrier is not stopped.
+   */
+  private void fence(OrderProcessingEvent orderProcessingEvent) {
+    if (processedEventIndex.fence(orderProcessingEvent.getUuid(), SagaMetrics.PROCESSING_STEP)) {
+      log.warn(
+          "Order event ({}) was cancelled before the shipment step, a late delivery is dropped",
           orderProcessingEvent.getUuid());
-      processOrder(orderProcessingEvent);
     }
   }
 
   private void processOrder(OrderProcessingEvent orderProcessingEvent) {
     log.info("Order processing is in progress");
+    if (batchingEnabled) {
+      TraceContext traceContext = tracer.currentContext();
+      batchingShipmentAPIConnector
+          .submit(orderProcessingEvent.getOrderDTO())
+          .whenComplete(
+              (shipped, e) -> {
+                try (Tracer.Scope scope = tracer.withContext(traceContext)) {
+                  emitManifestOutcome(orderProcessingEvent, e);
+                }
+              });
+      return;
+    }
     try {
       shipmentAPIConnector.shipOrder(orderProcessingEvent.getOrderDTO());
-      orderProcessingEvent.setOrderStatus(OrderStatus.CREATED);
-      orderProcessingEvent.setShipmentProcessingStatus(ProcessingStatus.SUCCESS);
-      kafkaTemplate.send(orderProcessingTopicName, orderProcessingEvent);
-      log.info("Order event ({}) was processed successfully", orderProcessingEvent.getUuid());
+      emitTransactionSuccessEvent(orderProcessingEvent);
     } catch (UnshippedOrderException e) {
       emitTransactionRevertEvent(orderProcessingEvent);
     }
   }
 
+  /**
+   * Runs on the manifest thread once the carrier answered. The listener has returned and its
+   * offset may be committed by then, so the handoff to the manifest is at most once: an outcome
+   * that cannot be emitted here is not redelivered, and the saga is left to the reaper.
+   */
+  private void emitManifestOutcome(OrderProcessingEvent orderProcessingEvent, Throwable e) {
+    try {
+      if (Objects.isNull(e)) {
+        emitTransactionSuccessEvent(orderProcessingEvent);
+      } else {
+        emitTransactionRevertEvent(orderProcessingEvent);
+      }
+    } catch (Exception emitException) {
+      log.error(
+          "Exception occurred during emitting the shipment outcome. Exception: ", emitException);
+      if (Objects.isNull(e)) {
+        try {
+          emitTransactionRevertEvent(orderProcessingEvent);
+        } catch (Exception revertException) {
+          log.error(
+              "Exception occurred during emitting the shipment revert. Exception: ",
+              revertException);
+        }
+      }
+    }
+  }
+
+  /**
+   * Orchestrated sagas get the outcome of the step as a reply, choreographed ones as an event, on
+   * the compensation lane once cancelled.
+   */
+  private String outcomeTopicName(OrderProcessingEvent orderProcessingEvent) {
+    if (orchestrated) {
+      return replyTopicName;
+    }
+    return orderProcessingEvent.compensating() ? compensationTopicName : orderProcessingTopicName;
+  }
+
+  private void emitTransactionSuccessEvent(OrderProcessingEvent orderProcessingEvent) {
+    orderProcessingEvent.setOrderStatus(OrderStatus.CREATED);
+    orderProcessingEvent.setShipmentProcessingStatus(ProcessingStatus.SUCCESS);
+    sagaMetrics.recordStep(
+        orderProcessingEvent, SagaMetrics.PROCESSING_STEP, ProcessingStatus.SUCCESS);
+    kafkaTemplate.send(outcomeTopicName(orderProcessingEvent), orderProcessingEvent);
+    log.info("Order event ({}) was processed successfully", orderProcessingEvent.getUuid());
+  }
+
   private void emitTransactionRevertEvent(OrderProcessingEvent orderProcessingEvent) {
     log.warn("Order processing failed!");
     orderProcessingEvent.setOrderStatus(OrderStatus.CANCELLED);
@@ -56,6 +185,8 @@ public class DefaultShipmentService implements ShipmentService {
     orderProcessingEvent.addMessage(
         "Exception happened during applying order for the shipment. "
             + "Shipment provider caused this issue");
-    kafkaTemplate.send(orderProcessingTopicName, orderProcessingEvent);
+    sagaMetrics.recordStep(
+        orderProcessingEvent, SagaMetrics.PROCESSING_STEP, ProcessingStatus.REVERT);
+    kafkaTemplate.send(outcomeTopicName(orderProcessingEvent), orderProcessingEvent);
   }
 }
@@ -0,0 +1,100 @@
+package shipmentservice.resilience;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+  private static final int WINDOW_SIZE = 4;
+  private static final long SLOW_CALL_THRESHOLD_MS = 100;
+
+  @Test
+  void staysClosedUntilTheWindowIsFull() {
+    CircuitBreaker circuitBreaker = circuitBreaker(60_000);
+
+    for (int i = 0; i < WINDOW_SIZE - 1; i++) {
+      circuitBreaker.onError(0);
+    }
+
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    assertTrue(circuitBreaker.tryAcquirePermission());
+  }
+
+  @Test
+  void opensOnceFailedAndSlowCallsReachTheThreshold() {
+    CircuitBreaker circuitBreaker = circuitBreaker(60_000);
+
+    circuitBreaker.onSuccess(0);
+    circuitBreaker.onSuccess(0);
+    circuitBreaker.onError(0);
+    circuitBreaker.onSuccess(SLOW_CALL_THRESHOLD_MS);
+
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertFalse(circuitBreaker.tryAcquirePermission());
+  }
+
+  @Test
+  void forgetsOutcomesThatLeftTheWindow() {
+    CircuitBreaker circuitBreaker = circuitBreaker(60_000);
+
+    circuitBreaker.onError(0);
+    for (int i = 0; i < WINDOW_SIZE; i++) {
+      circuitBreaker.onSuccess(0);
+    }
+
+    assertEquals(0, circuitBreaker.getFailureRate());
+  }
+
+  @Test
+  void closesAfterThePermittedTrialCallsSucceed() {
+    CircuitBreaker circuitBreaker = openCircuitBreaker();
+
+    assertTrue(circuitBreaker.tryAcquirePermission());
+    assertTrue(circuitBreaker.tryAcquirePermission());
+    assertFalse(circuitBreaker.tryAcquirePermission());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+    circuitBreaker.onSuccess(0);
+    circuitBreaker.onSuccess(0);
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    assertEquals(0, circuitBreaker.getFailureRate());
+  }
+
+  @Test
+  void opensAgainWhenATrialCallFails() {
+    CircuitBreaker circuitBreaker = openCircuitBreaker();
+
+    circuitBreaker.tryAcquirePermission();
+    circuitBreaker.onError(0);
+
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+  }
+
+  @Test
+  void givesReleasedTrialPermissionBack() {
+    CircuitBreaker circuitBreaker = openCircuitBreaker();
+
+    circuitBreaker.tryAcquirePermission();
+    circuitBreaker.tryAcquirePermission();
+    circuitBreaker.releasePermission();
+
+    assertTrue(circuitBreaker.tryAcquirePermission());
+  }
+
+  /** Open with no open-state duration, so the next call starts the half-open state. */
+  private static CircuitBreaker openCircuitBreaker() {
+    CircuitBreaker circuitBreaker = circuitBreaker(0);
+    for (int i = 0; i < WINDOW_SIZE; i++) {
+      circuitBreaker.onError(0);
+    }
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    return circuitBreaker;
+  }
+
+  private static CircuitBreaker circuitBreaker(long openStateDurationMs) {
+    return new CircuitBreaker(WINDOW_SIZE, 0.5, SLOW_CALL_THRESHOLD_MS, openStateDurationMs, 2);
+  }
+}
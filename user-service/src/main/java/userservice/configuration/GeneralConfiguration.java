@@ -1,9 +1,11 @@
 package userservice.configuration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import common.tracing.Tracer;
 import okhttp3.OkHttpClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import userservice.connector.TracingInterceptor;
 
 @Configuration
 public class GeneralConfiguration {
@@ -14,7 +16,7 @@ public class GeneralConfiguration {
   }
 
   @Bean
-  OkHttpClient okHttpClient() {
-    return new OkHttpClient();
+  OkHttpClient okHttpClient(Tracer tracer) {
+    return new OkHttpClient.Builder().addInterceptor(new TracingInterceptor(tracer)).build();
   }
 }
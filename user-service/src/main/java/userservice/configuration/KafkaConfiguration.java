@@ -1,12 +1,21 @@
 package userservice.configuration;
 
 import common.event.OrderProcessingEvent;
+import common.event.SagaCommand;
+import common.lane.PriorityLane;
+import common.partitioning.UserAffinityPartitioner;
+import common.tracing.Tracer;
+import common.tracing.TracingProducerInterceptor;
+import common.tracing.TracingRecordInterceptor;
 import java.util.HashMap;
 import java.util.Map;
+import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.RangeAssignor;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -20,19 +29,33 @@ import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
+import userservice.sharding.UserShards;
 
 @Configuration
+@RequiredArgsConstructor
 public class KafkaConfiguration {
 
+  private final Tracer tracer;
+
   @Value("${config.kafka.url}")
   private String bootstrapServerURL;
 
+  @Value("${config.compensation-lane.weight}")
+  private int compensationLaneWeight;
+
+  @Value("${config.compensation-lane.max-wait-ms}")
+  private long compensationLaneMaxWaitMs;
+
   @Bean
   public ProducerFactory<String, OrderProcessingEvent> producerFactory() {
     Map<String, Object> configProps = new HashMap<>();
     configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServerURL);
     configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
     configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+    configProps.put(
+        ProducerConfig.INTERCEPTOR_CLASSES_CONFIG, TracingProducerInterceptor.class.getName());
+    configProps.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, UserAffinityPartitioner.class);
+    configProps.put(TracingProducerInterceptor.TRACER_CONFIG, tracer);
     return new DefaultKafkaProducerFactory<>(configProps);
   }
 
@@ -58,17 +81,76 @@ public class KafkaConfiguration {
     configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServerURL);
     configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
     configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
+    // lines the partitions of the listeners up across topics, see UserShards
+    configProps.put(
+        ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, RangeAssignor.class.getName());
     return configProps;
   }
 
   @Bean
   public KafkaListenerContainerFactory<
           ConcurrentMessageListenerContainer<String, OrderProcessingEvent>>
-      kafkaListenerContainerFactory() {
+      kafkaListenerContainerFactory(ObjectProvider<UserShards> userShards) {
+
+    ConcurrentKafkaListenerContainerFactory<String, OrderProcessingEvent> factory =
+        new ConcurrentKafkaListenerContainerFactory<>();
+    factory.setConsumerFactory(consumerFactory());
+    factory.setRecordInterceptor(new TracingRecordInterceptor<>(tracer));
+    // resolved per container, as the user shards depend on the service that holds the listeners
+    factory.setContainerCustomizer(
+        container ->
+            userShards.ifAvailable(
+                shards -> shards.register(container.getContainerProperties(), "events")));
+
+    return factory;
+  }
+
+  /**
+   * Batch listener for the compensation lane, so the {@link PriorityLane} knows how many
+   * compensations are pending. The trace context is restored per record by the listener.
+   */
+  @Bean
+  public KafkaListenerContainerFactory<
+          ConcurrentMessageListenerContainer<String, OrderProcessingEvent>>
+      compensationListenerContainerFactory(ObjectProvider<UserShards> userShards) {
 
     ConcurrentKafkaListenerContainerFactory<String, OrderProcessingEvent> factory =
         new ConcurrentKafkaListenerContainerFactory<>();
     factory.setConsumerFactory(consumerFactory());
+    factory.setBatchListener(true);
+    factory.setContainerCustomizer(
+        container ->
+            userShards.ifAvailable(
+                shards -> shards.register(container.getContainerProperties(), "compensations")));
+
+    return factory;
+  }
+
+  @Bean
+  public PriorityLane compensationLane() {
+    return new PriorityLane(compensationLaneWeight, compensationLaneMaxWaitMs);
+  }
+
+  @Bean
+  ConsumerFactory<String, SagaCommand> commandConsumerFactory() {
+    return new DefaultKafkaConsumerFactory<>(
+        consumerFactoryProperties(),
+        new JsonDeserializer<>(String.class).forKeys().ignoreTypeHeaders(),
+        new JsonDeserializer<>(SagaCommand.class).ignoreTypeHeaders());
+  }
+
+  @Bean
+  public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, SagaCommand>>
+      commandListenerContainerFactory(ObjectProvider<UserShards> userShards) {
+
+    ConcurrentKafkaListenerContainerFactory<String, SagaCommand> factory =
+        new ConcurrentKafkaListenerContainerFactory<>();
+    factory.setConsumerFactory(commandConsumerFactory());
+    factory.setRecordInterceptor(new TracingRecordInterceptor<>(tracer));
+    factory.setContainerCustomizer(
+        container ->
+            userShards.ifAvailable(
+                shards -> shards.register(container.getContainerProperties(), "commands")));
 
     return factory;
   }
@@ -0,0 +1,130 @@
+package userservice.configuration;
+
+import common.dedup.ProcessedEventIndex;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.serialization.IntegerDeserializer;
+import org.apache.kafka.common.serialization.IntegerSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import userservice.dto.UserDTO;
+import userservice.service.UserService;
+import userservice.sharding.AppliedStep;
+import userservice.sharding.BalanceChangelog;
+import userservice.sharding.UserShards;
+
+/**
+ * Shards the balances by user ID across the instances of the service when {@code
+ * config.sharding.enabled} is set. The streams engine shards them already, by the repartition
+ * topic and the changelog of its balance store.
+ */
+@Configuration
+@ConditionalOnExpression("${config.sharding.enabled} and '${config.engine}' == 'listener'")
+public class ShardingConfiguration {
+
+  @Value("${config.kafka.url}")
+  private String bootstrapServerURL;
+
+  @Value("${config.kafka.balance-changelog-topic}")
+  private String balanceChangelogTopicName;
+
+  @Value("${config.kafka.applied-steps-topic}")
+  private String appliedStepsTopicName;
+
+  @Value("${config.sharding.instance-id}")
+  private String instanceId;
+
+  @Value("${config.dedup.window-ms}")
+  private long dedupWindowMs;
+
+  /** Takes the place of the one Spring Boot configures, which ignores {@code config.kafka.url}. */
+  @Bean
+  KafkaAdmin kafkaAdmin() {
+    Map<String, Object> configProps = new HashMap<>();
+    configProps.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServerURL);
+    return new KafkaAdmin(configProps);
+  }
+
+  /** Only the latest balance of a user is restored, so the older ones are compacted away. */
+  @Bean
+  NewTopic balanceChangelogTopic() {
+    return TopicBuilder.name(balanceChangelogTopicName).compact().build();
+  }
+
+  /** A step is only looked up while the dedup window keeps it, so older ones are deleted. */
+  @Bean
+  NewTopic appliedStepsTopic() {
+    return TopicBuilder.name(appliedStepsTopicName)
+        .config(TopicConfig.RETENTION_MS_CONFIG, String.valueOf(dedupWindowMs))
+        .build();
+  }
+
+  /** Transactional, so that a balance and the step that changed it are written together. */
+  @Bean
+  ProducerFactory<Integer, Object> balanceProducerFactory() {
+    Map<String, Object> configProps = new HashMap<>();
+    configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServerURL);
+    configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, IntegerSerializer.class);
+    configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+    DefaultKafkaProducerFactory<Integer, Object> producerFactory =
+        new DefaultKafkaProducerFactory<>(configProps);
+    producerFactory.setTransactionIdPrefix(instanceId + "-balances-");
+    return producerFactory;
+  }
+
+  @Bean
+  ConsumerFactory<Integer, UserDTO> balanceConsumerFactory() {
+    return new DefaultKafkaConsumerFactory<>(
+        restoreConsumerProperties(),
+        new IntegerDeserializer(),
+        new JsonDeserializer<>(UserDTO.class).ignoreTypeHeaders());
+  }
+
+  @Bean
+  ConsumerFactory<Integer, AppliedStep> appliedStepConsumerFactory() {
+    return new DefaultKafkaConsumerFactory<>(
+        restoreConsumerProperties(),
+        new IntegerDeserializer(),
+        new JsonDeserializer<>(AppliedStep.class).ignoreTypeHeaders());
+  }
+
+  /** Skips the changes of transactions that were aborted or are still open. */
+  private Map<String, Object> restoreConsumerProperties() {
+    Map<String, Object> configProps = new HashMap<>();
+    configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServerURL);
+    configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+    configProps.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+    return configProps;
+  }
+
+  @Bean
+  BalanceChangelog balanceChangelog() {
+    return new BalanceChangelog(
+        new KafkaTemplate<>(balanceProducerFactory()),
+        balanceConsumerFactory(),
+        appliedStepConsumerFactory(),
+        balanceChangelogTopicName,
+        appliedStepsTopicName);
+  }
+
+  @Bean
+  UserShards userShards(UserService userService, ProcessedEventIndex processedEventIndex) {
+    return new UserShards(instanceId, userService, balanceChangelog(), processedEventIndex);
+  }
+}
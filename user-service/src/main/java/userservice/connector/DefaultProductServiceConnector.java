@@ -3,7 +3,10 @@ package userservice.connector;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import common.dto.ProductDTO;
 import java.io.IOException;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.OkHttpClient;
@@ -18,30 +21,58 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class DefaultProductServiceConnector implements ProductServiceConnector {
 
+  private static final int NOT_MODIFIED = 304;
+
   private final OkHttpClient okHttpClient;
   private final ObjectMapper objectMapper;
 
   @Value("${config.warehouse.url}")
   private String warehouseURL;
 
+  private final Map<Integer, CachedProduct> productIdPerCachedProduct = new ConcurrentHashMap<>();
+
   @Override
   public ProductDTO getProductById(Integer productId) {
+    CachedProduct cachedProduct = productIdPerCachedProduct.get(productId);
 
-    Request request =
+    Request.Builder requestBuilder =
         new Request.Builder()
             .get()
-            .url("http://" + warehouseURL + "/warehouse/products/" + productId)
-            .build();
+            .url("http://" + warehouseURL + "/warehouse/products/" + productId);
+    if (Objects.nonNull(cachedProduct)) {
+      requestBuilder.header("If-None-Match", cachedProduct.getETag());
+    }
 
-    try (Response response = okHttpClient.newCall(request).execute();
+    try (Response response = okHttpClient.newCall(requestBuilder.build()).execute();
         ResponseBody responseBody = response.body()) {
+      if (response.code() == NOT_MODIFIED && Objects.nonNull(cachedProduct)) {
+        return cachedProduct.getProduct();
+      }
       if (Objects.nonNull(responseBody)) {
         String serializedProduct = responseBody.string();
-        return objectMapper.readValue(serializedProduct, ProductDTO.class);
+        ProductDTO product = objectMapper.readValue(serializedProduct, ProductDTO.class);
+        cacheProduct(productId, response.header("ETag"), product);
+        return product;
       }
     } catch (IOException e) {
       log.error("Exception occurred during getting product from warehouse service. Exception: ", e);
     }
     return null;
   }
+
+  private void cacheProduct(Integer productId, String eTag, ProductDTO product) {
+    if (Objects.nonNull(eTag) && Objects.nonNull(product)) {
+      productIdPerCachedProduct.put(productId, new CachedProduct(eTag, product));
+    } else {
+      productIdPerCachedProduct.remove(productId);
+    }
+  }
+
+  @Getter
+  @RequiredArgsConstructor
+  private static class CachedProduct {
+
+    private final String eTag;
+    private final ProductDTO product;
+  }
 }
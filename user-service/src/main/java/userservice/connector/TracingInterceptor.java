@@ -0,0 +1,32 @@
+package userservice.connector;
+
+import common.tracing.Span;
+import common.tracing.TraceContext;
+import common.tracing.Tracer;
+import java.io.IOException;
+import lombok.RequiredArgsConstructor;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/** Wraps outgoing HTTP calls in a span and passes its context on as a traceparent header. */
+@RequiredArgsConstructor
+public class TracingInterceptor implements Interceptor {
+
+  private final Tracer tracer;
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    try (Span span = tracer.startSpan(request.method() + " " + request.url().encodedPath())) {
+      Response response =
+          chain.proceed(
+              request
+                  .newBuilder()
+                  .header(TraceContext.TRACEPARENT_HEADER, span.getContext().toTraceparent())
+                  .build());
+      span.setAttribute("status", response.code());
+      return response;
+    }
+  }
+}
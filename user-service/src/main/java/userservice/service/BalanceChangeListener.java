@@ -0,0 +1,11 @@
+package userservice.service;
+
+import java.util.UUID;
+import userservice.dto.UserDTO;
+
+/** Gets a copy of every user whose balance was changed, with the saga step that changed it. */
+@FunctionalInterface
+public interface BalanceChangeListener {
+
+  void onBalanceChanged(UserDTO user, UUID uuid, String step);
+}
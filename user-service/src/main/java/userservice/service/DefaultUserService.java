@@ -1,18 +1,33 @@
 package userservice.service;
 
+import common.dedup.ProcessedEventIndex;
 import common.dto.OrderDTO;
 import common.dto.ProductDTO;
 import common.enums.OrderStatus;
 import common.enums.ProcessingStatus;
+import common.enums.SagaCommandType;
 import common.event.OrderProcessingEvent;
+import common.event.SagaCommand;
+import common.lane.PriorityLane;
+import common.metrics.SagaMetrics;
+import common.tracing.Span;
+import common.tracing.TraceContext;
+import common.tracing.Tracer;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -32,50 +47,201 @@ public class DefaultUserService implements UserService {
   @Value("${config.kafka.order-processing-topic}")
   private String orderProcessingTopicName;
 
+  @Value("${config.kafka.compensation-topic}")
+  private String compensationTopicName;
+
+  @Value("${config.kafka.reply-topic}")
+  private String replyTopicName;
+
+  @Value("#{'${config.saga-mode}' == 'orchestration'}")
+  private boolean orchestrated;
+
+  @Value("${config.fault-injection.store-failure-rate}")
+  private double storeFailureRate;
+
   private final ProductServiceConnector productConnector;
 
   private final KafkaTemplate<String, OrderProcessingEvent> kafkaTemplate;
 
-  private static final Map<Integer, UserDTO> ID_PER_USER =
-      new HashMap<Integer, UserDTO>() {
+  private final SagaMetrics sagaMetrics;
+
+  private final Tracer tracer;
+
+  private final PriorityLane compensationLane;
+
+  private final ProcessedEventIndex processedEventIndex;
+
+  /** Owned by the instance, so a throwaway instance (e.g. for the warm-up) has its own balances. */
+  private final Map<Integer, UserDTO> idPerUser =
+      new ConcurrentHashMap<Integer, UserDTO>() {
         {
           put(1, new UserDTO(1, BigDecimal.valueOf(100)));
           put(2, new UserDTO(2, BigDecimal.valueOf(15_000)));
         }
       };
 
+  /**
+   * Read model of the balances: an immutable copy republished after every balance change, so reads
+   * neither wait for nor observe a transaction in progress.
+   */
+  private volatile List<UserDTO> usersSnapshot = copyOfUsers();
+
+  private volatile BalanceChangeListener balanceChangeListener = (user, uuid, step) -> {};
+
   @Override
   public List<UserDTO> getAllUsers() {
-    return new ArrayList<>(ID_PER_USER.values());
+    return usersSnapshot;
+  }
+
+  @Override
+  public void adoptUsers(Collection<UserDTO> users) {
+    for (UserDTO user : users) {
+      idPerUser.put(user.getId(), new UserDTO(user.getId(), user.getBalance()));
+    }
+    publishUsersSnapshot();
+  }
+
+  @Override
+  public void releaseUsers(Predicate<Integer> userIdFilter) {
+    idPerUser.keySet().removeIf(userIdFilter);
+    publishUsersSnapshot();
+  }
+
+  @Override
+  public void setBalanceChangeListener(BalanceChangeListener balanceChangeListener) {
+    this.balanceChangeListener = balanceChangeListener;
   }
 
   @KafkaListener(
       topics = {"order-processing"},
-      groupId = "2")
-  private void listenForOrderProcessingEvent(OrderProcessingEvent orderProcessingEvent) {
+      groupId = "2",
+      autoStartup =
+          "#{'${config.saga-mode}' == 'choreography' && '${config.engine}' == 'listener'}")
+  public void listenForOrderProcessingEvent(OrderProcessingEvent orderProcessingEvent) {
+    compensationLane.awaitTurn();
+    handle(orderProcessingEvent);
+  }
+
+  @KafkaListener(
+      topics = "${config.kafka.compensation-topic}",
+      groupId = "2",
+      containerFactory = "compensationListenerContainerFactory",
+      autoStartup =
+          "#{'${config.saga-mode}' == 'choreography' && '${config.engine}' == 'listener'}")
+  public void listenForCompensationEvents(
+      List<ConsumerRecord<String, OrderProcessingEvent>> records) {
+    compensationLane.drain(
+        records,
+        record -> {
+          try (Tracer.Scope scope =
+              tracer.withContext(TraceContext.fromHeaders(record.headers()))) {
+            handle(record.value());
+          }
+        });
+  }
+
+  private void handle(OrderProcessingEvent orderProcessingEvent) {
+    orderProcessingEvent.markDequeued();
     if (!orderProcessingEvent.processed() && orderProcessingEvent.toProcessForUser()) {
-      log.info(
-          "Order should be processed for user with id: {} (event ID: {})",
-          orderProcessingEvent.getOrderDTO().getUserId(),
+      process(orderProcessingEvent);
+    } else if (orderProcessingEvent.toRevertForUser()) {
+      compensate(orderProcessingEvent);
+    } else if (orderProcessingEvent.compensating()
+        && !orderProcessingEvent.getUserProcessingStatus().equals(ProcessingStatus.SUCCESS)) {
+      fence(orderProcessingEvent);
+    }
+  }
+
+  @KafkaListener(
+      topics = "${config.kafka.command-topic}",
+      groupId = "2",
+      containerFactory = "commandListenerContainerFactory",
+      autoStartup = "#{'${config.saga-mode}' == 'orchestration'}")
+  public void listenForSagaCommand(SagaCommand sagaCommand) {
+    OrderProcessingEvent orderProcessingEvent = sagaCommand.getOrderProcessingEvent();
+    orderProcessingEvent.markDequeued();
+    if (sagaCommand.getType().equals(SagaCommandType.PROCESS)) {
+      process(orderProcessingEvent);
+    } else if (sagaCommand.getType().equals(SagaCommandType.COMPENSATE)) {
+      compensate(orderProcessingEvent);
+    }
+  }
+
+  private void process(OrderProcessingEvent orderProcessingEvent) {
+    log.info(
+        "Order should be processed for user with id: {} (event ID: {})",
+        orderProcessingEvent.getOrderDTO().getUserId(),
+        orderProcessingEvent.getUuid());
+    try (Span span = tracer.startSpan("user.process")) {
+      span.setAttribute("order", orderProcessingEvent.getUuid());
+      runOnce(
+          orderProcessingEvent,
+          SagaMetrics.PROCESSING_STEP,
+          () -> processOrder(orderProcessingEvent));
+    }
+  }
+
+  private void compensate(OrderProcessingEvent orderProcessingEvent) {
+    log.warn("Order event ({}) should be reverted", orderProcessingEvent.getUuid());
+    try (Span span = tracer.startSpan("user.compensate")) {
+      span.setAttribute("order", orderProcessingEvent.getUuid());
+      runOnce(
+          orderProcessingEvent,
+          SagaMetrics.COMPENSATION_STEP,
+          () -> {
+            BigDecimal orderPrice = calculateOrderPrice(orderProcessingEvent);
+            revertOrderProcessingWithRetry(orderProcessingEvent, orderPrice, FIRST_ATTEMPT);
+            emitTransactionRevertEvent(orderProcessingEvent, SagaMetrics.COMPENSATION_STEP);
+          });
+    }
+  }
+
+  /**
+   * Drops the user step of a saga cancelled before the step ran, e.g. by the reaper of
+   * order-service, so the event that requested it does not debit the user once it arrives late.
+   */
+  private void fence(OrderProcessingEvent orderProcessingEvent) {
+    if (processedEventIndex.fence(orderProcessingEvent.getUuid(), SagaMetrics.PROCESSING_STEP)) {
+      log.warn(
+          "Order event ({}) was cancelled before the user step, a late delivery is dropped",
           orderProcessingEvent.getUuid());
-      processOrder(orderProcessingEvent);
-    } else if (mustBeReverted(orderProcessingEvent)) {
-      log.warn("Order event ({}) should be reverted", orderProcessingEvent.getUuid());
-      BigDecimal orderPrice = calculateOrderPrice(orderProcessingEvent);
-      revertOrderProcessingWithRetry(orderProcessingEvent, orderPrice, FIRST_ATTEMPT);
-      emitTransactionRevertEvent(orderProcessingEvent);
     }
   }
 
+  /**
+   * Applies the step once per saga; Kafka delivers it again e.g. after a rebalance or a crash. A
+   * duplicate sends the outcome of the step again if its send failed.
+   */
+  private void runOnce(OrderProcessingEvent orderProcessingEvent, String step, Runnable action) {
+    if (processedEventIndex.runOnce(orderProcessingEvent.getUuid(), step, action)) {
+      return;
+    }
+    sagaMetrics.recordDuplicate(step);
+    OrderProcessingEvent unsentOutcome =
+        processedEventIndex.takeUnsentOutcome(orderProcessingEvent.getUuid(), step);
+    if (Objects.nonNull(unsentOutcome)) {
+      log.warn(
+          "Order event ({}) was already handled by the {} step, its unsent outcome is sent again",
+          orderProcessingEvent.getUuid(),
+          step);
+      sendOutcome(unsentOutcome, step);
+      return;
+    }
+    log.warn(
+        "Order event ({}) was already handled by the {} step, duplicate is dropped",
+        orderProcessingEvent.getUuid(),
+        step);
+  }
+
   private void processOrder(OrderProcessingEvent orderProcessingEvent) {
     try {
       log.info("Order processing is in progress");
       BigDecimal orderPrice = calculateOrderPrice(orderProcessingEvent);
-      if (validateUser(orderProcessingEvent, orderPrice)
-          && startBalanceDecreasingTransaction(orderProcessingEvent.getOrderDTO(), orderPrice)) {
+      if (startBalanceDecreasingTransaction(
+          orderProcessingEvent.getUuid(), orderProcessingEvent.getOrderDTO(), orderPrice)) {
         emitTransactionSuccessEvent(orderProcessingEvent);
       } else {
-        emitTransactionRevertEvent(orderProcessingEvent);
+        emitTransactionRevertEvent(orderProcessingEvent, SagaMetrics.PROCESSING_STEP);
       }
     } catch (Exception e) {
       log.error(
@@ -83,21 +249,44 @@ public class DefaultUserService implements UserService {
           orderProcessingEvent.getOrderDTO().getUserId(),
           e);
       orderProcessingEvent.addMessage("Issue occurred during balance decreasing!");
-      emitTransactionRevertEvent(orderProcessingEvent);
+      emitTransactionRevertEvent(orderProcessingEvent, SagaMetrics.PROCESSING_STEP);
     }
   }
 
   private void emitTransactionSuccessEvent(OrderProcessingEvent orderProcessingEvent) {
     orderProcessingEvent.setUserProcessingStatus(ProcessingStatus.SUCCESS);
     orderProcessingEvent.addMessage("Order was successfully processed for user");
-    kafkaTemplate.send(orderProcessingTopicName, orderProcessingEvent);
+    sagaMetrics.recordStep(
+        orderProcessingEvent, SagaMetrics.PROCESSING_STEP, ProcessingStatus.SUCCESS);
+    sendOutcome(orderProcessingEvent, SagaMetrics.PROCESSING_STEP);
     log.info("Order event ({}) was processed successfully", orderProcessingEvent.getUuid());
   }
 
-  private void emitTransactionRevertEvent(OrderProcessingEvent orderProcessingEvent) {
+  private void emitTransactionRevertEvent(OrderProcessingEvent orderProcessingEvent, String step) {
     orderProcessingEvent.setOrderStatus(OrderStatus.CANCELLED);
     orderProcessingEvent.setUserProcessingStatus(ProcessingStatus.REVERT);
-    kafkaTemplate.send(orderProcessingTopicName, orderProcessingEvent);
+    sagaMetrics.recordStep(orderProcessingEvent, step, ProcessingStatus.REVERT);
+    sendOutcome(orderProcessingEvent, step);
+  }
+
+  private void sendOutcome(OrderProcessingEvent orderProcessingEvent, String step) {
+    processedEventIndex.keepIfUnsent(
+        orderProcessingEvent.getUuid(),
+        step,
+        orderProcessingEvent,
+        kafkaTemplate.send(outcomeTopicName(orderProcessingEvent), orderProcessingEvent)
+            .completable());
+  }
+
+  /**
+   * Orchestrated sagas get the outcome of the step as a reply, choreographed ones as an event, on
+   * the compensation lane once cancelled.
+   */
+  private String outcomeTopicName(OrderProcessingEvent orderProcessingEvent) {
+    if (orchestrated) {
+      return replyTopicName;
+    }
+    return orderProcessingEvent.compensating() ? compensationTopicName : orderProcessingTopicName;
   }
 
   private BigDecimal calculateOrderPrice(OrderProcessingEvent orderProcessingEvent) {
@@ -108,12 +297,6 @@ public class DefaultUserService implements UserService {
         .multiply(BigDecimal.valueOf(orderProcessingEvent.getOrderDTO().getOrderedQty()));
   }
 
-  private boolean validateUser(OrderProcessingEvent orderProcessingEvent, BigDecimal orderPrice) {
-    UserDTO orderUser = getUserFromMap(orderProcessingEvent.getOrderDTO());
-
-    return Objects.nonNull(orderUser) && validateUserBalance(orderPrice, orderUser);
-  }
-
   private boolean validateUserBalance(BigDecimal orderPrice, UserDTO orderUser) {
     boolean userBalanceIsSufficient = orderUser.getBalance().compareTo(orderPrice) >= 0;
     if (!userBalanceIsSufficient) {
@@ -125,17 +308,33 @@ public class DefaultUserService implements UserService {
     return userBalanceIsSufficient;
   }
 
-  private UserDTO getUserFromMap(OrderDTO orderDTO) {
-    Integer orderUserId = orderDTO.getUserId();
-    return ID_PER_USER.get(orderUserId);
-  }
-
+  /**
+   * Validates and debits the balance atomically per user, as the record lane and the compensation
+   * lane change balances at the same time. The change is recorded while the user is still locked,
+   * so the changes of a user are recorded in the order they were applied, and before it is applied,
+   * so a change that could not be recorded is not applied either.
+   *
+   * @return false if the user is not held or the balance is insufficient
+   */
   @Transactional
-  boolean startBalanceDecreasingTransaction(OrderDTO orderDTO, BigDecimal orderPrice) {
+  boolean startBalanceDecreasingTransaction(UUID uuid, OrderDTO orderDTO, BigDecimal orderPrice) {
     try {
-      UserDTO orderUser = getUserFromMap(orderDTO);
-      orderUser.setBalance(orderUser.getBalance().subtract(orderPrice));
-      return true;
+      injectStoreFailure();
+      AtomicBoolean debited = new AtomicBoolean();
+      idPerUser.computeIfPresent(
+          orderDTO.getUserId(),
+          (userId, orderUser) -> {
+            if (validateUserBalance(orderPrice, orderUser)) {
+              changeBalance(
+                  orderUser,
+                  orderUser.getBalance().subtract(orderPrice),
+                  uuid,
+                  SagaMetrics.PROCESSING_STEP);
+              debited.set(true);
+            }
+            return orderUser;
+          });
+      return debited.get();
     } catch (Exception e) {
       log.error(
           "Exception occurred during qty decreasing transaction. "
@@ -146,11 +345,6 @@ public class DefaultUserService implements UserService {
     }
   }
 
-  private boolean mustBeReverted(OrderProcessingEvent orderProcessingEvent) {
-    return orderProcessingEvent.getWarehouseProcessingStatus().equals(ProcessingStatus.REVERT)
-        && !orderProcessingEvent.getUserProcessingStatus().equals(ProcessingStatus.REVERT);
-  }
-
   private void revertOrderProcessingWithRetry(
       OrderProcessingEvent orderProcessingEvent, BigDecimal orderPrice, int attempt) {
     log.info("Revert transaction is in progress. Attempt: {}/{}", attempt, MAX_REVERT_ATTEMPTS);
@@ -160,7 +354,8 @@ public class DefaultUserService implements UserService {
               + orderProcessingEvent.getUuid());
     } else {
       try {
-        startBalanceIncreasingTransaction(orderProcessingEvent.getOrderDTO(), orderPrice);
+        startBalanceIncreasingTransaction(
+            orderProcessingEvent.getUuid(), orderProcessingEvent.getOrderDTO(), orderPrice);
         log.info("Revert transaction finished successfully");
       } catch (Exception e) {
         log.error(
@@ -170,20 +365,53 @@ public class DefaultUserService implements UserService {
             attempt,
             MAX_REVERT_ATTEMPTS,
             e);
-        revertOrderProcessingWithRetry(orderProcessingEvent, orderPrice, attempt);
+        revertOrderProcessingWithRetry(orderProcessingEvent, orderPrice, attempt + 1);
       }
     }
   }
 
   @Transactional
-  void startBalanceIncreasingTransaction(OrderDTO orderDTO, BigDecimal orderPrice) {
-    try {
-      log.info("Balance increasing transaction in progress");
-      UserDTO orderUser = getUserFromMap(orderDTO);
-      orderUser.setBalance(orderUser.getBalance().add(orderPrice));
-      log.info("Balance increasing transaction finished successfully");
-    } catch (Exception e) {
-      log.error("Exception occurred during user's balance increasing transaction. Exception: ", e);
+  void startBalanceIncreasingTransaction(UUID uuid, OrderDTO orderDTO, BigDecimal orderPrice) {
+    // failures are left to revertOrderProcessingWithRetry, a swallowed one would lose the refund
+    log.info("Balance increasing transaction in progress");
+    injectStoreFailure();
+    UserDTO orderUser =
+        idPerUser.computeIfPresent(
+            orderDTO.getUserId(),
+            (userId, user) -> {
+              changeBalance(
+                  user, user.getBalance().add(orderPrice), uuid, SagaMetrics.COMPENSATION_STEP);
+              return user;
+            });
+    if (Objects.isNull(orderUser)) {
+      throw new IllegalStateException("User is not held by this instance: " + orderDTO.getUserId());
+    }
+    log.info("Balance increasing transaction finished successfully");
+  }
+
+  /** Fails a balance transaction before it changes anything, for the fault-injection runs. */
+  private void injectStoreFailure() {
+    if (storeFailureRate > 0 && ThreadLocalRandom.current().nextDouble() < storeFailureRate) {
+      throw new IllegalStateException("Injected store failure");
+    }
+  }
+
+  private void changeBalance(UserDTO user, BigDecimal balance, UUID uuid, String step) {
+    balanceChangeListener.onBalanceChanged(new UserDTO(user.getId(), balance), uuid, step);
+    user.setBalance(balance);
+    publishUsersSnapshot();
+  }
+
+  /** Synchronized so that a snapshot taken earlier never replaces a later one. */
+  private synchronized void publishUsersSnapshot() {
+    usersSnapshot = copyOfUsers();
+  }
+
+  private List<UserDTO> copyOfUsers() {
+    List<UserDTO> users = new ArrayList<>();
+    for (UserDTO user : idPerUser.values()) {
+      users.add(new UserDTO(user.getId(), user.getBalance()));
     }
+    return Collections.unmodifiableList(users);
   }
 }
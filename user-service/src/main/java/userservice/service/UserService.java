@@ -1,9 +1,20 @@
 package userservice.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Predicate;
 import userservice.dto.UserDTO;
 
 public interface UserService {
 
   List<UserDTO> getAllUsers();
+
+  /** Takes over the balances of users that were moved to this instance. */
+  void adoptUsers(Collection<UserDTO> users);
+
+  /** Drops the users whose ID matches, as their balances were moved to another instance. */
+  void releaseUsers(Predicate<Integer> userIdFilter);
+
+  /** Gets a copy of every user whose balance was changed by a transaction. */
+  void setBalanceChangeListener(BalanceChangeListener balanceChangeListener);
 }
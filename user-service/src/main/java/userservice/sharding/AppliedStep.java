@@ -0,0 +1,16 @@
+package userservice.sharding;
+
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** A saga step that changed the balance of a user, handed off with the user. */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AppliedStep {
+
+  private UUID uuid;
+  private String step;
+}
@@ -0,0 +1,110 @@
+package userservice.sharding;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import userservice.dto.UserDTO;
+
+/**
+ * Topic keyed by user ID that gets the balance of a user after every change, so the instance a user
+ * is moved to can restore it. Only the latest record per key is needed, so the topic can be
+ * compacted. The saga step that made the change goes to a sibling topic in the same transaction,
+ * so the new instance also drops the step if Kafka delivers it again, even after a crash; the
+ * steps are only needed as long as the dedup window, which is their retention.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class BalanceChangelog {
+
+  private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+
+  private final KafkaTemplate<Integer, Object> kafkaTemplate;
+  private final ConsumerFactory<Integer, UserDTO> balanceConsumerFactory;
+  private final ConsumerFactory<Integer, AppliedStep> appliedStepConsumerFactory;
+  private final String topicName;
+  private final String appliedStepsTopicName;
+
+  /** Blocks until the balance and the step that changed it have been committed together. */
+  public void record(UserDTO user, UUID uuid, String step) {
+    kafkaTemplate.executeInTransaction(
+        operations -> {
+          operations.send(appliedStepsTopicName, user.getId(), new AppliedStep(uuid, step));
+          return operations.send(topicName, user.getId(), user);
+        });
+  }
+
+  /** Reads the topic up to its current end and returns the latest balance of the matching users. */
+  public Map<Integer, UserDTO> restore(Predicate<Integer> userIdFilter) {
+    Map<Integer, UserDTO> idPerUser = new HashMap<>();
+    readToEnd(
+        balanceConsumerFactory,
+        topicName,
+        (userId, user) -> {
+          if (userIdFilter.test(userId)) {
+            idPerUser.put(userId, user);
+          }
+        });
+    log.info("Balances of {} users were restored from {}", idPerUser.size(), topicName);
+    return idPerUser;
+  }
+
+  /** Reads the sibling topic up to its current end and returns the steps of the matching users. */
+  public List<AppliedStep> restoreAppliedSteps(Predicate<Integer> userIdFilter) {
+    List<AppliedStep> appliedSteps = new ArrayList<>();
+    readToEnd(
+        appliedStepConsumerFactory,
+        appliedStepsTopicName,
+        (userId, appliedStep) -> {
+          if (userIdFilter.test(userId)) {
+            appliedSteps.add(appliedStep);
+          }
+        });
+    log.info("{} applied steps were restored from {}", appliedSteps.size(), appliedStepsTopicName);
+    return appliedSteps;
+  }
+
+  private static <V> void readToEnd(
+      ConsumerFactory<Integer, V> consumerFactory,
+      String topicName,
+      BiConsumer<Integer, V> recordHandler) {
+    try (Consumer<Integer, V> consumer = consumerFactory.createConsumer(null, null, "-restore")) {
+      List<TopicPartition> partitions = new ArrayList<>();
+      for (PartitionInfo partitionInfo : consumer.partitionsFor(topicName)) {
+        partitions.add(new TopicPartition(topicName, partitionInfo.partition()));
+      }
+      if (partitions.isEmpty()) {
+        return;
+      }
+      consumer.assign(partitions);
+      consumer.seekToBeginning(partitions);
+      Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+      while (!reached(consumer, endOffsets)) {
+        for (ConsumerRecord<Integer, V> record : consumer.poll(POLL_TIMEOUT)) {
+          recordHandler.accept(record.key(), record.value());
+        }
+      }
+    }
+  }
+
+  private static boolean reached(Consumer<?, ?> consumer, Map<TopicPartition, Long> endOffsets) {
+    for (Map.Entry<TopicPartition, Long> endOffset : endOffsets.entrySet()) {
+      if (consumer.position(endOffset.getKey()) < endOffset.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
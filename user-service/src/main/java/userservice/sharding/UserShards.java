@@ -0,0 +1,135 @@
+package userservice.sharding;
+
+import common.dedup.ProcessedEventIndex;
+import common.partitioning.UserAffinityPartitioner;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import userservice.dto.UserDTO;
+import userservice.service.UserService;
+
+/**
+ * Keeps only the users of the partitions assigned to this instance. Events and commands are sent to
+ * the partition of their user by {@link UserAffinityPartitioner}, and the range assignor gives the
+ * listeners of an instance the same partition numbers on every topic, so a partition number stands
+ * for a shard of users.
+ *
+ * <p>An instance takes over a shard once the first of its listeners is assigned the partition,
+ * with the balances restored from the {@link BalanceChangelog} or, for users never changed, the
+ * initial ones, and the steps that changed them fenced in its {@link ProcessedEventIndex}. It
+ * hands the shard off once the last of its listeners gives the partition up. Every balance change
+ * is committed to the changelog before the step that made it counts as applied, so the shard can
+ * also be taken over from an instance that crashed or lost its partitions. With the eager rebalance
+ * protocol, every listener of the group gives its partitions up before any is assigned new ones.
+ */
+@Slf4j
+public class UserShards implements ConsumerAwareRebalanceListener {
+
+  private final String instanceId;
+  private final UserService userService;
+  private final BalanceChangelog balanceChangelog;
+  private final ProcessedEventIndex processedEventIndex;
+  private final Map<Integer, UserDTO> initialUsers = new HashMap<>();
+
+  /** Topic partitions assigned to the listeners of this instance, per partition number. */
+  private final Map<Integer, Set<TopicPartition>> assignedPerPartition = new HashMap<>();
+
+  private int partitionCount;
+
+  public UserShards(
+      String instanceId,
+      UserService userService,
+      BalanceChangelog balanceChangelog,
+      ProcessedEventIndex processedEventIndex) {
+    this.instanceId = instanceId;
+    this.userService = userService;
+    this.balanceChangelog = balanceChangelog;
+    this.processedEventIndex = processedEventIndex;
+    for (UserDTO user : userService.getAllUsers()) {
+      initialUsers.put(user.getId(), user);
+    }
+    userService.releaseUsers(userId -> true);
+    userService.setBalanceChangeListener(balanceChangelog::record);
+  }
+
+  /**
+   * Makes a listener container report its partitions. The client ID orders the
+   * listeners of an instance next to each other in every topic the range assignor splits.
+   */
+  public void register(ContainerProperties containerProperties, String listenerName) {
+    containerProperties.setClientId(instanceId + "-" + listenerName);
+    containerProperties.setConsumerRebalanceListener(this);
+  }
+
+  @Override
+  public synchronized void onPartitionsAssigned(
+      Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+    Set<Integer> adoptedPartitions = new HashSet<>();
+    for (TopicPartition partition : partitions) {
+      Set<TopicPartition> assigned =
+          assignedPerPartition.computeIfAbsent(partition.partition(), key -> new HashSet<>());
+      if (assigned.isEmpty()) {
+        adoptedPartitions.add(partition.partition());
+      }
+      assigned.add(partition);
+      partitionCount = consumer.partitionsFor(partition.topic()).size();
+    }
+    if (adoptedPartitions.isEmpty()) {
+      return;
+    }
+    Predicate<Integer> inAdoptedPartitions = inPartitions(adoptedPartitions);
+    Map<Integer, UserDTO> users = balanceChangelog.restore(inAdoptedPartitions);
+    for (UserDTO user : initialUsers.values()) {
+      if (inAdoptedPartitions.test(user.getId())) {
+        users.putIfAbsent(user.getId(), user);
+      }
+    }
+    for (AppliedStep appliedStep : balanceChangelog.restoreAppliedSteps(inAdoptedPartitions)) {
+      processedEventIndex.fence(appliedStep.getUuid(), appliedStep.getStep());
+    }
+    userService.adoptUsers(users.values());
+    log.info("Users {} of partitions {} were taken over", users.keySet(), adoptedPartitions);
+  }
+
+  @Override
+  public void onPartitionsRevokedAfterCommit(
+      Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+    handOff(partitions);
+  }
+
+  @Override
+  public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+    handOff(partitions);
+  }
+
+  private synchronized void handOff(Collection<TopicPartition> partitions) {
+    List<Integer> handedOffPartitions = new ArrayList<>();
+    for (TopicPartition partition : partitions) {
+      Set<TopicPartition> assigned = assignedPerPartition.get(partition.partition());
+      if (Objects.nonNull(assigned) && assigned.remove(partition) && assigned.isEmpty()) {
+        handedOffPartitions.add(partition.partition());
+      }
+    }
+    if (handedOffPartitions.isEmpty()) {
+      return;
+    }
+    userService.releaseUsers(inPartitions(handedOffPartitions));
+    log.info("Users of partitions {} were handed off", handedOffPartitions);
+  }
+
+  private Predicate<Integer> inPartitions(Collection<Integer> partitions) {
+    int count = partitionCount;
+    return userId -> partitions.contains(UserAffinityPartitioner.partitionFor(userId, count));
+  }
+}
@@ -0,0 +1,168 @@
+package userservice.streams;
+
+import common.dto.ProductDTO;
+import common.enums.OrderStatus;
+import common.enums.ProcessingStatus;
+import common.event.OrderProcessingEvent;
+import common.metrics.SagaMetrics;
+import common.tracing.Span;
+import common.tracing.TraceContext;
+import common.tracing.Tracer;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import userservice.connector.ProductServiceConnector;
+
+/**
+ * User step of the saga for the {@code streams} engine. Events arrive keyed by user ID, so every
+ * user is owned by exactly one task and its balance is read and written in the task's {@link
+ * #BALANCE_STORE} without locking. The store is backed by a changelog topic, a task moved by a
+ * rebalance restores the balances from there. Users missing from the store start with their
+ * initial balance. Compensations already applied are remembered by saga UUID and step in {@link
+ * #APPLIED_STEPS_STORE}, so a compensation published again (by the order-service reaper, for
+ * instance) does not refund twice; a wall-clock punctuation forgets them after the dedup window.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class UserStepTransformer
+    implements Transformer<
+        Integer, OrderProcessingEvent, KeyValue<String, OrderProcessingEvent>> {
+
+  public static final String BALANCE_STORE = "user-balances";
+  public static final String APPLIED_STEPS_STORE = "user-applied-steps";
+
+  private final ProductServiceConnector productConnector;
+
+  private final SagaMetrics sagaMetrics;
+
+  private final Tracer tracer;
+
+  private final Map<Integer, BigDecimal> initialBalances;
+
+  private final long appliedStepsRetentionMs;
+
+  private final long appliedStepsScanMs;
+
+  private ProcessorContext context;
+
+  private KeyValueStore<Integer, BigDecimal> balanceStore;
+
+  private KeyValueStore<String, Long> appliedStepsStore;
+
+  @Override
+  public void init(ProcessorContext context) {
+    this.context = context;
+    this.balanceStore = context.getStateStore(BALANCE_STORE);
+    this.appliedStepsStore = context.getStateStore(APPLIED_STEPS_STORE);
+    context.schedule(
+        Duration.ofMillis(appliedStepsScanMs),
+        PunctuationType.WALL_CLOCK_TIME,
+        this::forgetAppliedSteps);
+  }
+
+  @Override
+  public KeyValue<String, OrderProcessingEvent> transform(
+      Integer userId, OrderProcessingEvent orderProcessingEvent) {
+    orderProcessingEvent.markDequeued();
+    TraceContext parentContext = TraceContext.fromHeaders(context.headers());
+    if (!orderProcessingEvent.processed() && orderProcessingEvent.toProcessForUser()) {
+      log.info(
+          "Order should be processed for user with id: {} (event ID: {})",
+          userId,
+          orderProcessingEvent.getUuid());
+      try (Span span = tracer.startSpan("user.process", parentContext)) {
+        span.setAttribute("order", orderProcessingEvent.getUuid());
+        processOrder(userId, orderProcessingEvent);
+      }
+    } else {
+      log.warn("Order event ({}) should be reverted", orderProcessingEvent.getUuid());
+      String appliedStep =
+          orderProcessingEvent.getUuid() + ":" + SagaMetrics.COMPENSATION_STEP;
+      if (Objects.nonNull(appliedStepsStore.get(appliedStep))) {
+        log.warn(
+            "Order event ({}) was already reverted for user", orderProcessingEvent.getUuid());
+        return null;
+      }
+      try (Span span = tracer.startSpan("user.compensate", parentContext)) {
+        span.setAttribute("order", orderProcessingEvent.getUuid());
+        BigDecimal balance = getBalance(userId);
+        balanceStore.put(userId, balance.add(calculateOrderPrice(orderProcessingEvent)));
+        markReverted(orderProcessingEvent, SagaMetrics.COMPENSATION_STEP);
+        appliedStepsStore.put(appliedStep, System.currentTimeMillis());
+      }
+    }
+    return KeyValue.pair(null, orderProcessingEvent);
+  }
+
+  private void processOrder(Integer userId, OrderProcessingEvent orderProcessingEvent) {
+    try {
+      BigDecimal orderPrice = calculateOrderPrice(orderProcessingEvent);
+      BigDecimal balance = getBalance(userId);
+      if (Objects.nonNull(balance) && balance.compareTo(orderPrice) >= 0) {
+        balanceStore.put(userId, balance.subtract(orderPrice));
+        orderProcessingEvent.setUserProcessingStatus(ProcessingStatus.SUCCESS);
+        orderProcessingEvent.addMessage("Order was successfully processed for user");
+        sagaMetrics.recordStep(
+            orderProcessingEvent, SagaMetrics.PROCESSING_STEP, ProcessingStatus.SUCCESS);
+        log.info("Order event ({}) was processed successfully", orderProcessingEvent.getUuid());
+      } else {
+        log.warn(
+            "User has insufficient balance. Order price: {}, user balance: {}",
+            orderPrice,
+            balance);
+        markReverted(orderProcessingEvent, SagaMetrics.PROCESSING_STEP);
+      }
+    } catch (Exception e) {
+      log.error(
+          "Exception occurred during processing order for user: {}. Exception: ", userId, e);
+      orderProcessingEvent.addMessage("Issue occurred during balance decreasing!");
+      markReverted(orderProcessingEvent, SagaMetrics.PROCESSING_STEP);
+    }
+  }
+
+  private void forgetAppliedSteps(long timestamp) {
+    List<String> expired = new ArrayList<>();
+    try (KeyValueIterator<String, Long> iterator = appliedStepsStore.all()) {
+      while (iterator.hasNext()) {
+        KeyValue<String, Long> appliedStep = iterator.next();
+        if (appliedStep.value + appliedStepsRetentionMs <= timestamp) {
+          expired.add(appliedStep.key);
+        }
+      }
+    }
+    expired.forEach(appliedStepsStore::delete);
+  }
+
+  private void markReverted(OrderProcessingEvent orderProcessingEvent, String step) {
+    orderProcessingEvent.setOrderStatus(OrderStatus.CANCELLED);
+    orderProcessingEvent.setUserProcessingStatus(ProcessingStatus.REVERT);
+    sagaMetrics.recordStep(orderProcessingEvent, step, ProcessingStatus.REVERT);
+  }
+
+  private BigDecimal getBalance(Integer userId) {
+    BigDecimal balance = balanceStore.get(userId);
+    return Objects.nonNull(balance) ? balance : initialBalances.get(userId);
+  }
+
+  private BigDecimal calculateOrderPrice(OrderProcessingEvent orderProcessingEvent) {
+    ProductDTO orderedProduct =
+        productConnector.getProductById(orderProcessingEvent.getOrderDTO().getProductId());
+    return orderedProduct
+        .getPrice()
+        .multiply(BigDecimal.valueOf(orderProcessingEvent.getOrderDTO().getOrderedQty()));
+  }
+
+  @Override
+  public void close() {}
+}
@@ -0,0 +1,156 @@
+package userservice.warmup;
+
+import common.dedup.ProcessedEventIndex;
+import common.dto.OrderDTO;
+import common.dto.ProductDTO;
+import common.enums.OrderStatus;
+import common.enums.ProcessingStatus;
+import common.event.OrderProcessingEvent;
+import common.lane.PriorityLane;
+import common.metrics.SagaMetrics;
+import common.tracing.SpanExporter;
+import common.tracing.Tracer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigDecimal;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.stereotype.Component;
+import userservice.service.DefaultUserService;
+
+/**
+ * Replays synthetic sagas through the real user step before any listener, the streams and the web
+ * server start, so that the JIT has compiled the handlers, the Jackson (de)serializers and the
+ * producer path by the time real events arrive. Spring Boot reports readiness only once the
+ * context has started, i.e. after the warm-up.
+ *
+ * <p>The sagas run against a throwaway {@link DefaultUserService} with its own balances, a fixed
+ * product price, detached metrics and tracing, and a {@link MockProducer} instead of Kafka. Its
+ * logging is turned off meanwhile, as it would repeat the same lines thousands of times, including
+ * the ones of failures injected by {@code config.fault-injection}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SagaWarmUp implements SmartLifecycle {
+
+  private static final String WARM_UP_TOPIC = "warm-up";
+
+  /** Long enough to keep every warm-up saga, which all run within a few seconds. */
+  private static final long WARM_UP_DEDUP_WINDOW_MS = 600_000;
+
+  private static final ProductDTO WARM_UP_PRODUCT =
+      new ProductDTO(1, "warm-up", Integer.MAX_VALUE, BigDecimal.ONE);
+  private static final int[] USER_IDS = {1, 2};
+
+  /** Every fourth saga orders more than any user can afford and takes the failure path. */
+  private static final int UNAFFORDABLE_QTY = 1_000_000;
+
+  private final AutowireCapableBeanFactory beanFactory;
+  private final LoggingSystem loggingSystem;
+
+  @Value("${spring.application.name}")
+  private String serviceName;
+
+  @Value("${config.warm-up.sagas}")
+  private int sagas;
+
+  private volatile boolean running;
+
+  @Override
+  public void start() {
+    running = true;
+    if (sagas <= 0) {
+      return;
+    }
+    long startedAt = System.currentTimeMillis();
+    String loggerName = DefaultUserService.class.getName();
+    LogLevel configuredLevel =
+        loggingSystem.getLoggerConfiguration(loggerName).getConfiguredLevel();
+    loggingSystem.setLogLevel(loggerName, LogLevel.OFF);
+    try {
+      replay(newThrowawayUserService());
+      log.info(
+          "Warm-up replayed {} synthetic sagas in {} ms",
+          sagas,
+          System.currentTimeMillis() - startedAt);
+    } catch (Exception e) {
+      log.error("Exception occurred during warm-up. Exception: ", e);
+    } finally {
+      loggingSystem.setLogLevel(loggerName, configuredLevel);
+    }
+  }
+
+  private DefaultUserService newThrowawayUserService() {
+    JsonSerializer<OrderProcessingEvent> valueSerializer = new JsonSerializer<>();
+    KafkaTemplate<String, OrderProcessingEvent> kafkaTemplate =
+        new KafkaTemplate<>(
+            () -> new MockProducer<>(true, new StringSerializer(), valueSerializer));
+    DefaultUserService userService =
+        new DefaultUserService(
+            productId -> WARM_UP_PRODUCT,
+            kafkaTemplate,
+            new SagaMetrics(new SimpleMeterRegistry(), serviceName),
+            new Tracer(serviceName, 0, SpanExporter.none()),
+            new PriorityLane(0, 0),
+            ProcessedEventIndex.inMemory(WARM_UP_DEDUP_WINDOW_MS, 1, Integer.MAX_VALUE));
+    beanFactory.autowireBean(userService);
+    return userService;
+  }
+
+  /** Charges the user of every affordable order and refunds it as if the warehouse had failed. */
+  private void replay(DefaultUserService userService) {
+    JsonSerializer<OrderProcessingEvent> serializer = new JsonSerializer<>();
+    JsonDeserializer<OrderProcessingEvent> deserializer =
+        new JsonDeserializer<>(OrderProcessingEvent.class).ignoreTypeHeaders();
+    for (int saga = 0; saga < sagas; saga++) {
+      OrderProcessingEvent orderProcessingEvent =
+          deserializer.deserialize(
+              WARM_UP_TOPIC, serializer.serialize(WARM_UP_TOPIC, requestedEvent(saga)));
+      userService.listenForOrderProcessingEvent(orderProcessingEvent);
+      if (orderProcessingEvent.getUserProcessingStatus().equals(ProcessingStatus.SUCCESS)) {
+        orderProcessingEvent.setWarehouseProcessingStatus(ProcessingStatus.REVERT);
+        orderProcessingEvent.setOrderStatus(OrderStatus.CANCELLED);
+        userService.listenForOrderProcessingEvent(
+            deserializer.deserialize(
+                WARM_UP_TOPIC, serializer.serialize(WARM_UP_TOPIC, orderProcessingEvent)));
+      }
+    }
+  }
+
+  private OrderProcessingEvent requestedEvent(int saga) {
+    OrderDTO orderDTO = new OrderDTO();
+    orderDTO.setUserId(USER_IDS[saga % USER_IDS.length]);
+    orderDTO.setProductId(WARM_UP_PRODUCT.getId());
+    orderDTO.setOrderedQty(saga % 4 == 3 ? UNAFFORDABLE_QTY : 1 + saga % 4);
+    OrderProcessingEvent orderProcessingEvent = new OrderProcessingEvent();
+    orderProcessingEvent.setOrderDTO(orderDTO);
+    orderProcessingEvent.setOrderStatus(OrderStatus.REQUESTED);
+    return orderProcessingEvent;
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /** Before the listener containers, the streams and the web server. */
+  @Override
+  public int getPhase() {
+    return 0;
+  }
+}
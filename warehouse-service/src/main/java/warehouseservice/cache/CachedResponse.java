@@ -0,0 +1,18 @@
+package warehouseservice.cache;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/** Pre-serialized JSON body together with the catalog version it was rendered from. */
+@Getter
+@RequiredArgsConstructor
+public class CachedResponse {
+
+  private final long version;
+  private final String eTag;
+  private final byte[] body;
+
+  public boolean matches(String ifNoneMatch) {
+    return eTag.equals(ifNoneMatch);
+  }
+}
@@ -0,0 +1,76 @@
+package warehouseservice.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import common.dto.ProductDTO;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import warehouseservice.readmodel.CatalogSnapshot;
+import warehouseservice.service.ProductService;
+
+/**
+ * Keeps the JSON representation of products so that repeated reads do not serialize the same
+ * {@link ProductDTO} again. Entries are rendered from {@link ProductService#getCatalogSnapshot()},
+ * tagged with the version of the snapshot and re-rendered lazily once the catalog version moves
+ * on. Reads never wait for the stock writers.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductResponseCache {
+
+  private final ProductService productService;
+  private final ObjectMapper objectMapper;
+
+  private final Map<Integer, CachedResponse> productIdPerResponse = new ConcurrentHashMap<>();
+  private final AtomicReference<CachedResponse> availableProductsResponse =
+      new AtomicReference<>();
+
+  public CachedResponse getProduct(Integer productId) {
+    CatalogSnapshot catalogSnapshot = productService.getCatalogSnapshot();
+    long catalogVersion = catalogSnapshot.getVersion();
+    CachedResponse cachedResponse = productIdPerResponse.get(productId);
+    if (Objects.nonNull(cachedResponse) && cachedResponse.getVersion() == catalogVersion) {
+      return cachedResponse;
+    }
+    ProductDTO product = catalogSnapshot.getProduct(productId);
+    if (Objects.isNull(product)) {
+      productIdPerResponse.remove(productId);
+      return null;
+    }
+    CachedResponse renderedResponse =
+        render(catalogVersion, "\"p" + productId + "-v" + catalogVersion + "\"", product);
+    productIdPerResponse.put(productId, renderedResponse);
+    return renderedResponse;
+  }
+
+  public CachedResponse getAvailableProducts() {
+    CatalogSnapshot catalogSnapshot = productService.getCatalogSnapshot();
+    long catalogVersion = catalogSnapshot.getVersion();
+    CachedResponse cachedResponse = availableProductsResponse.get();
+    if (Objects.nonNull(cachedResponse) && cachedResponse.getVersion() == catalogVersion) {
+      return cachedResponse;
+    }
+    CachedResponse renderedResponse =
+        render(
+            catalogVersion,
+            "\"available-v" + catalogVersion + "\"",
+            catalogSnapshot.getProducts());
+    availableProductsResponse.set(renderedResponse);
+    return renderedResponse;
+  }
+
+  private CachedResponse render(long catalogVersion, String eTag, Object payload) {
+    try {
+      return new CachedResponse(catalogVersion, eTag, objectMapper.writeValueAsBytes(payload));
+    } catch (JsonProcessingException e) {
+      log.error("Exception occurred during product serialization. Exception: ", e);
+      throw new IllegalStateException("Product response can not be serialized", e);
+    }
+  }
+}
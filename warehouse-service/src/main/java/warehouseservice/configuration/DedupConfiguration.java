@@ -0,0 +1,32 @@
+package warehouseservice.configuration;
+
+import common.dedup.ProcessedEventIndex;
+import java.nio.file.Paths;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class DedupConfiguration {
+
+  @Value("${spring.application.name}")
+  private String serviceName;
+
+  /** Parent directory of the index, which is kept in a subdirectory per service. */
+  @Value("${config.dedup.path}")
+  private String path;
+
+  @Value("${config.dedup.window-ms}")
+  private long windowMs;
+
+  @Value("${config.dedup.buckets}")
+  private int buckets;
+
+  @Value("${config.dedup.max-entries}")
+  private int maxEntries;
+
+  @Bean
+  ProcessedEventIndex processedEventIndex() {
+    return new ProcessedEventIndex(Paths.get(path, serviceName), windowMs, buckets, maxEntries);
+  }
+}
@@ -1,8 +1,15 @@
 package warehouseservice.configuration;
 
 import common.event.OrderProcessingEvent;
+import common.event.SagaCommand;
+import common.lane.PriorityLane;
+import common.partitioning.UserAffinityPartitioner;
+import common.tracing.Tracer;
+import common.tracing.TracingProducerInterceptor;
+import common.tracing.TracingRecordInterceptor;
 import java.util.HashMap;
 import java.util.Map;
+import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -22,17 +29,30 @@ import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
 @Configuration
+@RequiredArgsConstructor
 public class KafkaConfiguration {
 
+  private final Tracer tracer;
+
   @Value("${config.kafka.url}")
   private String bootstrapServerURL;
 
+  @Value("${config.compensation-lane.weight}")
+  private int compensationLaneWeight;
+
+  @Value("${config.compensation-lane.max-wait-ms}")
+  private long compensationLaneMaxWaitMs;
+
   @Bean
   public ProducerFactory<String, OrderProcessingEvent> producerFactory() {
     Map<String, Object> configProps = new HashMap<>();
     configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServerURL);
     configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
     configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+    configProps.put(
+        ProducerConfig.INTERCEPTOR_CLASSES_CONFIG, TracingProducerInterceptor.class.getName());
+    configProps.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, UserAffinityPartitioner.class);
+    configProps.put(TracingProducerInterceptor.TRACER_CONFIG, tracer);
     return new DefaultKafkaProducerFactory<>(configProps);
   }
 
@@ -69,6 +89,49 @@ public class KafkaConfiguration {
     ConcurrentKafkaListenerContainerFactory<String, OrderProcessingEvent> factory =
         new ConcurrentKafkaListenerContainerFactory<>();
     factory.setConsumerFactory(consumerFactory());
+    factory.setRecordInterceptor(new TracingRecordInterceptor<>(tracer));
+
+    return factory;
+  }
+
+  /**
+   * Batch listener for the compensation lane, so the {@link PriorityLane} knows how many
+   * compensations are pending. The trace context is restored per record by the listener.
+   */
+  @Bean
+  public KafkaListenerContainerFactory<
+          ConcurrentMessageListenerContainer<String, OrderProcessingEvent>>
+      compensationListenerContainerFactory() {
+
+    ConcurrentKafkaListenerContainerFactory<String, OrderProcessingEvent> factory =
+        new ConcurrentKafkaListenerContainerFactory<>();
+    factory.setConsumerFactory(consumerFactory());
+    factory.setBatchListener(true);
+
+    return factory;
+  }
+
+  @Bean
+  public PriorityLane compensationLane() {
+    return new PriorityLane(compensationLaneWeight, compensationLaneMaxWaitMs);
+  }
+
+  @Bean
+  ConsumerFactory<String, SagaCommand> commandConsumerFactory() {
+    return new DefaultKafkaConsumerFactory<>(
+        consumerFactoryProperties(),
+        new JsonDeserializer<>(String.class).forKeys().ignoreTypeHeaders(),
+        new JsonDeserializer<>(SagaCommand.class).ignoreTypeHeaders());
+  }
+
+  @Bean
+  public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, SagaCommand>>
+      commandListenerContainerFactory() {
+
+    ConcurrentKafkaListenerContainerFactory<String, SagaCommand> factory =
+        new ConcurrentKafkaListenerContainerFactory<>();
+    factory.setConsumerFactory(commandConsumerFactory());
+    factory.setRecordInterceptor(new TracingRecordInterceptor<>(tracer));
 
     return factory;
   }
@@ -0,0 +1,180 @@
+package warehouseservice.configuration;
+
+import common.dto.ProductDTO;
+import common.enums.ProcessingStatus;
+import common.event.OrderProcessingEvent;
+import common.metrics.SagaMetrics;
+import common.partitioning.UserAffinityPartitioner;
+import common.tracing.Tracer;
+import common.tracing.TracingProducerInterceptor;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.errors.LogAndContinueExceptionHandler;
+import org.apache.kafka.streams.errors.StreamsUncaughtExceptionHandler.StreamThreadExceptionResponse;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.kstream.Repartitioned;
+import org.apache.kafka.streams.state.Stores;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.EnableKafkaStreams;
+import org.springframework.kafka.annotation.KafkaStreamsDefaultConfiguration;
+import org.springframework.kafka.config.KafkaStreamsConfiguration;
+import org.springframework.kafka.config.StreamsBuilderFactoryBeanConfigurer;
+import org.springframework.kafka.support.serializer.JsonSerde;
+import warehouseservice.service.ProductService;
+import warehouseservice.streams.ReservedStock;
+import warehouseservice.streams.StockStepTransformer;
+
+/**
+ * Runs the warehouse step as a Kafka Streams topology when {@code config.engine} is {@code
+ * streams}. Relevant events of both lanes are repartitioned by product ID, processed by {@link
+ * StockStepTransformer} against the changelog-backed stock and reservation stores and written back
+ * to the order processing topic, or the compensation topic once cancelled, all within one
+ * transaction per commit under {@code exactly_once_v2}. The lanes share the repartition topic, so
+ * compensations are not given precedence here.
+ */
+@Configuration
+@EnableKafkaStreams
+@ConditionalOnProperty(name = "config.engine", havingValue = "streams")
+@RequiredArgsConstructor
+public class StreamsConfiguration {
+
+  private final Tracer tracer;
+
+  @Value("${config.kafka.url}")
+  private String bootstrapServerURL;
+
+  @Value("${config.kafka.order-processing-topic}")
+  private String orderProcessingTopicName;
+
+  @Value("${config.kafka.compensation-topic}")
+  private String compensationTopicName;
+
+  @Value("${config.streams.application-id}")
+  private String applicationId;
+
+  @Value("${config.streams.state-dir}")
+  private String stateDir;
+
+  @Value("${config.streams.processing-guarantee}")
+  private String processingGuarantee;
+
+  @Value("${config.streams.num-stream-threads}")
+  private int numStreamThreads;
+
+  @Value("${config.streams.reservation-scan-ms}")
+  private long reservationScanMs;
+
+  @Value("${config.reservation.ttl-ms}")
+  private long reservationTtlMs;
+
+  @Value("${config.streams.applied-steps-scan-ms}")
+  private long appliedStepsScanMs;
+
+  @Value("${config.dedup.window-ms}")
+  private long appliedStepsRetentionMs;
+
+  @Bean(name = KafkaStreamsDefaultConfiguration.DEFAULT_STREAMS_CONFIG_BEAN_NAME)
+  public KafkaStreamsConfiguration defaultKafkaStreamsConfig() {
+    Map<String, Object> configProps = new HashMap<>();
+    configProps.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
+    configProps.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServerURL);
+    configProps.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, processingGuarantee);
+    configProps.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, numStreamThreads);
+    configProps.put(StreamsConfig.STATE_DIR_CONFIG, stateDir);
+    configProps.put(
+        StreamsConfig.DEFAULT_DESERIALIZATION_EXCEPTION_HANDLER_CLASS_CONFIG,
+        LogAndContinueExceptionHandler.class);
+    configProps.put(
+        StreamsConfig.producerPrefix(ProducerConfig.INTERCEPTOR_CLASSES_CONFIG),
+        TracingProducerInterceptor.class.getName());
+    configProps.put(
+        StreamsConfig.producerPrefix(TracingProducerInterceptor.TRACER_CONFIG), tracer);
+    return new KafkaStreamsConfiguration(configProps);
+  }
+
+  /** A failed record is retried by a replacing thread from the last committed offset. */
+  @Bean
+  StreamsBuilderFactoryBeanConfigurer streamsBuilderFactoryBeanConfigurer() {
+    return factoryBean ->
+        factoryBean.setStreamsUncaughtExceptionHandler(
+            exception -> StreamThreadExceptionResponse.REPLACE_THREAD);
+  }
+
+  @Bean
+  public KStream<String, OrderProcessingEvent> stockStepStream(
+      StreamsBuilder streamsBuilder, SagaMetrics sagaMetrics, ProductService productService) {
+    Map<Integer, Integer> initialStock = new HashMap<>();
+    for (ProductDTO product : productService.getAvailableProducts()) {
+      initialStock.put(product.getId(), product.getStockQty());
+    }
+    JsonSerde<OrderProcessingEvent> eventSerde =
+        new JsonSerde<>(OrderProcessingEvent.class).noTypeInfo().ignoreTypeHeaders();
+    streamsBuilder
+        .addStateStore(
+            Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(StockStepTransformer.STOCK_STORE),
+                Serdes.Integer(),
+                Serdes.Integer()))
+        .addStateStore(
+            Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(StockStepTransformer.RESERVATION_STORE),
+                Serdes.String(),
+                new JsonSerde<>(ReservedStock.class).noTypeInfo().ignoreTypeHeaders()))
+        .addStateStore(
+            Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(StockStepTransformer.APPLIED_STEPS_STORE),
+                Serdes.String(),
+                Serdes.Long()));
+
+    KStream<String, OrderProcessingEvent> orderProcessingEvents =
+        streamsBuilder.stream(
+            Arrays.asList(orderProcessingTopicName, compensationTopicName),
+            Consumed.with(Serdes.String(), eventSerde)
+                .withOffsetResetPolicy(Topology.AutoOffsetReset.LATEST));
+    orderProcessingEvents
+        .filter(
+            (key, event) ->
+                Objects.nonNull(event)
+                    && ((!event.processed() && event.toProcessForWarehouse())
+                        || event.toRevertForWarehouse()
+                        || event.getShipmentProcessingStatus().equals(ProcessingStatus.SUCCESS)))
+        .selectKey((key, event) -> event.getOrderDTO().getProductId())
+        .repartition(Repartitioned.with(Serdes.Integer(), eventSerde).withName("by-product"))
+        .transform(
+            () ->
+                new StockStepTransformer(
+                    sagaMetrics,
+                    tracer,
+                    initialStock,
+                    reservationTtlMs,
+                    reservationScanMs,
+                    appliedStepsRetentionMs,
+                    appliedStepsScanMs),
+            StockStepTransformer.STOCK_STORE,
+            StockStepTransformer.RESERVATION_STORE,
+            StockStepTransformer.APPLIED_STEPS_STORE)
+        .to(
+            (key, event, recordContext) ->
+                event.compensating() ? compensationTopicName : orderProcessingTopicName,
+            // a streams sink ignores the partitioner of the producer config
+            Produced.with(Serdes.String(), eventSerde)
+                .withStreamPartitioner(
+                    (topic, key, event, partitionCount) ->
+                        UserAffinityPartitioner.partitionFor(
+                            event.getOrderDTO().getUserId(), partitionCount)));
+    return orderProcessingEvents;
+  }
+}
@@ -1,28 +1,49 @@
 package warehouseservice.controller;
 
-import common.dto.ProductDTO;
-import java.util.List;
+import java.util.Objects;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import warehouseservice.service.ProductService;
+import warehouseservice.cache.CachedResponse;
+import warehouseservice.cache.ProductResponseCache;
 
 @RestController
 @RequestMapping("/warehouse/products")
 @RequiredArgsConstructor
 public class ProductsController {
 
-  private final ProductService productService;
+  private final ProductResponseCache productResponseCache;
 
-  @GetMapping("/available")
-  public List<ProductDTO> getAvailableItems() {
-    return productService.getAvailableProducts();
+  @GetMapping(value = "/available", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<byte[]> getAvailableItems(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    return toResponse(productResponseCache.getAvailableProducts(), ifNoneMatch);
   }
 
-  @GetMapping("/{productId}")
-  public ProductDTO getByProductId(@PathVariable Integer productId) {
-    return productService.getProductById(productId);
+  @GetMapping(value = "/{productId}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<byte[]> getByProductId(
+      @PathVariable Integer productId,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    return toResponse(productResponseCache.getProduct(productId), ifNoneMatch);
+  }
+
+  private ResponseEntity<byte[]> toResponse(CachedResponse cachedResponse, String ifNoneMatch) {
+    if (Objects.isNull(cachedResponse)) {
+      return ResponseEntity.ok().build();
+    }
+    if (cachedResponse.matches(ifNoneMatch)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(cachedResponse.getETag()).build();
+    }
+    return ResponseEntity.ok()
+        .eTag(cachedResponse.getETag())
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(cachedResponse.getBody());
   }
 }
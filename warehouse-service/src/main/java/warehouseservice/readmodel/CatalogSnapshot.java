@@ -0,0 +1,42 @@
+package warehouseservice.readmodel;
+
+import common.dto.ProductDTO;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * Immutable copy of the catalog at one version. The stock writers publish a new snapshot after
+ * every change, so readers see all products at the same version without touching the products
+ * the writers are changing. The products of a snapshot must not be modified.
+ */
+public class CatalogSnapshot {
+
+  @Getter private final long version;
+
+  private final Map<Integer, ProductDTO> productIdPerProduct;
+
+  public CatalogSnapshot(long version, Collection<ProductDTO> products) {
+    Map<Integer, ProductDTO> productIdPerCopy = new LinkedHashMap<>();
+    for (ProductDTO product : products) {
+      productIdPerCopy.put(
+          product.getId(),
+          new ProductDTO(
+              product.getId(), product.getName(), product.getStockQty(), product.getPrice()));
+    }
+    this.version = version;
+    this.productIdPerProduct = Collections.unmodifiableMap(productIdPerCopy);
+  }
+
+  public List<ProductDTO> getProducts() {
+    return new ArrayList<>(productIdPerProduct.values());
+  }
+
+  public ProductDTO getProduct(Integer productId) {
+    return productIdPerProduct.get(productId);
+  }
+}
@@ -0,0 +1,18 @@
+package warehouseservice.reservation;
+
+import common.event.OrderProcessingEvent;
+import common.tracing.TraceContext;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/** Stock held for an order whose saga has not reached its final state yet. */
+@Getter
+@RequiredArgsConstructor
+public class Reservation {
+
+  private final UUID uuid;
+  private final OrderProcessingEvent orderProcessingEvent;
+  private final long deadlineMs;
+  private final TraceContext traceContext;
+}
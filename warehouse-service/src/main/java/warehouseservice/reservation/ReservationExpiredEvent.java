@@ -0,0 +1,11 @@
+package warehouseservice.reservation;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class ReservationExpiredEvent {
+
+  private final Reservation reservation;
+}
@@ -0,0 +1,115 @@
+package warehouseservice.reservation;
+
+import common.event.OrderProcessingEvent;
+import common.timer.HashedTimingWheel;
+import common.timer.HashedTimingWheel.Timeout;
+import common.tracing.TraceContext;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks stock reservations until their saga either completes or is compensated. Reservations that
+ * outlive {@code config.reservation.ttl-ms} are expired by a {@link HashedTimingWheel} and announced
+ * as {@link ReservationExpiredEvent} so that the stock can be released.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReservationRegistry {
+
+  private final ApplicationEventPublisher applicationEventPublisher;
+
+  @Value("${config.reservation.ttl-ms}")
+  private long reservationTtlMs;
+
+  @Value("${config.reservation.tick-ms}")
+  private long tickDurationMs;
+
+  @Value("${config.reservation.wheel-size}")
+  private int wheelSize;
+
+  private final Map<UUID, Timeout<Reservation>> uuidPerReservation = new ConcurrentHashMap<>();
+
+  private HashedTimingWheel<Reservation> timingWheel;
+  private ScheduledExecutorService ticker;
+
+  @PostConstruct
+  void start() {
+    timingWheel = new HashedTimingWheel<>(tickDurationMs, wheelSize, System.currentTimeMillis());
+    ticker =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "reservation-expiry");
+              thread.setDaemon(true);
+              return thread;
+            });
+    ticker.scheduleAtFixedRate(
+        this::expireReservations, tickDurationMs, tickDurationMs, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  void stop() {
+    ticker.shutdownNow();
+  }
+
+  public void reserve(OrderProcessingEvent orderProcessingEvent, TraceContext traceContext) {
+    long deadlineMs = System.currentTimeMillis() + reservationTtlMs;
+    Reservation reservation =
+        new Reservation(
+            orderProcessingEvent.getUuid(), orderProcessingEvent, deadlineMs, traceContext);
+    Timeout<Reservation> previous =
+        uuidPerReservation.put(reservation.getUuid(), timingWheel.schedule(reservation, deadlineMs));
+    if (Objects.nonNull(previous)) {
+      timingWheel.cancel(previous);
+    }
+  }
+
+  /**
+   * Releases the reservation of the given saga.
+   *
+   * @return {@code true} if the reservation was still held, {@code false} if it was never made or
+   *     has already been released or expired
+   */
+  public boolean release(UUID uuid) {
+    Timeout<Reservation> timeout = uuidPerReservation.remove(uuid);
+    if (Objects.isNull(timeout)) {
+      return false;
+    }
+    timingWheel.cancel(timeout);
+    return true;
+  }
+
+  public int getPendingReservationsCount() {
+    return uuidPerReservation.size();
+  }
+
+  private void expireReservations() {
+    try {
+      List<Reservation> expiredReservations = timingWheel.advance(System.currentTimeMillis());
+      for (Reservation reservation : expiredReservations) {
+        Timeout<Reservation> timeout = uuidPerReservation.get(reservation.getUuid());
+        if (Objects.nonNull(timeout)
+            && timeout.getPayload() == reservation
+            && uuidPerReservation.remove(reservation.getUuid(), timeout)) {
+          log.warn("Stock reservation for order event ({}) expired", reservation.getUuid());
+          applicationEventPublisher.publishEvent(new ReservationExpiredEvent(reservation));
+        }
+      }
+    } catch (Exception e) {
+      log.error("Exception occurred during reservation expiry. Exception: ", e);
+    }
+  }
+}
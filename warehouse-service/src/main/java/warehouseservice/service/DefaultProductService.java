@@ -1,23 +1,37 @@
 package warehouseservice.service;
 
+import common.dedup.ProcessedEventIndex;
 import common.dto.OrderDTO;
 import common.dto.ProductDTO;
 import common.enums.OrderStatus;
 import common.enums.ProcessingStatus;
+import common.enums.SagaCommandType;
 import common.event.OrderProcessingEvent;
+import common.event.SagaCommand;
+import common.lane.PriorityLane;
+import common.metrics.SagaMetrics;
+import common.tracing.Span;
+import common.tracing.TraceContext;
+import common.tracing.Tracer;
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import warehouseservice.readmodel.CatalogSnapshot;
+import warehouseservice.reservation.Reservation;
+import warehouseservice.reservation.ReservationExpiredEvent;
+import warehouseservice.reservation.ReservationRegistry;
 
 @Service
 @RequiredArgsConstructor
@@ -26,11 +40,25 @@ public class DefaultProductService implements ProductService {
 
   private static final Integer FIRST_ATTEMPT = 0;
   private static final Integer MAX_REVERT_ATTEMPTS = 5;
+  private static final String RESERVATION_EXPIRY_STEP = "reservation-expiry";
 
   @Value("${config.kafka.order-processing-topic}")
   private String orderProcessingTopicName;
 
-  private static final Map<Integer, ProductDTO> PRODUCT_ID_PER_AVAILABLE_PRODUCT =
+  @Value("${config.kafka.compensation-topic}")
+  private String compensationTopicName;
+
+  @Value("${config.kafka.reply-topic}")
+  private String replyTopicName;
+
+  @Value("#{'${config.saga-mode}' == 'orchestration'}")
+  private boolean orchestrated;
+
+  @Value("${config.fault-injection.store-failure-rate}")
+  private double storeFailureRate;
+
+  /** Owned by the instance, so a throwaway instance (e.g. for the warm-up) has its own stock. */
+  private final Map<Integer, ProductDTO> productIdPerAvailableProduct =
       new HashMap<Integer, ProductDTO>() {
         {
           put(1, new ProductDTO(1, "pen", 10, BigDecimal.valueOf(1.5)));
@@ -40,31 +68,185 @@ public class DefaultProductService implements ProductService {
 
   private final KafkaTemplate<String, OrderProcessingEvent> kafkaTemplate;
 
+  private final ReservationRegistry reservationRegistry;
+
+  private final SagaMetrics sagaMetrics;
+
+  private final Tracer tracer;
+
+  private final PriorityLane compensationLane;
+
+  private final ProcessedEventIndex processedEventIndex;
+
+  /** Read model of the catalog, replaced by the stock writers while they hold the lock. */
+  private volatile CatalogSnapshot catalogSnapshot =
+      new CatalogSnapshot(0, productIdPerAvailableProduct.values());
+
   @Override
   public List<ProductDTO> getAvailableProducts() {
-    return new ArrayList<>(PRODUCT_ID_PER_AVAILABLE_PRODUCT.values());
+    return catalogSnapshot.getProducts();
   }
 
   @Override
   public ProductDTO getProductById(Integer productId) {
-    return PRODUCT_ID_PER_AVAILABLE_PRODUCT.get(productId);
+    return catalogSnapshot.getProduct(productId);
+  }
+
+  @Override
+  public CatalogSnapshot getCatalogSnapshot() {
+    return catalogSnapshot;
   }
 
   @KafkaListener(
       topics = {"order-processing"},
-      groupId = "3")
+      groupId = "3",
+      autoStartup =
+          "#{'${config.saga-mode}' == 'choreography' && '${config.engine}' == 'listener'}")
   public void listenToOrderProcessingEvent(OrderProcessingEvent orderProcessingEvent) {
+    compensationLane.awaitTurn();
+    handle(orderProcessingEvent);
+  }
+
+  @KafkaListener(
+      topics = "${config.kafka.compensation-topic}",
+      groupId = "3",
+      containerFactory = "compensationListenerContainerFactory",
+      autoStartup =
+          "#{'${config.saga-mode}' == 'choreography' && '${config.engine}' == 'listener'}")
+  public void listenToCompensationEvents(
+      List<ConsumerRecord<String, OrderProcessingEvent>> records) {
+    compensationLane.drain(
+        records,
+        record -> {
+          try (Tracer.Scope scope =
+              tracer.withContext(TraceContext.fromHeaders(record.headers()))) {
+            handle(record.value());
+          }
+        });
+  }
+
+  private void handle(OrderProcessingEvent orderProcessingEvent) {
+    orderProcessingEvent.markDequeued();
     if (!orderProcessingEvent.processed() && orderProcessingEvent.toProcessForWarehouse()) {
-      log.info(
-          "Order should be processed for product with id: {} (event ID: {})",
-          orderProcessingEvent.getOrderDTO().getProductId(),
+      process(orderProcessingEvent);
+    } else if (orderProcessingEvent.toRevertForWarehouse()) {
+      compensate(orderProcessingEvent);
+    } else if (wasShipped(orderProcessingEvent)) {
+      reservationRegistry.release(orderProcessingEvent.getUuid());
+    } else if (orderProcessingEvent.compensating()
+        && !orderProcessingEvent.getWarehouseProcessingStatus().equals(ProcessingStatus.SUCCESS)) {
+      fence(orderProcessingEvent);
+    }
+  }
+
+  @KafkaListener(
+      topics = "${config.kafka.command-topic}",
+      groupId = "3",
+      containerFactory = "commandListenerContainerFactory",
+      autoStartup = "#{'${config.saga-mode}' == 'orchestration'}")
+  public void listenToSagaCommand(SagaCommand sagaCommand) {
+    OrderProcessingEvent orderProcessingEvent = sagaCommand.getOrderProcessingEvent();
+    orderProcessingEvent.markDequeued();
+    if (sagaCommand.getType().equals(SagaCommandType.PROCESS)) {
+      process(orderProcessingEvent);
+    } else if (sagaCommand.getType().equals(SagaCommandType.COMPENSATE)) {
+      compensate(orderProcessingEvent);
+    } else if (sagaCommand.getType().equals(SagaCommandType.CONFIRM)) {
+      reservationRegistry.release(orderProcessingEvent.getUuid());
+    }
+  }
+
+  private void process(OrderProcessingEvent orderProcessingEvent) {
+    log.info(
+        "Order should be processed for product with id: {} (event ID: {})",
+        orderProcessingEvent.getOrderDTO().getProductId(),
+        orderProcessingEvent.getUuid());
+    try (Span span = tracer.startSpan("warehouse.process")) {
+      span.setAttribute("order", orderProcessingEvent.getUuid());
+      runOnce(
+          orderProcessingEvent,
+          SagaMetrics.PROCESSING_STEP,
+          () -> processOrder(orderProcessingEvent));
+    }
+  }
+
+  /**
+   * Drops the warehouse step of a saga cancelled before the step ran, e.g. by the reaper of
+   * order-service, so the event that requested it does not reserve stock once it arrives late.
+   */
+  private void fence(OrderProcessingEvent orderProcessingEvent) {
+    if (processedEventIndex.fence(orderProcessingEvent.getUuid(), SagaMetrics.PROCESSING_STEP)) {
+      log.warn(
+          "Order event ({}) was cancelled before the warehouse step, a late delivery is dropped",
           orderProcessingEvent.getUuid());
-      processOrder(orderProcessingEvent);
-    } else if (mustBeReverted(orderProcessingEvent)) {
-      log.warn("Order event ({}) should be reverted", orderProcessingEvent.getUuid());
+    }
+  }
+
+  /**
+   * Reserves the stock once per saga; Kafka delivers the step again e.g. after a rebalance or a
+   * crash. A compensation is already applied once, as it needs the reservation it releases. A
+   * duplicate sends the outcome of the step again if its send failed.
+   */
+  private void runOnce(OrderProcessingEvent orderProcessingEvent, String step, Runnable action) {
+    if (processedEventIndex.runOnce(orderProcessingEvent.getUuid(), step, action)) {
+      return;
+    }
+    sagaMetrics.recordDuplicate(step);
+    if (!sendUnsentOutcome(orderProcessingEvent, step)) {
+      log.warn(
+          "Order event ({}) was already handled by the {} step, duplicate is dropped",
+          orderProcessingEvent.getUuid(),
+          step);
+    }
+  }
+
+  /** @return false if the step has no outcome whose send failed */
+  private boolean sendUnsentOutcome(OrderProcessingEvent orderProcessingEvent, String step) {
+    OrderProcessingEvent unsentOutcome =
+        processedEventIndex.takeUnsentOutcome(orderProcessingEvent.getUuid(), step);
+    if (Objects.isNull(unsentOutcome)) {
+      return false;
+    }
+    log.warn(
+        "Order event ({}) was already handled by the {} step, its unsent outcome is sent again",
+        orderProcessingEvent.getUuid(),
+        step);
+    sendOutcome(unsentOutcome, step);
+    return true;
+  }
+
+  private void compensate(OrderProcessingEvent orderProcessingEvent) {
+    log.warn("Order event ({}) should be reverted", orderProcessingEvent.getUuid());
+    if (reservationRegistry.release(orderProcessingEvent.getUuid())) {
+      try (Span span = tracer.startSpan("warehouse.compensate")) {
+        span.setAttribute("order", orderProcessingEvent.getUuid());
+        revertProductProcessingWithRetry(orderProcessingEvent, FIRST_ATTEMPT);
+        orderProcessingEvent.addMessage("Reverting QTY decreasing");
+        emitTransactionRevertEvent(orderProcessingEvent, SagaMetrics.COMPENSATION_STEP);
+      }
+    } else if (!sendUnsentOutcome(orderProcessingEvent, SagaMetrics.COMPENSATION_STEP)
+        && !sendUnsentOutcome(orderProcessingEvent, RESERVATION_EXPIRY_STEP)) {
+      log.warn(
+          "Stock reservation of order event ({}) was already released",
+          orderProcessingEvent.getUuid());
+    }
+  }
+
+  /**
+   * Releases the stock of a saga that stalled while holding it. The cancellation reaches
+   * shipment-service as well, which fences the shipment step unless it has started already.
+   */
+  @EventListener
+  public void onReservationExpired(ReservationExpiredEvent reservationExpiredEvent) {
+    Reservation reservation = reservationExpiredEvent.getReservation();
+    OrderProcessingEvent orderProcessingEvent = reservation.getOrderProcessingEvent();
+    orderProcessingEvent.markTimerFired();
+    try (Span span =
+        tracer.startSpan("warehouse.reservation-expiry", reservation.getTraceContext())) {
+      span.setAttribute("order", orderProcessingEvent.getUuid());
       revertProductProcessingWithRetry(orderProcessingEvent, FIRST_ATTEMPT);
-      orderProcessingEvent.addMessage("Reverting QTY decreasing");
-      emitTransactionRevertEvent(orderProcessingEvent);
+      orderProcessingEvent.addMessage("Stock reservation expired before the order was shipped");
+      emitTransactionRevertEvent(orderProcessingEvent, RESERVATION_EXPIRY_STEP);
     }
   }
 
@@ -74,36 +256,62 @@ public class DefaultProductService implements ProductService {
         && startQtyDecreasingTransaction(orderProcessingEvent.getOrderDTO())) {
       orderProcessingEvent.setWarehouseProcessingStatus(ProcessingStatus.SUCCESS);
       orderProcessingEvent.addMessage("Warehouse service successfully processed the order");
-      kafkaTemplate.send(orderProcessingTopicName, orderProcessingEvent);
+      reservationRegistry.reserve(orderProcessingEvent, tracer.currentContext());
+      sagaMetrics.recordStep(
+          orderProcessingEvent, SagaMetrics.PROCESSING_STEP, ProcessingStatus.SUCCESS);
+      sendOutcome(orderProcessingEvent, SagaMetrics.PROCESSING_STEP);
       log.info("Order event ({}) was processed successfully", orderProcessingEvent.getUuid());
     } else {
       log.warn("Order processing failed!");
       orderProcessingEvent.addMessage(
           "Issue occurred during qty decreasing! "
               + "That can be caused by ordered qty > available qty, or exception during transaction");
-      emitTransactionRevertEvent(orderProcessingEvent);
+      emitTransactionRevertEvent(orderProcessingEvent, SagaMetrics.PROCESSING_STEP);
     }
   }
 
-  private void emitTransactionRevertEvent(OrderProcessingEvent orderProcessingEvent) {
+  private void emitTransactionRevertEvent(OrderProcessingEvent orderProcessingEvent, String step) {
     orderProcessingEvent.setWarehouseProcessingStatus(ProcessingStatus.REVERT);
     orderProcessingEvent.setOrderStatus(OrderStatus.CANCELLED);
-    kafkaTemplate.send(orderProcessingTopicName, orderProcessingEvent);
+    sagaMetrics.recordStep(orderProcessingEvent, step, ProcessingStatus.REVERT);
+    sendOutcome(orderProcessingEvent, step);
+  }
+
+  private void sendOutcome(OrderProcessingEvent orderProcessingEvent, String step) {
+    processedEventIndex.keepIfUnsent(
+        orderProcessingEvent.getUuid(),
+        step,
+        orderProcessingEvent,
+        kafkaTemplate.send(outcomeTopicName(orderProcessingEvent), orderProcessingEvent)
+            .completable());
+  }
+
+  /**
+   * Orchestrated sagas get the outcome of the step as a reply, choreographed ones as an event, on
+   * the compensation lane once cancelled.
+   */
+  private String outcomeTopicName(OrderProcessingEvent orderProcessingEvent) {
+    if (orchestrated) {
+      return replyTopicName;
+    }
+    return orderProcessingEvent.compensating() ? compensationTopicName : orderProcessingTopicName;
   }
 
   private boolean checkProductAvailability(OrderProcessingEvent orderProcessingEvent) {
     Integer productId = orderProcessingEvent.getOrderDTO().getProductId();
-    ProductDTO requestedProduct = PRODUCT_ID_PER_AVAILABLE_PRODUCT.get(productId);
+    ProductDTO requestedProduct = productIdPerAvailableProduct.get(productId);
     return Objects.nonNull(requestedProduct)
         && requestedProduct.getStockQty() >= orderProcessingEvent.getOrderDTO().getOrderedQty();
   }
 
   @Transactional
-  boolean startQtyDecreasingTransaction(OrderDTO orderDTO) {
+  synchronized boolean startQtyDecreasingTransaction(OrderDTO orderDTO) {
     try {
+      injectStoreFailure();
       Integer productId = orderDTO.getProductId();
-      ProductDTO requestedProduct = PRODUCT_ID_PER_AVAILABLE_PRODUCT.get(productId);
+      ProductDTO requestedProduct = productIdPerAvailableProduct.get(productId);
       requestedProduct.setStockQty(requestedProduct.getStockQty() - orderDTO.getOrderedQty());
+      publishCatalogSnapshot();
       return true;
     } catch (Exception e) {
       log.error(
@@ -112,9 +320,21 @@ public class DefaultProductService implements ProductService {
     }
   }
 
-  private boolean mustBeReverted(OrderProcessingEvent orderProcessingEvent) {
-    return orderProcessingEvent.getShipmentProcessingStatus().equals(ProcessingStatus.REVERT)
-        && !orderProcessingEvent.getWarehouseProcessingStatus().equals(ProcessingStatus.REVERT);
+  private void publishCatalogSnapshot() {
+    catalogSnapshot =
+        new CatalogSnapshot(
+            catalogSnapshot.getVersion() + 1, productIdPerAvailableProduct.values());
+  }
+
+  /** Fails a stock transaction before it changes anything, for the fault-injection runs. */
+  private void injectStoreFailure() {
+    if (storeFailureRate > 0 && ThreadLocalRandom.current().nextDouble() < storeFailureRate) {
+      throw new IllegalStateException("Injected store failure");
+    }
+  }
+
+  private boolean wasShipped(OrderProcessingEvent orderProcessingEvent) {
+    return orderProcessingEvent.getShipmentProcessingStatus().equals(ProcessingStatus.SUCCESS);
   }
 
   private void revertProductProcessingWithRetry(
@@ -126,7 +346,9 @@ public class DefaultProductService implements ProductService {
               + orderProcessingEvent.getUuid());
     } else {
       try {
-        startQtyIncreasingTransaction(orderProcessingEvent.getOrderDTO());
+        if (!startQtyIncreasingTransaction(orderProcessingEvent.getOrderDTO())) {
+          throw new IllegalStateException("QTY increasing transaction failed");
+        }
       } catch (Exception e) {
         log.error(
             "Exception occurred during the revert transaction. "
@@ -135,18 +357,20 @@ public class DefaultProductService implements ProductService {
             attempt,
             MAX_REVERT_ATTEMPTS,
             e);
-        revertProductProcessingWithRetry(orderProcessingEvent, attempt);
+        revertProductProcessingWithRetry(orderProcessingEvent, attempt + 1);
       }
     }
   }
 
   @Transactional
-  boolean startQtyIncreasingTransaction(OrderDTO orderDTO) {
+  synchronized boolean startQtyIncreasingTransaction(OrderDTO orderDTO) {
     log.info("QTY increasing transaction in progress");
     try {
+      injectStoreFailure();
       Integer productId = orderDTO.getProductId();
-      ProductDTO requestedProduct = PRODUCT_ID_PER_AVAILABLE_PRODUCT.get(productId);
+      ProductDTO requestedProduct = productIdPerAvailableProduct.get(productId);
       requestedProduct.setStockQty(requestedProduct.getStockQty() + orderDTO.getOrderedQty());
+      publishCatalogSnapshot();
       log.info("QTY increasing transaction finished successfully");
       return true;
     } catch (Exception e) {
@@ -2,10 +2,14 @@ package warehouseservice.service;
 
 import common.dto.ProductDTO;
 import java.util.List;
+import warehouseservice.readmodel.CatalogSnapshot;
 
 public interface ProductService {
 
   List<ProductDTO> getAvailableProducts();
 
   ProductDTO getProductById(final Integer productId);
+
+  /** Latest published catalog; its version is incremented on every stock or price change. */
+  CatalogSnapshot getCatalogSnapshot();
 }
@@ -0,0 +1,16 @@
+package warehouseservice.streams;
+
+import common.event.OrderProcessingEvent;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Reservation kept in the state store of the {@code streams} engine, stored as JSON. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservedStock {
+
+  private OrderProcessingEvent orderProcessingEvent;
+  private long deadlineMs;
+}
@@ -0,0 +1,206 @@
+package warehouseservice.streams;
+
+import common.enums.OrderStatus;
+import common.enums.ProcessingStatus;
+import common.event.OrderProcessingEvent;
+import common.metrics.SagaMetrics;
+import common.tracing.Span;
+import common.tracing.TraceContext;
+import common.tracing.Tracer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+/**
+ * Warehouse step of the saga for the {@code streams} engine. Events arrive keyed by product ID, so
+ * the stock of a product is owned by exactly one task and kept in its {@link #STOCK_STORE}. Stock
+ * held for an unfinished saga is tracked in {@link #RESERVATION_STORE} by saga UUID; a wall-clock
+ * punctuation releases the reservations that outlive their TTL. Compensations already applied are
+ * remembered by saga UUID and step in {@link #APPLIED_STEPS_STORE} until the dedup window passes,
+ * so one published again is skipped. The stores are backed by changelog topics and restored on
+ * rebalance. Products missing from the stock store start with their initial stock.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class StockStepTransformer
+    implements Transformer<
+        Integer, OrderProcessingEvent, KeyValue<String, OrderProcessingEvent>> {
+
+  public static final String STOCK_STORE = "product-stock";
+  public static final String RESERVATION_STORE = "stock-reservations";
+  public static final String APPLIED_STEPS_STORE = "stock-applied-steps";
+
+  private static final String RESERVATION_EXPIRY_STEP = "reservation-expiry";
+
+  private final SagaMetrics sagaMetrics;
+
+  private final Tracer tracer;
+
+  private final Map<Integer, Integer> initialStock;
+
+  private final long reservationTtlMs;
+
+  private final long reservationScanMs;
+
+  private final long appliedStepsRetentionMs;
+
+  private final long appliedStepsScanMs;
+
+  private ProcessorContext context;
+
+  private KeyValueStore<Integer, Integer> stockStore;
+
+  private KeyValueStore<String, ReservedStock> reservationStore;
+
+  private KeyValueStore<String, Long> appliedStepsStore;
+
+  @Override
+  public void init(ProcessorContext context) {
+    this.context = context;
+    this.stockStore = context.getStateStore(STOCK_STORE);
+    this.reservationStore = context.getStateStore(RESERVATION_STORE);
+    this.appliedStepsStore = context.getStateStore(APPLIED_STEPS_STORE);
+    context.schedule(
+        Duration.ofMillis(reservationScanMs),
+        PunctuationType.WALL_CLOCK_TIME,
+        this::expireReservations);
+    context.schedule(
+        Duration.ofMillis(appliedStepsScanMs),
+        PunctuationType.WALL_CLOCK_TIME,
+        this::forgetAppliedSteps);
+  }
+
+  @Override
+  public KeyValue<String, OrderProcessingEvent> transform(
+      Integer productId, OrderProcessingEvent orderProcessingEvent) {
+    orderProcessingEvent.markDequeued();
+    TraceContext parentContext = TraceContext.fromHeaders(context.headers());
+    String uuid = orderProcessingEvent.getUuid().toString();
+    if (!orderProcessingEvent.processed() && orderProcessingEvent.toProcessForWarehouse()) {
+      log.info(
+          "Order should be processed for product with id: {} (event ID: {})",
+          productId,
+          orderProcessingEvent.getUuid());
+      try (Span span = tracer.startSpan("warehouse.process", parentContext)) {
+        span.setAttribute("order", orderProcessingEvent.getUuid());
+        processOrder(productId, orderProcessingEvent);
+      }
+      return KeyValue.pair(null, orderProcessingEvent);
+    } else if (orderProcessingEvent.toRevertForWarehouse()) {
+      log.warn("Order event ({}) should be reverted", orderProcessingEvent.getUuid());
+      String appliedStep = uuid + ":" + SagaMetrics.COMPENSATION_STEP;
+      if (Objects.nonNull(appliedStepsStore.get(appliedStep))) {
+        log.warn(
+            "Order event ({}) was already reverted for warehouse",
+            orderProcessingEvent.getUuid());
+        return null;
+      }
+      if (Objects.isNull(reservationStore.delete(uuid))) {
+        log.warn(
+            "Stock reservation of order event ({}) was already released",
+            orderProcessingEvent.getUuid());
+        return null;
+      }
+      try (Span span = tracer.startSpan("warehouse.compensate", parentContext)) {
+        span.setAttribute("order", orderProcessingEvent.getUuid());
+        releaseStock(productId, orderProcessingEvent.getOrderDTO().getOrderedQty());
+        orderProcessingEvent.addMessage("Reverting QTY decreasing");
+        markReverted(orderProcessingEvent, SagaMetrics.COMPENSATION_STEP);
+        appliedStepsStore.put(appliedStep, System.currentTimeMillis());
+      }
+      return KeyValue.pair(null, orderProcessingEvent);
+    }
+    reservationStore.delete(uuid);
+    return null;
+  }
+
+  private void processOrder(Integer productId, OrderProcessingEvent orderProcessingEvent) {
+    log.info("Order processing is in progress");
+    Integer orderedQty = orderProcessingEvent.getOrderDTO().getOrderedQty();
+    Integer stockQty = getStock(productId);
+    if (Objects.nonNull(stockQty) && stockQty >= orderedQty) {
+      stockStore.put(productId, stockQty - orderedQty);
+      orderProcessingEvent.setWarehouseProcessingStatus(ProcessingStatus.SUCCESS);
+      orderProcessingEvent.addMessage("Warehouse service successfully processed the order");
+      reservationStore.put(
+          orderProcessingEvent.getUuid().toString(),
+          new ReservedStock(orderProcessingEvent, System.currentTimeMillis() + reservationTtlMs));
+      sagaMetrics.recordStep(
+          orderProcessingEvent, SagaMetrics.PROCESSING_STEP, ProcessingStatus.SUCCESS);
+      log.info("Order event ({}) was processed successfully", orderProcessingEvent.getUuid());
+    } else {
+      log.warn("Order processing failed!");
+      orderProcessingEvent.addMessage(
+          "Issue occurred during qty decreasing! "
+              + "That can be caused by ordered qty > available qty, or exception during transaction");
+      markReverted(orderProcessingEvent, SagaMetrics.PROCESSING_STEP);
+    }
+  }
+
+  private void expireReservations(long timestamp) {
+    List<KeyValue<String, ReservedStock>> expired = new ArrayList<>();
+    try (KeyValueIterator<String, ReservedStock> iterator = reservationStore.all()) {
+      while (iterator.hasNext()) {
+        KeyValue<String, ReservedStock> reservation = iterator.next();
+        if (reservation.value.getDeadlineMs() <= timestamp) {
+          expired.add(reservation);
+        }
+      }
+    }
+    for (KeyValue<String, ReservedStock> reservation : expired) {
+      OrderProcessingEvent orderProcessingEvent = reservation.value.getOrderProcessingEvent();
+      orderProcessingEvent.markTimerFired();
+      try (Span span = tracer.startSpan("warehouse.reservation-expiry")) {
+        span.setAttribute("order", orderProcessingEvent.getUuid());
+        reservationStore.delete(reservation.key);
+        releaseStock(
+            orderProcessingEvent.getOrderDTO().getProductId(),
+            orderProcessingEvent.getOrderDTO().getOrderedQty());
+        orderProcessingEvent.addMessage("Stock reservation expired before the order was shipped");
+        markReverted(orderProcessingEvent, RESERVATION_EXPIRY_STEP);
+        context.forward(null, orderProcessingEvent);
+      }
+    }
+  }
+
+  private void forgetAppliedSteps(long timestamp) {
+    List<String> expired = new ArrayList<>();
+    try (KeyValueIterator<String, Long> iterator = appliedStepsStore.all()) {
+      while (iterator.hasNext()) {
+        KeyValue<String, Long> appliedStep = iterator.next();
+        if (appliedStep.value + appliedStepsRetentionMs <= timestamp) {
+          expired.add(appliedStep.key);
+        }
+      }
+    }
+    expired.forEach(appliedStepsStore::delete);
+  }
+
+  private void markReverted(OrderProcessingEvent orderProcessingEvent, String step) {
+    orderProcessingEvent.setWarehouseProcessingStatus(ProcessingStatus.REVERT);
+    orderProcessingEvent.setOrderStatus(OrderStatus.CANCELLED);
+    sagaMetrics.recordStep(orderProcessingEvent, step, ProcessingStatus.REVERT);
+  }
+
+  private void releaseStock(Integer productId, Integer orderedQty) {
+    stockStore.put(productId, getStock(productId) + orderedQty);
+  }
+
+  private Integer getStock(Integer productId) {
+    Integer stockQty = stockStore.get(productId);
+    return Objects.nonNull(stockQty) ? stockQty : initialStock.get(productId);
+  }
+
+  @Override
+  public void close() {}
+}
@@ -0,0 +1,168 @@
+package warehouseservice.warmup;
+
+import common.dedup.ProcessedEventIndex;
+import common.dto.OrderDTO;
+import common.enums.OrderStatus;
+import common.enums.ProcessingStatus;
+import common.event.OrderProcessingEvent;
+import common.lane.PriorityLane;
+import common.metrics.SagaMetrics;
+import common.tracing.SpanExporter;
+import common.tracing.Tracer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.stereotype.Component;
+import warehouseservice.reservation.ReservationRegistry;
+import warehouseservice.service.DefaultProductService;
+
+/**
+ * Replays synthetic sagas through the real warehouse step before any listener, the streams and the
+ * web server start, so that the JIT has compiled the handlers, the reservation tracking, the
+ * Jackson (de)serializers and the producer path by the time real events arrive. Spring Boot
+ * reports readiness only once the context has started, i.e. after the warm-up.
+ *
+ * <p>The sagas run against a throwaway {@link DefaultProductService} with its own stock and its own
+ * {@link ReservationRegistry}, detached metrics and tracing, and a {@link MockProducer} instead of
+ * Kafka. Its logging is turned off meanwhile, as it would repeat the same lines thousands of times,
+ * including the ones of failures injected by {@code config.fault-injection}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SagaWarmUp implements SmartLifecycle {
+
+  private static final String WARM_UP_TOPIC = "warm-up";
+
+  /** Long enough to keep every warm-up saga, which all run within a few seconds. */
+  private static final long WARM_UP_DEDUP_WINDOW_MS = 600_000;
+
+  private static final int[] PRODUCT_IDS = {1, 2};
+
+  /** Every fourth saga orders more than is in stock and takes the failure path. */
+  private static final int UNAVAILABLE_QTY = 1_000_000;
+
+  private final AutowireCapableBeanFactory beanFactory;
+  private final LoggingSystem loggingSystem;
+
+  @Value("${spring.application.name}")
+  private String serviceName;
+
+  @Value("${config.warm-up.sagas}")
+  private int sagas;
+
+  private volatile boolean running;
+
+  @Override
+  public void start() {
+    running = true;
+    if (sagas <= 0) {
+      return;
+    }
+    long startedAt = System.currentTimeMillis();
+    String loggerName = DefaultProductService.class.getName();
+    LogLevel configuredLevel =
+        loggingSystem.getLoggerConfiguration(loggerName).getConfiguredLevel();
+    loggingSystem.setLogLevel(loggerName, LogLevel.OFF);
+    ReservationRegistry reservationRegistry = newThrowawayReservationRegistry();
+    try {
+      replay(newThrowawayProductService(reservationRegistry));
+      log.info(
+          "Warm-up replayed {} synthetic sagas in {} ms",
+          sagas,
+          System.currentTimeMillis() - startedAt);
+    } catch (Exception e) {
+      log.error("Exception occurred during warm-up. Exception: ", e);
+    } finally {
+      beanFactory.destroyBean(reservationRegistry);
+      loggingSystem.setLogLevel(loggerName, configuredLevel);
+    }
+  }
+
+  /** Expired reservations are dropped instead of being announced to the real service. */
+  private ReservationRegistry newThrowawayReservationRegistry() {
+    ReservationRegistry reservationRegistry = new ReservationRegistry(event -> {});
+    beanFactory.autowireBean(reservationRegistry);
+    beanFactory.initializeBean(reservationRegistry, "warmUpReservationRegistry");
+    return reservationRegistry;
+  }
+
+  private DefaultProductService newThrowawayProductService(
+      ReservationRegistry reservationRegistry) {
+    JsonSerializer<OrderProcessingEvent> valueSerializer = new JsonSerializer<>();
+    KafkaTemplate<String, OrderProcessingEvent> kafkaTemplate =
+        new KafkaTemplate<>(
+            () -> new MockProducer<>(true, new StringSerializer(), valueSerializer));
+    DefaultProductService productService =
+        new DefaultProductService(
+            kafkaTemplate,
+            reservationRegistry,
+            new SagaMetrics(new SimpleMeterRegistry(), serviceName),
+            new Tracer(serviceName, 0, SpanExporter.none()),
+            new PriorityLane(0, 0),
+            ProcessedEventIndex.inMemory(WARM_UP_DEDUP_WINDOW_MS, 1, Integer.MAX_VALUE));
+    beanFactory.autowireBean(productService);
+    return productService;
+  }
+
+  /**
+   * Reserves the stock of every available order and releases it as if the shipment had failed, so
+   * the stock is the same after each saga.
+   */
+  private void replay(DefaultProductService productService) {
+    JsonSerializer<OrderProcessingEvent> serializer = new JsonSerializer<>();
+    JsonDeserializer<OrderProcessingEvent> deserializer =
+        new JsonDeserializer<>(OrderProcessingEvent.class).ignoreTypeHeaders();
+    for (int saga = 0; saga < sagas; saga++) {
+      OrderProcessingEvent orderProcessingEvent =
+          deserializer.deserialize(
+              WARM_UP_TOPIC, serializer.serialize(WARM_UP_TOPIC, chargedEvent(saga)));
+      productService.listenToOrderProcessingEvent(orderProcessingEvent);
+      if (orderProcessingEvent.getWarehouseProcessingStatus().equals(ProcessingStatus.SUCCESS)) {
+        orderProcessingEvent.setShipmentProcessingStatus(ProcessingStatus.REVERT);
+        orderProcessingEvent.setOrderStatus(OrderStatus.CANCELLED);
+        productService.listenToOrderProcessingEvent(
+            deserializer.deserialize(
+                WARM_UP_TOPIC, serializer.serialize(WARM_UP_TOPIC, orderProcessingEvent)));
+      }
+    }
+  }
+
+  private OrderProcessingEvent chargedEvent(int saga) {
+    OrderDTO orderDTO = new OrderDTO();
+    orderDTO.setUserId(1);
+    orderDTO.setProductId(PRODUCT_IDS[saga % PRODUCT_IDS.length]);
+    orderDTO.setOrderedQty(saga % 4 == 3 ? UNAVAILABLE_QTY : 1);
+    OrderProcessingEvent orderProcessingEvent = new OrderProcessingEvent();
+    orderProcessingEvent.setOrderDTO(orderDTO);
+    orderProcessingEvent.setOrderStatus(OrderStatus.REQUESTED);
+    orderProcessingEvent.setUserProcessingStatus(ProcessingStatus.SUCCESS);
+    return orderProcessingEvent;
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /** Before the listener containers, the streams and the web server. */
+  @Override
+  public int getPhase() {
+    return 0;
+  }
+}